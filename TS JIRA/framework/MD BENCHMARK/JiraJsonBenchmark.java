@@ -0,0 +1,80 @@
+package com.optum.coe.automation.rally;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/* JMH benchmark of the Jira Json deserialization which is done for every testcase.
+ * 1. parseTestcase - Jira testcase details response to JiraTestCase with the shared Gson, as RunnerClass does
+ * 2. parseTestcaseTree - Jira testcase details response to a Json tree, as JiraOperation.getJiraTestCaseDetails does
+ * 3. parseTestSteps - testScript.steps of the Json tree to the sorted JiraTestStep list, as MigrationEngine does
+ * Run the main method to get the time per operation and the allocation per operation (gc.alloc.rate.norm) */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JiraJsonBenchmark {
+
+	@Param({ "5", "25" })
+	public int stepCount;
+
+	private String testcaseResponse;
+	private JsonObject testcaseJson;
+
+	@Setup
+	public void setUp() {
+
+		testcaseJson = MigrationStubServer.generateJiraTestcase("MD", "MD-T1001", stepCount, 3);
+		testcaseResponse = testcaseJson.toString();
+
+	}
+
+	@Benchmark
+	public JiraTestCase parseTestcase() {
+
+		return JiraToRallyMapper.getGson().fromJson(testcaseResponse, JiraTestCase.class);
+
+	}
+
+	@Benchmark
+	public JsonObject parseTestcaseTree() {
+
+		return JsonParser.parseString(testcaseResponse).getAsJsonObject();
+
+	}
+
+	@Benchmark
+	public List<JiraTestStep> parseTestSteps() {
+
+		return MigrationEngine.getSortedTestSteps(testcaseJson);
+
+	}
+
+	public static void main(String[] args) throws RunnerException {
+
+		new Runner(new OptionsBuilder().include(JiraJsonBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+
+	}
+
+}
@@ -0,0 +1,156 @@
+package com.optum.coe.automation.rally;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/* JMH benchmark of the Jira to Rally payload mapping for one testcase and one test step.
+ * The "legacy" benchmarks repeat the previous mapping: build the Rally Json, write it with a new pretty printing Gson, parse it again and copy it to the create payload.
+ * The "mapper" benchmarks use JiraToRallyMapper. Run the main method to get the time per operation and the allocation per operation (gc.alloc.rate.norm).
+ * The tag lookup is not part of the benchmark, because it is a Rally call. The System.out.println of the legacy test step is not part of the benchmark either */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JiraToRallyMapperBenchmark {
+
+	private static final String PROJECT_REF = "789325818991";
+	private static final String USER_REF = "775177892345";
+
+	private JsonObject jiraTestcaseJson;
+	private JsonArray tags;
+	private JiraTestStep testStep;
+
+	@Setup
+	public void setUp() {
+
+		jiraTestcaseJson = JsonParser.parseString("{\"key\":\"MD-T1001\",\"name\":\"Verify member eligibility for the billing period\","
+				+ "\"priority\":\"Normal\",\"status\":\"Ready\",\"folder\":\"/Billing/Eligibility/Regression\",\"labels\":[\"Billing\",\"Eligibility\"],"
+				+ "\"objective\":\"Member eligibility is shown for the selected billing period\",\"precondition\":\"Member is enrolled\"}").getAsJsonObject();
+		tags = new JsonArray();
+		for (String tagRef : new String[] { "/tag/101", "/tag/102" }) {
+			JsonObject tag = new JsonObject();
+			tag.addProperty("_ref", tagRef);
+			tags.add(tag);
+		}
+		testStep = JiraToRallyMapper.getGson().fromJson("{\"id\":5501,\"index\":0,\"description\":\"Open the member eligibility page\","
+				+ "\"testData\":\"member id 10001\",\"expectedResult\":\"Eligibility page is shown\"}", JiraTestStep.class);
+
+	}
+
+	@Benchmark
+	public JsonObject legacyTestcasePayload() {
+
+		JsonObject testCase = new JsonObject();
+		JsonElement nameElement = jiraTestcaseJson.get("name");
+		testCase.addProperty("Name", nameElement != null && !nameElement.isJsonNull() ? nameElement.getAsString() : JiraToRallyMapper.DEFAULT_TESTCASE_NAME);
+		testCase.addProperty("Method", "Manual");
+		String priority = jiraTestcaseJson.get("priority").getAsString();
+		testCase.addProperty("Priority", priority.equalsIgnoreCase("Normal") ? "Useful" : priority);
+		testCase.addProperty("Owner", "/user/" + USER_REF);
+		testCase.addProperty("Ready", jiraTestcaseJson.get("status").getAsString().equals("Ready"));
+		JsonArray tagsWithNames = new JsonArray();
+		for (JsonElement tag : tags) {
+			JsonObject tagObject = new JsonObject();
+			tagObject.addProperty("_ref", tag.getAsJsonObject().get("_ref").getAsString());
+			tagObject.addProperty("Name", "Billing");
+			tagsWithNames.add(tagObject);
+		}
+		testCase.add("Tags", tagsWithNames);
+
+		JsonObject testFolder = new JsonObject();
+		testFolder.addProperty("_ref", "/testfolder/3001");
+		JsonObject rallyJson = new JsonObject();
+		rallyJson.addProperty("projectRef", PROJECT_REF);
+		rallyJson.add("TestFolder", testFolder);
+		rallyJson.add("testCase", testCase);
+
+		String rallyJsonString = new GsonBuilder().setPrettyPrinting().create().toJson(rallyJson);
+		JsonObject jsonData = JsonParser.parseString(rallyJsonString).getAsJsonObject();
+		JsonObject testCaseData = jsonData.getAsJsonObject("testCase");
+		JsonObject testFolderData = jsonData.getAsJsonObject("TestFolder");
+
+		JsonObject newTestCase = new JsonObject();
+		newTestCase.addProperty("Name", testCaseData.get("Name").getAsString());
+		newTestCase.addProperty("Project", PROJECT_REF);
+		newTestCase.addProperty("Method", testCaseData.get("Method").getAsString());
+		newTestCase.addProperty("Priority", testCaseData.get("Priority").getAsString());
+		newTestCase.addProperty("Owner", testCaseData.get("Owner").getAsString());
+		newTestCase.addProperty("Ready", testCaseData.get("Ready").getAsBoolean());
+		JsonArray newTagsArray = new JsonArray();
+		for (JsonElement tagElement : testCaseData.getAsJsonArray("Tags")) {
+			JsonObject newTagObject = new JsonObject();
+			newTagObject.addProperty("_ref", tagElement.getAsJsonObject().get("_ref").getAsString());
+			newTagsArray.add(newTagObject);
+		}
+		newTestCase.add("Tags", newTagsArray);
+		newTestCase.addProperty("TestFolder", testFolderData.get("_ref").getAsString());
+		return newTestCase;
+
+	}
+
+	@Benchmark
+	public JsonObject mapperTestcasePayload() {
+
+		JsonObject newTestCase = JiraToRallyMapper.toRallyTestcase(jiraTestcaseJson, PROJECT_REF, USER_REF, tags);
+		newTestCase.addProperty("TestFolder", "/testfolder/3001");
+		return newTestCase;
+
+	}
+
+	@Benchmark
+	public JsonObject legacyTestStepPayload() {
+
+		JsonObject payLoad = new JsonObject();
+		payLoad.addProperty("TestCase", "/testcase/4001");
+		payLoad.addProperty("Input", JiraToRallyMapper.getInput(testStep));
+		payLoad.addProperty("expectedResult", testStep.getExpectedresult());
+		payLoad.addProperty("index", testStep.getIndex());
+		payLoad.addProperty("id", testStep.getId());
+		if (testStep.getTestdata() != null) {
+			payLoad.addProperty("Input", JiraToRallyMapper.getInput(testStep));
+		}
+		String rallyJsonString = new GsonBuilder().setPrettyPrinting().create().toJson(payLoad);
+		JsonParser.parseString(rallyJsonString).getAsJsonObject();
+		return payLoad;
+
+	}
+
+	@Benchmark
+	public JsonObject mapperTestStepPayload() {
+
+		return JiraToRallyMapper.toRallyTestStep(testStep, "/testcase/4001");
+
+	}
+
+	// Run the benchmark with the GC profiler, so that the allocation per operation is reported along with the time per operation
+
+	public static void main(String[] args) throws RunnerException {
+
+		new Runner(new OptionsBuilder().include(JiraToRallyMapperBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+
+	}
+
+}
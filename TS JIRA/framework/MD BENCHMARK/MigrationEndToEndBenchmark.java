@@ -0,0 +1,117 @@
+package com.optum.coe.automation.rally;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/* JMH benchmark of the end-to-end migration of N synthetic testcases against the in-process Jira and Rally stub server.
+ * One operation migrates caseCount new testcases with MigrationEngine: details fetch, folder resolve, tags, testcase create and step batches.
+ * The throughput mode reports the migrations per second, the sample time mode reports the latency percentiles (p0.99) of one migration
+ * and the GC profiler of the main method reports the allocation per operation.
+ * Journal, folder cache and content index files are not used, and the Jira status write-back is off */
+
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MigrationEndToEndBenchmark {
+
+	// Logger Initialization for MigrationEndToEndBenchmark Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String PROJECT_KEY = "MD";
+
+	@Param({ "10", "100" })
+	public int caseCount;
+
+	@Param({ "5" })
+	public int stepCount;
+
+	@Param({ "3" })
+	public int folderDepth;
+
+	private MigrationStubServer server;
+	private MigrationEngine migrationEngine;
+	private final AtomicLong nextTestcaseNumber = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+
+		server = new MigrationStubServer(PROJECT_KEY, Integer.MAX_VALUE, stepCount, folderDepth);
+		configure(server.getBaseUrl());
+		migrationEngine = new MigrationEngine(new JiraOperation());
+
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		migrationEngine.close();
+		ConnectionManager.shutdown();
+		logger.info(server.getSummary());
+		server.close();
+
+	}
+
+	// Migrate caseCount testcases which are not migrated yet. Returns the failed testcase keys
+
+	@Benchmark
+	public List<String> migrateTestcases() {
+
+		List<String> testcaseKeys = new ArrayList<String>(caseCount);
+		for (int i = 0; i < caseCount; i++) {
+			testcaseKeys.add(server.getTestcaseKey(nextTestcaseNumber.incrementAndGet()));
+		}
+		return migrationEngine.migrate(testcaseKeys);
+
+	}
+
+	// Point the migration at the stub server and turn off everything which writes local files
+
+	static void configure(String baseUrl) {
+
+		ConfigLoader.setConfigValue("JIRA_BASE_URL", baseUrl);
+		ConfigLoader.setConfigValue("JIRA_API_TOKEN", "stub-token");
+		ConfigLoader.setConfigValue("JIRA_PROJECT_KEY", PROJECT_KEY);
+		ConfigLoader.setConfigValue("RALLY_BASE_URL", baseUrl);
+		ConfigLoader.setConfigValue("RALLY_API_KEY", "stub-api-key");
+		ConfigLoader.setConfigValue("RALLY_PROJECT_REF", "/project/1001");
+		ConfigLoader.setConfigValue("RALLY_USER_REF", "2001");
+		ConfigLoader.setConfigValue("JIRA_WRITEBACK_ENABLED", "false");
+		ConfigLoader.setConfigValue("ATTACHMENT_MIGRATION_ENABLED", "false");
+		ConfigLoader.setConfigValue("MIGRATION_JOURNAL_FILE", "");
+		ConfigLoader.setConfigValue("TEST_FOLDER_CACHE_FILE", "");
+		ConfigLoader.setConfigValue("ATTACHMENT_CONTENT_INDEX_FILE", "");
+
+	}
+
+	public static void main(String[] args) throws RunnerException {
+
+		new Runner(new OptionsBuilder().include(MigrationEndToEndBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+
+	}
+
+}
@@ -0,0 +1,666 @@
+package com.optum.coe.automation.rally;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.rallydev.rest.util.Ref;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/* In-process stand-in for the Jira and Rally endpoints which are used by the migration. It is used by the benchmarks to run the migration without a network.
+ * Jira  - /rest/atm/1.0/testcase/search, /rest/atm/1.0/testcase/{key} (GET and PUT) and /rest/atm/1.0/testcase/{key}/attachments
+ * Rally - query, create, read, update and delete of testcase, testcasestep, testfolder and tag, the batch endpoint and attachment create.
+ *         The test steps of a testcase are kept in StepIndex order like Rally
+ * The Jira testcases are generated from the key: each testcase has the configured number of steps and a folder path of the configured depth.
+ * The Rally objects are kept in memory, so a folder or tag which is created is returned by a later query.
+ * A generated Jira testcase can be changed with changeJiraTestcase, so that the delta sync can be run against the server.
+ * A testcase which is marked as migrated by a PUT is not returned by the search of the non migrated testcases any more, like Jira.
+ * Each server has a StubFaultProfile with a latency distribution and a rate of 429 and 5xx answers, so that the retry and concurrency settings can be load tested.
+ * The main method starts a standalone server from the STUB_* keys of stub_server_config. Point JIRA_BASE_URL and RALLY_BASE_URL of the migration at it */
+
+public class MigrationStubServer implements AutoCloseable {
+
+	// Logger Initialization for MigrationStubServer Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String RALLY_PATH = "/slm/webservice/v2.0";
+	private static final Pattern NAME_FILTER = Pattern.compile("\\(Name = \"?(.*?)\"?\\)");
+	private static final Pattern PARENT_FILTER = Pattern.compile("\\(Parent = \"?(.*?)\"?\\)");
+	private static final Pattern TESTCASE_FILTER = Pattern.compile("\\(TestCase = \"?(.*?)\"?\\)");
+	private static final Pattern OBJECT_ID_FILTER = Pattern.compile("\\(ObjectID = \"?(.*?)\"?\\)");
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final String projectKey;
+	private final int caseCount;
+	private final int stepCount;
+	private final int folderDepth;
+	private final AtomicLong nextObjectId = new AtomicLong(100000);
+	private final Map<String, Map<String, JsonObject>> rallyObjects = new ConcurrentHashMap<String, Map<String, JsonObject>>();
+	private final AtomicLong jiraRequestCount = new AtomicLong();
+	private final AtomicLong rallyRequestCount = new AtomicLong();
+	private final AtomicLong injectedFaultCount = new AtomicLong();
+	private final AtomicLong updatedCount = new AtomicLong();
+	private final Map<String, JsonObject> jiraChanges = new ConcurrentHashMap<String, JsonObject>();
+	private final Set<String> migratedKeys = ConcurrentHashMap.newKeySet();
+	private final Map<String, List<JsonObject>> stepsByTestcase = new ConcurrentHashMap<String, List<JsonObject>>();
+	private final StubFaultProfile jiraFaults;
+	private final StubFaultProfile rallyFaults;
+
+	// Start the server on a free local port. The search returns caseCount testcases of the project key and each testcase has stepCount steps in a folder of folderDepth levels
+
+	public MigrationStubServer(String projectKey, int caseCount, int stepCount, int folderDepth) throws IOException {
+
+		this(0, projectKey, caseCount, stepCount, folderDepth, StubFaultProfile.NONE, StubFaultProfile.NONE);
+
+	}
+
+	// Start the server on the given port (0 for a free port) with the given latency and faults of the Jira and Rally answers
+
+	public MigrationStubServer(int port, String projectKey, int caseCount, int stepCount, int folderDepth, StubFaultProfile jiraFaults,
+			StubFaultProfile rallyFaults) throws IOException {
+
+		this.jiraFaults = jiraFaults;
+		this.rallyFaults = rallyFaults;
+		this.projectKey = projectKey;
+		this.caseCount = caseCount;
+		this.stepCount = stepCount;
+		this.folderDepth = Math.max(1, folderDepth);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "migration-stub-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.createContext("/rest/", exchange -> handle(exchange, jiraFaults, jiraRequestCount, this::handleJira));
+		server.createContext(RALLY_PATH + "/", exchange -> handle(exchange, rallyFaults, rallyRequestCount, this::handleRally));
+		server.start();
+
+	}
+
+	// Base URL of the server. It is used as both JIRA_BASE_URL and RALLY_BASE_URL
+
+	public String getBaseUrl() {
+
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+
+	}
+
+	// Testcase key of the given sequence number
+
+	public String getTestcaseKey(long number) {
+
+		return projectKey + "-T" + number;
+
+	}
+
+	public long getJiraRequestCount() {
+		return jiraRequestCount.get();
+	}
+
+	public long getRallyRequestCount() {
+		return rallyRequestCount.get();
+	}
+
+	// Number of requests which are answered with an injected 429 or 5xx
+
+	public long getInjectedFaultCount() {
+		return injectedFaultCount.get();
+	}
+
+	// Number of the testcases which are marked as migrated in Jira
+
+	public int getMigratedCount() {
+		return migratedKeys.size();
+	}
+
+	// Number of Rally update requests
+
+	public long getUpdatedCount() {
+		return updatedCount.get();
+	}
+
+	// Change the fields of a generated Jira testcase. The changed fields replace the generated fields in the search and the testcase details
+
+	public void changeJiraTestcase(String key, JsonObject changedFields) {
+
+		jiraChanges.merge(key, changedFields.deepCopy(), (changes, newChanges) -> {
+			JsonObject merged = changes.deepCopy();
+			newChanges.entrySet().forEach(field -> merged.add(field.getKey(), field.getValue()));
+			return merged;
+		});
+
+	}
+
+	// Number of Rally objects of the given type which are created
+
+	public int getCreatedCount(String type) {
+
+		Map<String, JsonObject> objects = rallyObjects.get(type.toLowerCase());
+		return objects == null ? 0 : objects.size();
+
+	}
+
+	@Override
+	public void close() {
+
+		server.stop(0);
+		executor.shutdownNow();
+
+	}
+
+	// Generate the Jira testcase details for the given key
+
+	public JsonObject getJiraTestcase(String key) {
+
+		JsonObject testcase = generateJiraTestcase(projectKey, key, stepCount, folderDepth);
+		JsonObject changes = jiraChanges.get(key);
+		if (changes != null) {
+			changes.entrySet().forEach(field -> testcase.add(field.getKey(), field.getValue().deepCopy()));
+		}
+		return testcase;
+
+	}
+
+	// Generate Jira testcase details with the given number of steps and folder depth. The key is "<projectKey>-T<number>"
+
+	public static JsonObject generateJiraTestcase(String projectKey, String key, int stepCount, int folderDepth) {
+
+		long number = Long.parseLong(key.substring(key.lastIndexOf("-T") + 2));
+		JsonObject testcase = new JsonObject();
+		testcase.addProperty("key", key);
+		testcase.addProperty("name", "Synthetic testcase " + number);
+		testcase.addProperty("objective", "Objective of the synthetic testcase " + number);
+		testcase.addProperty("precondition", "Member is enrolled");
+		testcase.addProperty("priority", number % 3 == 0 ? "High" : "Normal");
+		testcase.addProperty("status", number % 2 == 0 ? "Ready" : "Draft");
+		testcase.addProperty("owner", "synthetic.owner");
+		testcase.addProperty("projectKey", projectKey);
+
+		// Testcases are spread over 4 folders on each level
+		StringBuilder folder = new StringBuilder();
+		for (int level = 1; level <= folderDepth; level++) {
+			folder.append("/Level").append(level).append('-').append((number >> (2 * (level - 1))) % 4);
+		}
+		testcase.addProperty("folder", folder.toString());
+
+		JsonArray labels = new JsonArray();
+		labels.add("Synthetic");
+		labels.add("Group " + number % 5);
+		testcase.add("labels", labels);
+
+		JsonArray steps = new JsonArray();
+		for (int index = 0; index < stepCount; index++) {
+			JsonObject step = new JsonObject();
+			step.addProperty("id", number * 1000 + index);
+			step.addProperty("index", index);
+			step.addProperty("description", "Step " + (index + 1) + " of the synthetic testcase " + number);
+			step.addProperty("testData", index % 2 == 0 ? "member id " + (10000 + number) : "");
+			step.addProperty("expectedResult", "Expected result of step " + (index + 1));
+			steps.add(step);
+		}
+		JsonObject testScript = new JsonObject();
+		testScript.addProperty("type", "STEP_BY_STEP");
+		testScript.add("steps", steps);
+		testcase.add("testScript", testScript);
+		return testcase;
+
+	}
+
+	/* Standalone server for the load test of the full migration. The settings are read from the stub config file, which is the first argument
+	 * or resources/stub_server_config.properties: STUB_PORT, STUB_PROJECT_KEY, STUB_CASE_COUNT (N), STUB_STEP_COUNT (M), STUB_FOLDER_DEPTH (D)
+	 * and STUB_JIRA_* / STUB_RALLY_* of StubFaultProfile. The server runs until the process is stopped and logs the request counts at the end */
+
+	public static void main(String[] args) throws IOException {
+
+		String configFileLocation = args.length > 0 ? args[0]
+				: Paths.get("").toAbsolutePath().toString() + "/resources/stub_server_config.properties";
+		Properties stubConfig = new Properties();
+		try (FileInputStream configFile = new FileInputStream(configFileLocation)) {
+			stubConfig.load(configFile);
+		}
+		// The stub settings are kept out of the migration config, so they are added to ConfigLoader here for StubFaultProfile
+		for (String key : stubConfig.stringPropertyNames()) {
+			ConfigLoader.setConfigValue(key, stubConfig.getProperty(key));
+		}
+
+		MigrationStubServer stubServer = new MigrationStubServer(ConfigLoader.getIntConfigValue("STUB_PORT", 8089),
+				ConfigLoader.getConfigValue("STUB_PROJECT_KEY", "MD"), ConfigLoader.getIntConfigValue("STUB_CASE_COUNT", 1000),
+				ConfigLoader.getIntConfigValue("STUB_STEP_COUNT", 5), ConfigLoader.getIntConfigValue("STUB_FOLDER_DEPTH", 3),
+				StubFaultProfile.fromConfig("JIRA"), StubFaultProfile.fromConfig("RALLY"));
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			logger.info(stubServer.getSummary());
+			stubServer.close();
+		}));
+		logger.info("Migration stub server is started on {} with the config {} - Jira: {}, Rally: {}", stubServer.getBaseUrl(), configFileLocation,
+				stubServer.jiraFaults, stubServer.rallyFaults);
+
+	}
+
+	// Request counts of the server
+
+	public String getSummary() {
+
+		return "Stub server requests - Jira: " + getJiraRequestCount() + ", Rally: " + getRallyRequestCount() + ", injected faults: "
+				+ getInjectedFaultCount() + ", Rally testcases: " + getCreatedCount("testcase") + ", Rally test steps: " + getCreatedCount("testcasestep")
+				+ ", Rally test folders: " + getCreatedCount("testfolder");
+
+	}
+
+	/* Answer one request:
+	 * 1. Wait for the latency of the fault profile
+	 * 2. Answer with the injected 429 (with Retry-After) or 5xx status, if any. The request body is not processed, so nothing is created
+	 * 3. Otherwise pass the request to the Jira or Rally handler */
+
+	private void handle(HttpExchange exchange, StubFaultProfile faults, AtomicLong requestCount, HttpHandler handler) throws IOException {
+
+		requestCount.incrementAndGet();
+		try {
+			long latencyMillis = faults.nextLatencyMillis();
+			if (latencyMillis > 0) {
+				Thread.sleep(latencyMillis);
+			}
+			int faultStatus = faults.nextFaultStatus();
+			if (faultStatus != 0) {
+				injectedFaultCount.incrementAndGet();
+				readBody(exchange);
+				if (faultStatus == 429) {
+					exchange.getResponseHeaders().set("Retry-After", String.valueOf(faults.getRetryAfterSeconds()));
+				}
+				send(exchange, faultStatus, error("Injected fault " + faultStatus));
+				return;
+			}
+			handler.handle(exchange);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			send(exchange, 503, error("Server is stopped"));
+		} catch (RuntimeException e) {
+			send(exchange, 500, error(e.toString()));
+		}
+
+	}
+
+	private void handleJira(HttpExchange exchange) throws IOException {
+
+		String path = exchange.getRequestURI().getPath();
+		String method = exchange.getRequestMethod();
+		String testcasePath = "/rest/atm/1.0/testcase/";
+
+		if (path.equals(testcasePath + "search")) {
+			Map<String, String> parameters = getParameters(exchange);
+			int startAt = Integer.parseInt(parameters.getOrDefault("startAt", "0"));
+			int maxResults = Integer.parseInt(parameters.getOrDefault("maxResults", "100"));
+			boolean keysOnly = "key".equals(parameters.get("fields"));
+			boolean nonMigratedOnly = parameters.getOrDefault("query", "").contains("\" = false");
+			JsonArray testcases = new JsonArray();
+			int skipped = 0;
+			for (long number = 1; number <= caseCount && testcases.size() < maxResults; number++) {
+				if (nonMigratedOnly && migratedKeys.contains(getTestcaseKey(number)) || skipped++ < startAt) {
+					continue;
+				}
+				if (keysOnly) {
+					JsonObject key = new JsonObject();
+					key.addProperty("key", getTestcaseKey(number));
+					testcases.add(key);
+				} else {
+					testcases.add(getJiraTestcase(getTestcaseKey(number)));
+				}
+			}
+			send(exchange, 200, testcases);
+		} else if (path.startsWith(testcasePath) && path.endsWith("/attachments")) {
+			send(exchange, 200, new JsonArray());
+		} else if (path.startsWith(testcasePath) && method.equals("PUT")) {
+			JsonObject customFields = JsonParser.parseString(readBody(exchange)).getAsJsonObject().getAsJsonObject("customFields");
+			for (Map.Entry<String, JsonElement> field : customFields.entrySet()) {
+				if (field.getKey().endsWith("Migrated") && field.getValue().getAsBoolean()) {
+					migratedKeys.add(path.substring(testcasePath.length()));
+				}
+			}
+			send(exchange, 200, new JsonObject());
+		} else if (path.startsWith(testcasePath)) {
+			send(exchange, 200, getJiraTestcase(path.substring(testcasePath.length())));
+		} else {
+			send(exchange, 404, error("Unknown Jira endpoint " + path));
+		}
+
+	}
+
+	private void handleRally(HttpExchange exchange) throws IOException {
+
+		// The Rally rest api adds .js to the type of a query and to create
+		String path = exchange.getRequestURI().getPath().substring(RALLY_PATH.length()).replace(".js", "");
+		String[] segments = path.substring(1).split("/");
+		String type = segments[0].toLowerCase();
+
+		if (type.equals("batch")) {
+			JsonArray results = new JsonArray();
+			for (JsonElement entry : JsonParser.parseString(readBody(exchange)).getAsJsonObject().getAsJsonArray("Batch")) {
+				JsonObject batchEntry = entry.getAsJsonObject().getAsJsonObject("Entry");
+				String[] entrySegments = batchEntry.get("Path").getAsString().substring(1).split("/");
+				String entryType = entrySegments[0].toLowerCase();
+				JsonObject body = batchEntry.getAsJsonObject("Body");
+				JsonObject fields = body == null ? null : body.getAsJsonObject(body.keySet().iterator().next());
+				if (entrySegments[1].equals("create")) {
+					results.add(createResult(create(entryType, fields)));
+				} else if (batchEntry.get("Method").getAsString().equals("DELETE")) {
+					results.add(delete(entryType, entrySegments[1]) ? createResult(null) : error("Object is not found"));
+				} else {
+					JsonObject object = update(entryType, entrySegments[1], fields);
+					results.add(object != null ? createResult(object) : error("Object is not found"));
+				}
+			}
+			JsonObject batchResult = new JsonObject();
+			batchResult.add("Results", results);
+			batchResult.add("Errors", new JsonArray());
+			batchResult.add("Warnings", new JsonArray());
+			send(exchange, 200, wrap("BatchResult", batchResult));
+		} else if (segments.length > 1 && segments[1].equals("create")) {
+			JsonObject body = JsonParser.parseString(readBody(exchange)).getAsJsonObject();
+			send(exchange, 200, wrap("CreateResult", createResult(create(type, body.getAsJsonObject(body.keySet().iterator().next())))));
+		} else if (segments.length == 1) {
+			send(exchange, 200, wrap("QueryResult", query(type, getParameters(exchange))));
+		} else if (segments.length == 2) {
+			JsonObject object = rallyObjects.getOrDefault(type, new HashMap<String, JsonObject>()).get(segments[1]);
+			if (object == null) {
+				send(exchange, 404, error("Object " + path + " is not found"));
+			} else if (exchange.getRequestMethod().equals("POST")) {
+				JsonObject body = JsonParser.parseString(readBody(exchange)).getAsJsonObject();
+				send(exchange, 200, wrap("OperationResult", createResult(update(type, segments[1], body.getAsJsonObject(body.keySet().iterator().next())))));
+			} else if (exchange.getRequestMethod().equals("DELETE")) {
+				delete(type, segments[1]);
+				send(exchange, 200, wrap("OperationResult", createResult(null)));
+			} else {
+				send(exchange, 200, wrap(object.get("_type").getAsString(), object));
+			}
+		} else {
+			send(exchange, 404, error("Unknown Rally endpoint " + path));
+		}
+
+	}
+
+	/* Create the object. The field names are case insensitive in Rally, so they are kept with the first letter in upper case like Rally returns them.
+	 * A reference field is kept as an object with _ref like Rally returns it */
+
+	private JsonObject create(String type, JsonObject fields) {
+
+		long objectId = nextObjectId.incrementAndGet();
+		JsonObject object = new JsonObject();
+		fields.entrySet().forEach(field -> object.add(getFieldName(field.getKey()), getFieldValue(field.getValue())));
+		object.addProperty("ObjectID", objectId);
+		object.addProperty("_ref", getBaseUrl() + RALLY_PATH + "/" + type + "/" + objectId);
+		object.addProperty("_type", type);
+		if (type.equals("testcasestep")) {
+			placeStep(object, true);
+		}
+		rallyObjects.computeIfAbsent(type, t -> new ConcurrentHashMap<String, JsonObject>()).put(String.valueOf(objectId), object);
+		return object;
+
+	}
+
+	// Update the fields of the object. Returns null when the object is not found
+
+	private JsonObject update(String type, String objectId, JsonObject fields) {
+
+		JsonObject object = rallyObjects.getOrDefault(type, new HashMap<String, JsonObject>()).get(objectId);
+		if (object == null) {
+			return null;
+		}
+		synchronized (object) {
+			fields.entrySet().forEach(field -> object.add(getFieldName(field.getKey()), getFieldValue(field.getValue())));
+		}
+		if (type.equals("testcasestep") && fields.has("StepIndex")) {
+			placeStep(object, false);
+		}
+		updatedCount.incrementAndGet();
+		return object;
+
+	}
+
+	// Delete the object. Returns false when the object is not found
+
+	private boolean delete(String type, String objectId) {
+
+		JsonObject object = rallyObjects.getOrDefault(type, new HashMap<String, JsonObject>()).remove(objectId);
+		if (object != null && type.equals("testcasestep")) {
+			List<JsonObject> steps = getSteps(object);
+			synchronized (steps) {
+				steps.remove(object);
+				reindex(steps);
+			}
+		}
+		return object != null;
+
+	}
+
+	/* Place the test step in the step list of its testcase like Rally: a step with a StepIndex is inserted at the index and the next steps are moved down,
+	 * a new step without a StepIndex is added at the end */
+
+	private void placeStep(JsonObject step, boolean created) {
+
+		List<JsonObject> steps = getSteps(step);
+		synchronized (steps) {
+			if (!created) {
+				steps.remove(step);
+			}
+			int stepIndex = step.has("StepIndex") ? step.get("StepIndex").getAsInt() : steps.size();
+			steps.add(Math.max(0, Math.min(stepIndex, steps.size())), step);
+			reindex(steps);
+		}
+
+	}
+
+	private List<JsonObject> getSteps(JsonObject step) {
+
+		return stepsByTestcase.computeIfAbsent(getRelativeRef(step.get("TestCase")), testcase -> new ArrayList<JsonObject>());
+
+	}
+
+	private static void reindex(List<JsonObject> steps) {
+
+		for (int i = 0; i < steps.size(); i++) {
+			steps.get(i).addProperty("StepIndex", i);
+		}
+
+	}
+
+	private static String getFieldName(String name) {
+
+		return name.isEmpty() || name.startsWith("_") ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+
+	}
+
+	/* Query the created objects. Only the Name, Parent, TestCase and ObjectID filters, the project scope and the StepIndex order are applied, which are the ones used by the migration.
+	 * The TestCase and ObjectID filters may be repeated, joined with OR by the verification */
+
+	private JsonObject query(String type, Map<String, String> parameters) {
+
+		String queryString = parameters.getOrDefault("query", "");
+		Matcher nameMatcher = NAME_FILTER.matcher(queryString);
+		String name = nameMatcher.find() ? nameMatcher.group(1) : null;
+		Matcher parentMatcher = PARENT_FILTER.matcher(queryString);
+		String parent = parentMatcher.find() ? parentMatcher.group(1) : null;
+		Set<String> testcases = getFilterValues(TESTCASE_FILTER, queryString);
+		Set<String> objectIds = getFilterValues(OBJECT_ID_FILTER, queryString);
+		String project = parameters.containsKey("project") ? Ref.getRelativeRef(parameters.get("project")) : null;
+
+		List<JsonObject> matches = new ArrayList<JsonObject>();
+		Map<String, JsonObject> objects = rallyObjects.getOrDefault(type, new HashMap<String, JsonObject>());
+		for (JsonObject object : objects.values()) {
+			if (name != null && (!object.has("Name") || !object.get("Name").getAsString().equals(name))) {
+				continue;
+			}
+			if (parent != null && !parent.equals(getRelativeRef(object.get("Parent")))) {
+				continue;
+			}
+			if (!testcases.isEmpty() && !testcases.contains(getRelativeRef(object.get("TestCase")))) {
+				continue;
+			}
+			if (!objectIds.isEmpty() && !objectIds.contains(object.get("ObjectID").getAsString())) {
+				continue;
+			}
+			if (project != null && object.has("Project") && !project.equals(getRelativeRef(object.get("Project")))) {
+				continue;
+			}
+			matches.add(object);
+		}
+		if (parameters.getOrDefault("order", "").startsWith("StepIndex")) {
+			matches.sort((first, second) -> Integer.compare(first.get("StepIndex").getAsInt(), second.get("StepIndex").getAsInt()));
+		}
+
+		int start = Math.max(1, Integer.parseInt(parameters.getOrDefault("start", "1")));
+		int pageSize = Math.max(1, Integer.parseInt(parameters.getOrDefault("pagesize", "200")));
+		JsonArray results = new JsonArray();
+		for (int i = start - 1; i < Math.min(matches.size(), start - 1 + pageSize); i++) {
+			results.add(matches.get(i));
+		}
+		JsonObject queryResult = new JsonObject();
+		queryResult.addProperty("TotalResultCount", matches.size());
+		queryResult.addProperty("StartIndex", start);
+		queryResult.addProperty("PageSize", pageSize);
+		queryResult.add("Results", results);
+		queryResult.add("Errors", new JsonArray());
+		queryResult.add("Warnings", new JsonArray());
+		return queryResult;
+
+	}
+
+	// Value of a created or updated field. A reference text is returned as an object with _ref by Rally
+
+	private static JsonElement getFieldValue(JsonElement value) {
+
+		if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isString() && Ref.isRef(value.getAsString())) {
+			JsonObject ref = new JsonObject();
+			ref.addProperty("_ref", value.getAsString());
+			return ref;
+		}
+		return value.deepCopy();
+
+	}
+
+	// All the values of the filter in the query
+
+	private static Set<String> getFilterValues(Pattern filter, String queryString) {
+
+		Set<String> values = new HashSet<String>();
+		Matcher matcher = filter.matcher(queryString);
+		while (matcher.find()) {
+			values.add(matcher.group(1));
+		}
+		return values;
+
+	}
+
+	// Relative reference (for example /testfolder/123) of a reference value, or "null" when there is no reference
+
+	private static String getRelativeRef(JsonElement ref) {
+
+		if (ref == null || ref.isJsonNull()) {
+			return "null";
+		}
+		String value = ref.isJsonObject() ? ref.getAsJsonObject().get("_ref").getAsString() : ref.getAsString();
+		int index = value.indexOf(RALLY_PATH);
+		return index >= 0 ? value.substring(index + RALLY_PATH.length()) : value;
+
+	}
+
+	private static JsonObject createResult(JsonObject object) {
+
+		JsonObject createResult = new JsonObject();
+		createResult.add("Object", object);
+		createResult.add("Errors", new JsonArray());
+		createResult.add("Warnings", new JsonArray());
+		return createResult;
+
+	}
+
+	private static JsonObject wrap(String root, JsonObject result) {
+
+		JsonObject response = new JsonObject();
+		response.add(root, result);
+		return response;
+
+	}
+
+	private static JsonObject error(String message) {
+
+		JsonArray errors = new JsonArray();
+		errors.add(message);
+		JsonObject error = new JsonObject();
+		error.add("Errors", errors);
+		return error;
+
+	}
+
+	private static Map<String, String> getParameters(HttpExchange exchange) {
+
+		Map<String, String> parameters = new HashMap<String, String>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) {
+			return parameters;
+		}
+		for (String parameter : query.split("&")) {
+			int separator = parameter.indexOf('=');
+			if (separator > 0) {
+				parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+						URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return parameters;
+
+	}
+
+	private static String readBody(HttpExchange exchange) throws IOException {
+
+		try (InputStream in = exchange.getRequestBody()) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+			return body.toString(StandardCharsets.UTF_8.name());
+		}
+
+	}
+
+	static void send(HttpExchange exchange, int status, JsonElement body) throws IOException {
+
+		byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+
+	}
+
+}
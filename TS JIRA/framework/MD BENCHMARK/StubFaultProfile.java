@@ -0,0 +1,116 @@
+package com.optum.coe.automation.rally;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/* Latency and fault injection of one server (Jira or Rally) of MigrationStubServer.
+ * 1. Latency distribution, written as "<distribution>:<values>" in milliseconds
+ *    none | fixed:<millis> | uniform:<min>:<max> | exponential:<mean> | lognormal:<median>:<p99>
+ * 2. Throttle rate - share of the requests which are answered with 429 and a Retry-After header
+ * 3. Error rate - share of the requests which are answered with 500 or 503
+ * The latency is applied before the answer of every request, including the throttled and failed requests */
+
+public class StubFaultProfile {
+
+	// z value of the 99th percentile of the standard normal distribution
+	private static final double Z_P99 = 2.326;
+
+	public static final StubFaultProfile NONE = new StubFaultProfile("none", 0, 0, 0);
+
+	private final String latency;
+	private final String distribution;
+	private final double first;
+	private final double second;
+	private final double throttleRate;
+	private final double errorRate;
+	private final int retryAfterSeconds;
+
+	public StubFaultProfile(String latency, double throttleRate, double errorRate, int retryAfterSeconds) {
+
+		this.latency = latency == null || latency.trim().isEmpty() ? "none" : latency.trim().toLowerCase(Locale.ROOT);
+		String[] values = this.latency.split(":");
+		distribution = values[0];
+		first = values.length > 1 ? Double.parseDouble(values[1]) : 0;
+		second = values.length > 2 ? Double.parseDouble(values[2]) : first;
+		switch (distribution) {
+		case "none":
+		case "fixed":
+		case "uniform":
+		case "exponential":
+		case "lognormal":
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown latency distribution " + latency);
+		}
+		this.throttleRate = Math.max(0, Math.min(1, throttleRate));
+		this.errorRate = Math.max(0, Math.min(1, errorRate));
+		this.retryAfterSeconds = Math.max(0, retryAfterSeconds);
+
+	}
+
+	// Fault profile of the given server (JIRA or RALLY) from the STUB_<SERVER>_* config keys
+
+	public static StubFaultProfile fromConfig(String server) {
+
+		return new StubFaultProfile(ConfigLoader.getConfigValue("STUB_" + server + "_LATENCY", "none"),
+				Double.parseDouble(ConfigLoader.getConfigValue("STUB_" + server + "_THROTTLE_RATE", "0")),
+				Double.parseDouble(ConfigLoader.getConfigValue("STUB_" + server + "_ERROR_RATE", "0")),
+				ConfigLoader.getIntConfigValue("STUB_" + server + "_RETRY_AFTER_SECONDS", 1));
+
+	}
+
+	// Latency of the next request in milliseconds
+
+	public long nextLatencyMillis() {
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		double millis;
+		switch (distribution) {
+		case "fixed":
+			millis = first;
+			break;
+		case "uniform":
+			millis = second > first ? random.nextDouble(first, second) : first;
+			break;
+		case "exponential":
+			millis = -first * Math.log(1 - random.nextDouble());
+			break;
+		case "lognormal":
+			// The median is e^mu and the p99 is e^(mu + 2.326 sigma)
+			double sigma = first > 0 && second > first ? Math.log(second / first) / Z_P99 : 0;
+			millis = first * Math.exp(sigma * random.nextGaussian());
+			break;
+		default:
+			millis = 0;
+		}
+		return Math.max(0, Math.round(millis));
+
+	}
+
+	// Status which is injected for the next request, or 0 when the request is answered normally
+
+	public int nextFaultStatus() {
+
+		double value = ThreadLocalRandom.current().nextDouble();
+		if (value < throttleRate) {
+			return 429;
+		}
+		if (value < throttleRate + errorRate) {
+			return ThreadLocalRandom.current().nextBoolean() ? 500 : 503;
+		}
+		return 0;
+
+	}
+
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+	@Override
+	public String toString() {
+
+		return "latency " + latency + ", throttle rate " + throttleRate + ", error rate " + errorRate + ", retry after " + retryAfterSeconds + "s";
+
+	}
+
+}
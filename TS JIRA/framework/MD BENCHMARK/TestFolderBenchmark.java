@@ -0,0 +1,81 @@
+package com.optum.coe.automation.rally;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.JsonObject;
+
+/* JMH benchmark of the folder path splitting and resolution in Utils.createTestFolder.
+ * All the folder paths are already in the test folder cache, so this is the cost of a testcase whose folder is already resolved.
+ * The cost of a folder which is not resolved yet is a Rally query and create, which is measured by MigrationEndToEndBenchmark */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TestFolderBenchmark {
+
+	private static final String PROJECT_REF = "789325818991";
+
+	@Param({ "2", "5" })
+	public int folderDepth;
+
+	private String folderPath;
+
+	@Setup
+	public void setUp() {
+
+		// The folder cache is kept only in memory
+		ConfigLoader.setConfigValue("TEST_FOLDER_CACHE_FILE", "");
+		folderPath = MigrationStubServer.generateJiraTestcase("MD", "MD-T1001", 0, folderDepth).get("folder").getAsString();
+		TestFolderCache folderCache = TestFolderCache.getInstance();
+		StringBuilder path = new StringBuilder();
+		int folderNumber = 0;
+		for (String folderName : folderPath.split("/")) {
+			if (!folderName.isEmpty()) {
+				path.append('/').append(folderName);
+				folderCache.put(PROJECT_REF, path.toString(), "/testfolder/" + (++folderNumber));
+			}
+		}
+
+	}
+
+	@Benchmark
+	public String[] splitFolderPath() {
+
+		return folderPath.split("/");
+
+	}
+
+	@Benchmark
+	public JsonObject resolveCachedFolder() {
+
+		// The Rally rest api is not used when all the folders are in the cache
+		return Utils.createTestFolder(folderPath.split("/"), PROJECT_REF, null);
+
+	}
+
+	public static void main(String[] args) throws RunnerException {
+
+		new Runner(new OptionsBuilder().include(TestFolderBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.optum.coe.automation.rally;
+
+import java.io.IOException;
+
+// Exception for a Jira or Rally call which is answered with an error status. The status code and the Retry-After delay are used by ApiCallExecutor to decide the retry
+
+public class ApiCallException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+	private final long retryAfterMillis;
+	private final boolean retryable;
+
+	public ApiCallException(String message, int statusCode, long retryAfterMillis) {
+
+		this(message, statusCode, retryAfterMillis, false);
+
+	}
+
+	// A retryable exception means the server did not process the request, so the call can be retried even when it is not idempotent
+
+	public ApiCallException(String message, int statusCode, long retryAfterMillis, boolean retryable) {
+
+		super(message);
+		this.statusCode = statusCode;
+		this.retryAfterMillis = retryAfterMillis;
+		this.retryable = retryable;
+
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+	public boolean isRetryable() {
+		return retryable;
+	}
+
+}
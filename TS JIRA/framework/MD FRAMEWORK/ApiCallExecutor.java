@@ -0,0 +1,404 @@
+package com.optum.coe.automation.rally;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class is the client side call layer which is shared by all the Jira calls and by all the Rally calls.
+ * 1. Each endpoint (for example "testcase search" or "testcase create") has its own token bucket, so a call waits when the endpoint rate limit is reached
+ * 2. The number of calls in flight for the server is limited by an AIMD limit. The limit grows by one per round of successful calls
+ *    and it is halved when the server answers 429/503 or the call latency is much higher than the normal latency
+ * 3. A Retry-After answer pauses all the calls to the server for the given time
+ * 4. A failed idempotent call (query, get, update) is retried with jittered exponential backoff. A create call is retried only when the server
+ *    did not process the request (429/503 or a retryable Rally error), so that a record is not created twice
+ * 5. In the multi project mode the calls of the projects share the tokens of each endpoint and the concurrency limit in the ratio of the project weights,
+ *    so a project with many waiting calls does not take all the tokens or slots of the server. See ProjectScheduler
+ * Limits are loaded from .properties file with the server name prefix, for example JIRA_RATE_LIMIT_PER_SECOND and RALLY_RATE_LIMIT_PER_SECOND */
+
+public class ApiCallExecutor {
+
+	// Logger Initialization for ApiCallExecutor Class
+	private static final Logger logger = LogManager.getLogger();
+
+	public static final String JIRA = "JIRA";
+	public static final String RALLY = "RALLY";
+
+	// Status line of the IOException which is thrown by the Rally rest api for a non 200 answer, for example "HTTP/1.1 429 Too Many Requests"
+	private static final Pattern STATUS_LINE_PATTERN = Pattern.compile("HTTP/\\d(?:\\.\\d)?\\s+(\\d{3})");
+
+	private static final ConcurrentHashMap<String, ApiCallExecutor> instances = new ConcurrentHashMap<String, ApiCallExecutor>();
+
+	// A Jira or Rally call which is executed by this class
+
+	public interface ApiCall<T> {
+		T call() throws IOException;
+	}
+
+	private final String serverName;
+	private final double ratePerSecond;
+	private final int burst;
+	private final int maxRetries;
+	private final long baseBackoffMillis;
+	private final long maxBackoffMillis;
+	private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+	private final AimdLimit concurrencyLimit;
+	private volatile long pausedUntilNanos;
+
+	/* A Constructor loads the value from .properties file for the given server name.
+	 * <SERVER>_RATE_LIMIT_PER_SECOND - calls per second for each endpoint, 0 means no rate limit
+	 * <SERVER>_RATE_LIMIT_BURST - calls which can be made at once after an idle time
+	 * <SERVER>_MAX_CONCURRENT_REQUESTS - upper bound of the AIMD concurrency limit
+	 * <SERVER>_LATENCY_SPIKE_FACTOR - a call which is slower than this factor times the normal latency reduces the concurrency limit
+	 * <SERVER>_MAX_RETRIES / <SERVER>_RETRY_BASE_MILLIS / <SERVER>_RETRY_MAX_MILLIS - retry count and backoff of a failed call */
+
+	public ApiCallExecutor(String serverName) {
+
+		this.serverName = serverName;
+		ratePerSecond = Double.parseDouble(ConfigLoader.getConfigValue(serverName + "_RATE_LIMIT_PER_SECOND", "0"));
+		burst = Math.max(1, ConfigLoader.getIntConfigValue(serverName + "_RATE_LIMIT_BURST", 10));
+		maxRetries = Math.max(0, ConfigLoader.getIntConfigValue(serverName + "_MAX_RETRIES", 4));
+		baseBackoffMillis = Math.max(1, ConfigLoader.getIntConfigValue(serverName + "_RETRY_BASE_MILLIS", 500));
+		maxBackoffMillis = Math.max(baseBackoffMillis, ConfigLoader.getIntConfigValue(serverName + "_RETRY_MAX_MILLIS", 30000));
+		int maxConcurrency = Math.max(1, ConfigLoader.getIntConfigValue(serverName + "_MAX_CONCURRENT_REQUESTS",
+				ConfigLoader.getIntConfigValue("MIGRATION_WORKER_COUNT", 4)));
+		double latencySpikeFactor = Double.parseDouble(ConfigLoader.getConfigValue(serverName + "_LATENCY_SPIKE_FACTOR", "3"));
+		concurrencyLimit = new AimdLimit(serverName, maxConcurrency, latencySpikeFactor);
+		logger.info("{} call layer is initialized. Rate limit per endpoint - {}, concurrency limit - {}, retries - {}", serverName,
+				ratePerSecond > 0 ? ratePerSecond + "/s" : "none", maxConcurrency, maxRetries);
+
+	}
+
+	// Get the process-wide call layer of the given server
+
+	public static ApiCallExecutor getInstance(String serverName) {
+
+		return instances.computeIfAbsent(serverName, ApiCallExecutor::new);
+
+	}
+
+	/* Execute the call for the given endpoint within the rate limit and the concurrency limit of the server.
+	 * The call is retried when it fails with a retryable error. The last error is thrown when all the retries are failed */
+
+	public <T> T execute(String endpoint, boolean idempotent, ApiCall<T> call) throws IOException {
+
+		ProjectScheduler.Project project = ProjectScheduler.getCurrentProject();
+		for (int attempt = 0;; attempt++) {
+			try {
+				awaitPermit(endpoint, project);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the " + serverName + " rate limit of " + endpoint, e);
+			}
+			if (project != null) {
+				project.recordCall(serverName);
+			}
+
+			MigrationMetrics metrics = MigrationMetrics.getInstance();
+			metrics.callStarted(serverName);
+			long startNanos = System.nanoTime();
+			IOException failure;
+			try {
+				T result = call.call();
+				long latencyNanos = System.nanoTime() - startNanos;
+				concurrencyLimit.release(endpoint, latencyNanos, false);
+				metrics.recordCall(serverName, endpoint, latencyNanos, false);
+				return result;
+			} catch (IOException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				long latencyNanos = System.nanoTime() - startNanos;
+				concurrencyLimit.release(endpoint, latencyNanos, false);
+				metrics.recordCall(serverName, endpoint, latencyNanos, true);
+				throw e;
+			}
+
+			int statusCode = getStatusCode(failure);
+			boolean overloaded = statusCode == 429 || statusCode == 503;
+			long latencyNanos = System.nanoTime() - startNanos;
+			concurrencyLimit.release(endpoint, latencyNanos, overloaded);
+			metrics.recordCall(serverName, endpoint, latencyNanos, true);
+
+			long retryAfterMillis = failure instanceof ApiCallException ? ((ApiCallException) failure).getRetryAfterMillis() : 0;
+			if (retryAfterMillis > 0) {
+				pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+			}
+
+			boolean retryable = overloaded || (failure instanceof ApiCallException && ((ApiCallException) failure).isRetryable())
+					|| (idempotent && (statusCode == 0 || statusCode >= 500));
+			if (!retryable || attempt >= maxRetries) {
+				throw failure;
+			}
+
+			// Full jitter backoff. The Retry-After delay is used when it is longer
+			long backoffMillis = Math.max(retryAfterMillis,
+					ThreadLocalRandom.current().nextLong(Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt, 20)) + 1));
+			metrics.recordRetry(serverName, endpoint);
+			logger.info("{} call {} failed ({}). Retry {} of {} in {} ms", serverName, endpoint, failure.getMessage(), attempt + 1, maxRetries, backoffMillis);
+			try {
+				Thread.sleep(backoffMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw failure;
+			}
+		}
+
+	}
+
+	// Current AIMD concurrency limit of the server
+
+	public int getConcurrencyLimit() {
+
+		return concurrencyLimit.getLimit();
+
+	}
+
+	// Create the exception for an error answer of the server. The Retry-After header is read in seconds
+
+	public static ApiCallException getException(String message, HttpResponse response) {
+
+		long retryAfterMillis = 0;
+		Header retryAfter = response.getFirstHeader("Retry-After");
+		if (retryAfter != null) {
+			try {
+				retryAfterMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.getValue().trim()));
+			} catch (NumberFormatException e) {
+				// A HTTP date is not supported. The backoff delay is used
+			}
+		}
+		return new ApiCallException(message + ". Response status " + response.getStatusLine(), response.getStatusLine().getStatusCode(), retryAfterMillis);
+
+	}
+
+	// Get the status code of the failed call. Returns 0 when the call is failed without a response, for example a connection error
+
+	static int getStatusCode(IOException e) {
+
+		if (e instanceof ApiCallException) {
+			return ((ApiCallException) e).getStatusCode();
+		}
+		if (e.getMessage() != null) {
+			Matcher matcher = STATUS_LINE_PATTERN.matcher(e.getMessage());
+			if (matcher.find()) {
+				return Integer.parseInt(matcher.group(1));
+			}
+		}
+		return 0;
+
+	}
+
+	// The calls which are not made for a project of the multi project mode share one slot queue
+
+	private void awaitPermit(String endpoint, ProjectScheduler.Project project) throws InterruptedException {
+
+		long pausedNanos = pausedUntilNanos - System.nanoTime();
+		if (pausedNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(pausedNanos);
+		}
+		String shareName = project == null ? "" : project.getName();
+		int weight = project == null ? 1 : project.getWeight();
+		if (ratePerSecond > 0) {
+			buckets.computeIfAbsent(endpoint, e -> new TokenBucket(ratePerSecond, burst)).acquire(shareName, weight);
+		}
+		concurrencyLimit.acquire(shareName, weight);
+
+	}
+
+	/* Token bucket of one endpoint. A caller takes a token and waits until the token is refilled when the bucket is empty.
+	 * The tokens are given to the waiting calls by weighted fair queuing, so the rate of the endpoint is shared in the ratio of the project weights */
+
+	private static class TokenBucket {
+
+		private final double tokensPerNano;
+		private final double capacity;
+		private final FairQueue queue = new FairQueue();
+		private double tokens;
+		private long lastRefillNanos;
+
+		TokenBucket(double ratePerSecond, int capacity) {
+			this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+			this.capacity = capacity;
+			tokens = capacity;
+			lastRefillNanos = System.nanoTime();
+		}
+
+		synchronized void acquire(String shareName, int weight) throws InterruptedException {
+			Share share = queue.join(shareName);
+			try {
+				while (true) {
+					long now = System.nanoTime();
+					tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+					lastRefillNanos = now;
+					if (!queue.isNext(share)) {
+						wait();
+					} else if (tokens < 1) {
+						// Only the next share waits for the refill, so a token is not taken by a share which arrived later
+						TimeUnit.NANOSECONDS.timedWait(this, (long) Math.ceil((1 - tokens) / tokensPerNano));
+					} else {
+						break;
+					}
+				}
+			} catch (InterruptedException e) {
+				queue.leave(share);
+				notifyAll();
+				throw e;
+			}
+			tokens -= 1;
+			queue.take(share, weight);
+			notifyAll();
+		}
+
+	}
+
+	/* Additive increase / multiplicative decrease limit of the calls in flight. The free slots are given to the waiting calls by weighted fair queuing.
+	 * The normal latency is a moving average of the calls of each endpoint, because a query and an attachment upload do not have the same latency.
+	 * A slow call is added to the average too, so the average follows a server which stays slower, and the limit grows back after the spike is learned.
+	 * The limit is reduced at most once per normal latency, so one burst of slow calls reduces it only once */
+
+	private static class AimdLimit {
+
+		private static final double BACKOFF_RATIO = 0.5;
+		private static final int WARMUP_CALLS = 10;
+
+		private final String serverName;
+		private final int maxLimit;
+		private final double latencySpikeFactor;
+		private double limit;
+		private int inFlight;
+		private final Map<String, Latency> normalLatencies = new HashMap<String, Latency>();
+		private long lastDecreaseNanos;
+		private final FairQueue queue = new FairQueue();
+
+		AimdLimit(String serverName, int maxLimit, double latencySpikeFactor) {
+			this.serverName = serverName;
+			this.maxLimit = maxLimit;
+			this.latencySpikeFactor = latencySpikeFactor;
+			limit = maxLimit;
+		}
+
+		synchronized void acquire(String shareName, int weight) throws InterruptedException {
+			Share share = queue.join(shareName);
+			try {
+				while (inFlight >= (int) limit || !queue.isNext(share)) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				queue.leave(share);
+				notifyAll();
+				throw e;
+			}
+			inFlight++;
+			queue.take(share, weight);
+			if (inFlight < (int) limit) {
+				// The next share may take the free slot now
+				notifyAll();
+			}
+		}
+
+		synchronized void release(String endpoint, long latencyNanos, boolean overloaded) {
+			inFlight--;
+			Latency normalLatency = normalLatencies.computeIfAbsent(endpoint, e -> new Latency());
+			boolean latencySpike = normalLatency.sampleCount >= WARMUP_CALLS && latencyNanos > normalLatency.averageNanos * latencySpikeFactor;
+			if (overloaded || latencySpike) {
+				decrease(overloaded ? "overloaded answer" : "latency spike of " + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + " ms on " + endpoint,
+						normalLatency.averageNanos);
+			} else {
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+			if (!overloaded) {
+				normalLatency.add(latencyNanos);
+			}
+			notifyAll();
+		}
+
+		synchronized int getLimit() {
+			return (int) limit;
+		}
+
+		private void decrease(String reason, double normalLatencyNanos) {
+			long now = System.nanoTime();
+			if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < Math.max(normalLatencyNanos, TimeUnit.MILLISECONDS.toNanos(100))) {
+				return;
+			}
+			lastDecreaseNanos = now;
+			limit = Math.max(1, limit * BACKOFF_RATIO);
+			logger.info("{} concurrency limit is reduced to {} after {}", serverName, (int) limit, reason);
+		}
+
+	}
+
+	// Moving average of the call latency of one endpoint
+
+	private static class Latency {
+
+		private static final double SMOOTHING = 0.1;
+
+		private double averageNanos;
+		private long sampleCount;
+
+		void add(long latencyNanos) {
+			averageNanos = sampleCount == 0 ? latencyNanos : averageNanos + SMOOTHING * (latencyNanos - averageNanos);
+			sampleCount++;
+		}
+
+	}
+
+	/* Weighted fair queue of the calls which wait for a token or a slot. Each share (a project, or all the calls when no project is running) has a virtual time
+	 * which grows by 1 / weight for each grant it takes, and a grant is taken only by the share with the lowest virtual time. So the shares get the grants
+	 * in the ratio of their weights, however many calls each share is waiting with. The caller synchronizes the calls of the queue */
+
+	private static class FairQueue {
+
+		private final Map<String, Share> shares = new HashMap<String, Share>();
+		private double virtualTime;
+
+		Share join(String shareName) {
+			Share share = shares.computeIfAbsent(shareName, name -> new Share());
+			if (share.waiting == 0) {
+				// A share which was idle starts from the current virtual time. It does not get back the grants which it did not use
+				share.virtualTime = Math.max(share.virtualTime, virtualTime);
+			}
+			share.waiting++;
+			return share;
+		}
+
+		boolean isNext(Share share) {
+			for (Share other : shares.values()) {
+				if (other.waiting > 0 && other.virtualTime < share.virtualTime) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		void take(Share share, int weight) {
+			share.waiting--;
+			virtualTime = share.virtualTime;
+			share.virtualTime += 1.0 / Math.max(1, weight);
+		}
+
+		void leave(Share share) {
+			share.waiting--;
+		}
+
+	}
+
+	// Waiting calls and virtual time of one share of a fair queue
+
+	private static class Share {
+
+		private int waiting;
+		private double virtualTime;
+
+	}
+
+}
@@ -0,0 +1,242 @@
+package com.optum.coe.automation.rally;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class keeps a content addressed index of the attachment content which is already uploaded to Rally.
+ * 1. The content key of an attachment is the SHA-256 of its bytes and its size (for example 9f86d0...-2048). The key is calculated while the file is downloaded
+ * 2. Content which is already uploaded is not uploaded again. The new Rally attachment refers to the existing AttachmentContent
+ * 3. The content key of each Jira attachment id is kept too, so an attachment which is migrated again (for example after a restart) is not downloaded again
+ * 4. When many attachments with the same content are uploaded at the same time, only the first caller uploads it and the other callers wait for its result
+ * When ATTACHMENT_CONTENT_INDEX_FILE is configured, the index is appended to the file and loaded again in the next run */
+
+public class AttachmentContentStore {
+
+	// Logger Initialization for AttachmentContentStore Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String SEPARATOR = "\t";
+	private static final String CONTENT_RECORD = "content";
+	private static final String JIRA_RECORD = "jira";
+
+	private static AttachmentContentStore instance;
+
+	private final ConcurrentHashMap<String, CompletableFuture<String>> contentRefs = new ConcurrentHashMap<String, CompletableFuture<String>>();
+	private final ConcurrentHashMap<String, String> contentKeysByJiraId = new ConcurrentHashMap<String, String>();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final Path indexFile;
+	private BufferedWriter indexWriter;
+
+	// A Constructor which loads the persisted index from the given file. The index is kept only in memory when the file is null
+
+	public AttachmentContentStore(Path indexFile) {
+
+		this.indexFile = indexFile;
+		if (indexFile != null) {
+			load();
+		}
+
+	}
+
+	// Get the process-wide store. Index file location is loaded from ATTACHMENT_CONTENT_INDEX_FILE in .properties file
+
+	public static synchronized AttachmentContentStore getInstance() {
+
+		if (instance == null) {
+			String indexFileLocation = ConfigLoader.getConfigValue("ATTACHMENT_CONTENT_INDEX_FILE", null);
+			instance = new AttachmentContentStore(indexFileLocation == null ? null : Paths.get(indexFileLocation));
+		}
+		return instance;
+
+	}
+
+	// Create the digest which calculates the content key while the attachment is streamed
+
+	public static MessageDigest newDigest() {
+
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available in this JVM", e);
+		}
+
+	}
+
+	// Get the content key for the digest of the streamed content and its size
+
+	public static String getContentKey(MessageDigest digest, long size) {
+
+		StringBuilder contentKey = new StringBuilder(80);
+		for (byte value : digest.digest()) {
+			contentKey.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+		}
+		return contentKey.append('-').append(size).toString();
+
+	}
+
+	// Get the content size from the content key
+
+	public static long getContentSize(String contentKey) {
+
+		return Long.parseLong(contentKey.substring(contentKey.lastIndexOf('-') + 1));
+
+	}
+
+	/* Get the Rally AttachmentContent reference for the given content key. The uploader is called only when the content is not uploaded yet
+	 * and no other caller is uploading the same content */
+
+	public String resolve(String contentKey, Callable<String> uploader) throws IOException {
+
+		CompletableFuture<String> future = new CompletableFuture<String>();
+		CompletableFuture<String> existing = contentRefs.putIfAbsent(contentKey, future);
+		if (existing != null) {
+			hitCount.incrementAndGet();
+			try {
+				return existing.get();
+			} catch (ExecutionException e) {
+				throw new IOException("Attachment content " + contentKey + " is not uploaded by another attachment", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the attachment content " + contentKey, e);
+			}
+		}
+
+		missCount.incrementAndGet();
+		String contentRef;
+		try {
+			contentRef = uploader.call();
+		} catch (Exception e) {
+			// Remove the failed entry so that the next caller can try again
+			contentRefs.remove(contentKey, future);
+			future.completeExceptionally(e);
+			throw new IOException("Failed to upload the attachment content " + contentKey, e);
+		}
+		persist(CONTENT_RECORD, contentKey, contentRef);
+		future.complete(contentRef);
+		return contentRef;
+
+	}
+
+	// Get the Rally AttachmentContent reference without uploading. Returns null when the content is not uploaded yet
+
+	public String getContentRef(String contentKey) {
+
+		CompletableFuture<String> future = contentRefs.get(contentKey);
+		return (future != null && future.isDone() && !future.isCompletedExceptionally()) ? future.join() : null;
+
+	}
+
+	// Get the content key of a Jira attachment which is already downloaded. Returns null when the attachment is not downloaded yet
+
+	public String getContentKey(String jiraAttachmentId) {
+
+		return jiraAttachmentId == null ? null : contentKeysByJiraId.get(jiraAttachmentId);
+
+	}
+
+	// Add the content key of a downloaded Jira attachment
+
+	public void putContentKey(String jiraAttachmentId, String contentKey) {
+
+		if (jiraAttachmentId != null && !contentKey.equals(contentKeysByJiraId.put(jiraAttachmentId, contentKey))) {
+			persist(JIRA_RECORD, jiraAttachmentId, contentKey);
+		}
+
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public int size() {
+		return contentRefs.size();
+	}
+
+	// Close the index file
+
+	public synchronized void close() {
+
+		if (indexWriter != null) {
+			try {
+				indexWriter.close();
+			} catch (IOException e) {
+				logger.error("Error occurred while closing the attachment content index file {}", indexFile, e);
+			}
+			indexWriter = null;
+		}
+
+	}
+
+	// Load the persisted index. Each line of the file is "content<TAB>contentKey<TAB>contentRef" or "jira<TAB>attachmentId<TAB>contentKey"
+
+	private void load() {
+
+		if (!Files.exists(indexFile)) {
+			return;
+		}
+		try {
+			List<String> lines = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+			for (String line : lines) {
+				String[] values = line.split(SEPARATOR);
+				if (values.length != 3) {
+					continue;
+				}
+				if (CONTENT_RECORD.equals(values[0])) {
+					contentRefs.put(values[1], CompletableFuture.completedFuture(values[2]));
+				} else if (JIRA_RECORD.equals(values[0])) {
+					contentKeysByJiraId.put(values[1], values[2]);
+				}
+			}
+			logger.info("{} attachment content references are loaded from {}", contentRefs.size(), indexFile);
+		} catch (IOException e) {
+			logger.error("Failed to load the attachment content index file {}", indexFile, e);
+		}
+
+	}
+
+	// Append the index record to the index file
+
+	private synchronized void persist(String recordType, String key, String value) {
+
+		if (indexFile == null) {
+			return;
+		}
+		try {
+			if (indexWriter == null) {
+				Path parent = indexFile.toAbsolutePath().getParent();
+				if (parent != null) {
+					Files.createDirectories(parent);
+				}
+				indexWriter = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+			indexWriter.write(recordType + SEPARATOR + key + SEPARATOR + value);
+			indexWriter.newLine();
+			indexWriter.flush();
+		} catch (IOException e) {
+			logger.error("Failed to write the attachment content index record to the file {}", indexFile, e);
+		}
+
+	}
+
+}
@@ -0,0 +1,409 @@
+package com.optum.coe.automation.rally;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.rallydev.rest.RallyRestApi;
+import com.rallydev.rest.request.CreateRequest;
+import com.rallydev.rest.response.CreateResponse;
+
+/* This Class migrates the Jira testcase and test step file attachments to the Rally testcase on its own thread pool.
+ * 1. Each attachment is streamed from Jira and base64 encoded into the Rally AttachmentContent create request, so the file is never loaded fully in memory
+ * 2. A file which is bigger than ATTACHMENT_MEMORY_THRESHOLD_BYTES (or has no content length) is first staged to the configured attachment location through a file channel,
+ *    so that the Jira connection is not held open during a slow Rally upload. The staged file is deleted after the upload
+ * 3. The Rally Attachment is created for the testcase with the uploaded content. Rally does not support attachments on a test step,
+ *    so a test step attachment is added to the testcase with the step number in its name
+ * 4. The attachments are migrated in the background, so large files do not block the testcase creation
+ * 5. Content which is already uploaded to Rally is not uploaded again. See AttachmentContentStore */
+
+public class AttachmentMigrator implements AutoCloseable {
+
+	// Logger Initialization for AttachmentMigrator Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String RALLY_API_KEY_HEADER = "zsessionid";
+
+	private final JiraOperation jiraOperation;
+	private final RallyRestApi restApi;
+	private final AttachmentContentStore contentStore;
+	private final String rallyApiKey;
+	private final ExecutorService executor;
+	private final long memoryThreshold;
+	private final Path testcaseStagingLocation;
+	private final Path testStepStagingLocation;
+
+	/* A Constructor loads the value from .properties file.
+	 * ATTACHMENT_WORKER_COUNT - how many attachments are downloaded and uploaded at the same time
+	 * ATTACHMENT_MEMORY_THRESHOLD_BYTES - files bigger than this size are staged to disk before the upload
+	 * TEST_CASE_ATTACHMENT_LOCATION / TEST_STEP_ATTACHMENT_LOCATION - staging locations for testcase and test step attachments */
+
+	public AttachmentMigrator(JiraOperation jiraOperation, RallyRestApi restApi) {
+
+		this.jiraOperation = jiraOperation;
+		this.restApi = restApi;
+		contentStore = AttachmentContentStore.getInstance();
+		rallyApiKey = ConfigLoader.getConfigValue("RALLY_API_KEY");
+		int workerCount = Math.max(1, ConfigLoader.getIntConfigValue("ATTACHMENT_WORKER_COUNT", 4));
+		AtomicInteger threadNumber = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+			Thread thread = new Thread(runnable, "attachment-migrator-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		memoryThreshold = ConfigLoader.getIntConfigValue("ATTACHMENT_MEMORY_THRESHOLD_BYTES", 5 * 1024 * 1024);
+		testcaseStagingLocation = Paths.get(ConfigLoader.getConfigValue("TEST_CASE_ATTACHMENT_LOCATION",
+				ConfigLoader.getConfigValue("TEST_CASE_FILE_ATTACHMENT_LOCATION", "attachments/TestCase_Attachments")));
+		testStepStagingLocation = Paths.get(ConfigLoader.getConfigValue("TEST_STEP_ATTACHMENT_LOCATION",
+				ConfigLoader.getConfigValue("TEST_STEP_FILE_ATTACHMENT_LOCATION", "attachments/TestStep_Attachments")));
+		logger.info("Attachment migrator is initialized with {} workers and memory threshold {} bytes", workerCount, memoryThreshold);
+
+	}
+
+	/* Migrate all the file attachments of the Jira testcase and its test steps to the given Rally testcase.
+	 * Returns a future which is completed with the Rally attachment references when all the attachments are uploaded,
+	 * or completed exceptionally when any attachment is failed */
+
+	public CompletableFuture<List<String>> migrateAttachments(String key, String testcaseRef, JsonObject jiraTestcaseJson) {
+
+		return migrateAttachments(key, testcaseRef, jiraTestcaseJson, attachment -> true);
+
+	}
+
+	/* Overloaded method which migrates only the attachments accepted by the filter. The filter is called for every testcase and test step attachment,
+	 * so the delta sync also uses it to collect the ids of all the Jira attachments of the testcase */
+
+	public CompletableFuture<List<String>> migrateAttachments(String key, String testcaseRef, JsonObject jiraTestcaseJson, Predicate<JiraAttachment> filter) {
+
+		return migrateAttachments(key, testcaseRef, jiraTestcaseJson, filter, (attachment, attachmentRef) -> {
+		});
+
+	}
+
+	/* Overloaded method which calls the listener as soon as each Rally attachment is created, on the attachment pool.
+	 * The migration engine records each created attachment in the migration journal, so a resumed testcase does not create it again */
+
+	public CompletableFuture<List<String>> migrateAttachments(String key, String testcaseRef, JsonObject jiraTestcaseJson, Predicate<JiraAttachment> filter,
+			BiConsumer<JiraAttachment, String> uploadListener) {
+
+		List<CompletableFuture<String>> uploads = new ArrayList<CompletableFuture<String>>();
+
+		// Testcase level attachments are listed by a separate Jira request, so the list is requested on the attachment pool too
+		CompletableFuture<List<JiraAttachment>> testcaseAttachments = CompletableFuture.supplyAsync(() -> {
+			try {
+				return jiraOperation.getJiraTestCaseAttachments(key);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+
+		CompletableFuture<List<String>> testcaseUploads = testcaseAttachments.thenCompose(attachments -> {
+			List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+			for (JiraAttachment attachment : attachments) {
+				if (!filter.test(attachment)) {
+					continue;
+				}
+				futures.add(upload(testcaseRef, attachment, attachment.getFileName(), testcaseStagingLocation, uploadListener));
+			}
+			return allOf(futures);
+		});
+
+		// Test step attachments are available in the step Json
+		for (JiraTestStep step : MigrationEngine.getSortedTestSteps(jiraTestcaseJson)) {
+			if (step.getAttachments() == null) {
+				continue;
+			}
+			int attachmentNumber = 0;
+			for (JiraAttachment attachment : step.getAttachments()) {
+				attachmentNumber++;
+				if (!filter.test(attachment)) {
+					continue;
+				}
+				String rallyName = (step.getIndex() + 1) + "_" + attachmentNumber + "_" + attachment.getFileName();
+				uploads.add(upload(testcaseRef, attachment, rallyName, testStepStagingLocation, uploadListener));
+			}
+		}
+
+		CompletableFuture<List<String>> stepUploads = allOf(uploads);
+		return testcaseUploads.thenCombine(stepUploads, (testcaseRefs, stepRefs) -> {
+			List<String> attachmentRefs = new ArrayList<String>(testcaseRefs);
+			attachmentRefs.addAll(stepRefs);
+			logger.info("{} attachments are migrated for the Jira testcase {}", attachmentRefs.size(), key);
+			return attachmentRefs;
+		});
+
+	}
+
+	// Stop the attachment pool after the running uploads are completed
+
+	@Override
+	public void close() {
+
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.info("Waiting for running attachment uploads to complete");
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	private CompletableFuture<String> upload(String testcaseRef, JiraAttachment attachment, String rallyName, Path stagingLocation,
+			BiConsumer<JiraAttachment, String> uploadListener) {
+
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				String attachmentRef = migrateAttachment(testcaseRef, attachment, rallyName, stagingLocation);
+				uploadListener.accept(attachment, attachmentRef);
+				return attachmentRef;
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+
+	}
+
+	private static CompletableFuture<List<String>> allOf(List<CompletableFuture<String>> futures) {
+
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+			List<String> refs = new ArrayList<String>();
+			for (CompletableFuture<String> future : futures) {
+				refs.add(future.join());
+			}
+			return refs;
+		});
+
+	}
+
+	/* Download one attachment from Jira and upload it to Rally. Returns the Rally attachment reference.
+	 * The content key is calculated while the file is downloaded, and content which is already uploaded to Rally is not uploaded again.
+	 * A Jira attachment whose content is already uploaded is not downloaded again */
+
+	String migrateAttachment(String testcaseRef, JiraAttachment attachment, String rallyName, Path stagingLocation) throws IOException {
+
+		String contentType = attachment.getContentType() != null ? attachment.getContentType() : "application/octet-stream";
+		String jiraAttachmentId = attachment.getId() > 0 ? String.valueOf(attachment.getId()) : null;
+		String contentKey = contentStore.getContentKey(jiraAttachmentId);
+		String contentRef = contentKey == null ? null : contentStore.getContentRef(contentKey);
+		if (contentRef != null) {
+			logger.debug("File attachment {} is already uploaded to Rally as {}", attachment.getFileName(), contentRef);
+			return createAttachment(testcaseRef, contentRef, rallyName, contentType, AttachmentContentStore.getContentSize(contentKey));
+		}
+
+		HttpEntity content = jiraOperation.getJiraAttachmentContent(attachment);
+		if (content == null) {
+			throw new IOException("Failed to download the file attachment " + attachment.getFileName() + " from Jira. No Entity response found");
+		}
+		if (attachment.getContentType() == null && content.getContentType() != null) {
+			contentType = content.getContentType().getValue();
+		}
+		Path stagedFile = null;
+		try {
+			MessageDigest digest = AttachmentContentStore.newDigest();
+			long contentLength = content.getContentLength();
+
+			if (contentLength >= 0 && contentLength <= memoryThreshold) {
+				// A small file is kept in memory until its content key is known, so a duplicate is neither written to disk nor uploaded
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) contentLength);
+				try (InputStream in = new DigestInputStream(content.getContent(), digest)) {
+					byte[] chunk = new byte[8192];
+					int read;
+					while ((read = in.read(chunk)) != -1) {
+						buffer.write(chunk, 0, read);
+					}
+				}
+				byte[] bytes = buffer.toByteArray();
+				contentKey = AttachmentContentStore.getContentKey(digest, bytes.length);
+				contentRef = contentStore.resolve(contentKey, () -> createAttachmentContent(() -> new ByteArrayInputStream(bytes)));
+			} else {
+				// Stage the file to disk, release the Jira connection and then stream the staged file to Rally only when the content is not uploaded yet
+				Files.createDirectories(stagingLocation);
+				stagedFile = Files.createTempFile(stagingLocation, "jira-attachment-", ".part");
+				long position = 0;
+				try (ReadableByteChannel source = Channels.newChannel(new DigestInputStream(content.getContent(), digest));
+						FileChannel target = FileChannel.open(stagedFile, StandardOpenOption.WRITE)) {
+					long transferred;
+					while ((transferred = target.transferFrom(source, position, 1024 * 1024)) > 0) {
+						position += transferred;
+					}
+				}
+				EntityUtils.consume(content);
+				contentKey = AttachmentContentStore.getContentKey(digest, position);
+				logger.debug("File attachment {} is staged to {}", attachment.getFileName(), stagedFile);
+				Path file = stagedFile;
+				contentRef = contentStore.resolve(contentKey, () -> createAttachmentContent(() -> Files.newInputStream(file)));
+			}
+		} finally {
+			EntityUtils.consumeQuietly(content);
+			if (stagedFile != null) {
+				Files.deleteIfExists(stagedFile);
+			}
+		}
+
+		contentStore.putContentKey(jiraAttachmentId, contentKey);
+		return createAttachment(testcaseRef, contentRef, rallyName, contentType, AttachmentContentStore.getContentSize(contentKey));
+
+	}
+
+	// Opens the content of an attachment. The content is opened again when the upload is retried
+
+	private interface ContentSource {
+		InputStream open() throws IOException;
+	}
+
+	/* Upload the attachment content to Rally with a streamed request body through the Rally call layer. Returns the Rally AttachmentContent reference.
+	 * The upload is retried only when Rally answers 429/503 */
+
+	private String createAttachmentContent(ContentSource source) throws IOException {
+
+		String responseBody = ApiCallExecutor.getInstance(ApiCallExecutor.RALLY).execute("POST /attachmentcontent/create", false, () -> {
+			try (InputStream in = source.open()) {
+				HttpPost request = new HttpPost(restApi.getClient().getWsapiUrl() + "/attachmentcontent/create");
+				request.setHeader(RALLY_API_KEY_HEADER, rallyApiKey);
+				request.setEntity(new Base64ContentEntity(in));
+				HttpResponse response = restApi.getClient().execute(request);
+				if (response.getStatusLine().getStatusCode() != 200) {
+					EntityUtils.consumeQuietly(response.getEntity());
+					throw ApiCallExecutor.getException("Failed to upload the attachment content to Rally", response);
+				}
+				return EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+			}
+		});
+
+		JsonObject createResult = JsonParser.parseString(responseBody).getAsJsonObject().getAsJsonObject("CreateResult");
+		if (createResult.has("Object") && createResult.get("Object").isJsonObject()) {
+			return createResult.getAsJsonObject("Object").get("_ref").getAsString();
+		}
+		List<String> errors = new ArrayList<String>();
+		if (createResult.has("Errors")) {
+			for (JsonElement error : createResult.getAsJsonArray("Errors")) {
+				errors.add(error.getAsString());
+			}
+		}
+		throw new IOException("Error occurred creating attachment content in Rally " + errors);
+
+	}
+
+	// Create the Rally attachment for the testcase with the uploaded content. Returns the Rally attachment reference
+
+	private String createAttachment(String testcaseRef, String contentRef, String name, String contentType, long size) throws IOException {
+
+		JsonObject newAttachment = new JsonObject();
+		newAttachment.addProperty("Artifact", testcaseRef);
+		newAttachment.addProperty("Content", contentRef);
+		newAttachment.addProperty("Name", name);
+		newAttachment.addProperty("ContentType", contentType);
+		newAttachment.addProperty("Size", size);
+
+		CreateResponse createResponse = Utils.createRallyRecord(restApi, new CreateRequest("attachment", newAttachment));
+		if (!createResponse.wasSuccessful()) {
+			throw new IOException("Error occurred creating attachment " + name + " in Rally " + String.join(", ", createResponse.getErrors()));
+		}
+		String attachmentRef = createResponse.getObject().get("_ref").getAsString();
+		MigrationMetrics.getInstance().recordAttachmentUploaded();
+		logger.debug("Successfully created attachment {} ({} bytes) and the OID for created attachment: {}", name, size, attachmentRef);
+		return attachmentRef;
+
+	}
+
+	/* Request body for the Rally AttachmentContent create request. The Json is written as {"AttachmentContent":{"Content":"<base64>"}}
+	 * and the content is base64 encoded while it is read from the stream, so only a small buffer is kept in memory */
+
+	private static class Base64ContentEntity extends AbstractHttpEntity {
+
+		private static final byte[] PREFIX = "{\"AttachmentContent\":{\"Content\":\"".getBytes(StandardCharsets.UTF_8);
+		private static final byte[] SUFFIX = "\"}}".getBytes(StandardCharsets.UTF_8);
+
+		private final InputStream content;
+
+		Base64ContentEntity(InputStream content) {
+			this.content = content;
+			setContentType("application/json");
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			out.write(PREFIX);
+			// The base64 stream is closed to write the padding, but the request stream must be kept open
+			try (OutputStream base64 = Base64.getEncoder().wrap(new FilterOutputStream(out) {
+				@Override
+				public void write(byte[] bytes, int offset, int length) throws IOException {
+					out.write(bytes, offset, length);
+				}
+
+				@Override
+				public void close() throws IOException {
+					flush();
+				}
+			})) {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = content.read(buffer)) != -1) {
+					base64.write(buffer, 0, read);
+				}
+			}
+			out.write(SUFFIX);
+			out.flush();
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return false;
+		}
+
+		@Override
+		public long getContentLength() {
+			return -1;
+		}
+
+		@Override
+		public InputStream getContent() {
+			throw new UnsupportedOperationException("Attachment content can only be written to a stream");
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return true;
+		}
+
+	}
+
+}
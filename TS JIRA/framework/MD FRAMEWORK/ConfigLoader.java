@@ -4,6 +4,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.logging.log4j.LogManager;
@@ -31,23 +33,88 @@ public class ConfigLoader {
 		try {
 			fis = new FileInputStream(CONFIG_FILE_LOCATION);  
 		} catch (FileNotFoundException e) {
-			logger.error("The config file is not found." + CONFIG_FILE_LOCATION + "is not available", e);
+			logger.error("The config file is not found. {} is not available", CONFIG_FILE_LOCATION, e);
 			
 		}
 		
-		try {
-			properties.load(fis); // Load the config file value
-		} catch (IOException e) {
-			logger.error("The config file is not loaded successfully." + CONFIG_FILE_LOCATION + " is the location", e);
+		if (fis != null) {
+			try {
+				properties.load(fis); // Load the config file value
+			} catch (IOException e) {
+				logger.error("The config file is not loaded successfully. {} is the location", CONFIG_FILE_LOCATION, e);
+			}
 		}
     }
 	
 	// A Method to get the Config value. This method accepts the key for the value available in Config file. For Example: RALLY_BASE_URL is the key and this method will return https://rally1.rallydev.com
 	
+	// In the multi project mode the values of the project which is migrated by the current thread are returned first. See ProjectScheduler
+	
 	public static String getConfigValue(String key) {
 		
+		ProjectScheduler.Project project = ProjectScheduler.getCurrentProject();
+		if (project != null && project.getConfigValue(key) != null) {
+			return project.getConfigValue(key);
+		}
 		return properties.getProperty(key); // Return statement for the method
-		
+
+	}
+
+	// A Method to set a Config value at runtime. Used by the benchmarks to point the Jira and Rally base URLs at a local stub server
+
+	public static void setConfigValue(String key, String value) {
+
+		properties.setProperty(key, value);
+
+	}
+
+	// Overloaded method to get the Config value. The default value is returned when the key is not available in Config file. Used for optional tuning values
+
+	public static String getConfigValue(String key, String defaultValue) {
+
+		String value = getConfigValue(key);
+		return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+
+	}
+
+	// A Method to get an integer Config value. The default value is returned when the key is missing or not a valid number
+
+	public static int getIntConfigValue(String key, int defaultValue) {
+
+		String value = getConfigValue(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			logger.error("The config value for {} is not a valid number: {}. Using default value {}", key, value, defaultValue, e);
+			return defaultValue;
+		}
+
+	}
+
+	// A Method to get a boolean Config value. The default value is returned when the key is not available in Config file
+
+	public static boolean getBooleanConfigValue(String key, boolean defaultValue) {
+
+		String value = getConfigValue(key, null);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+
+	}
+
+	// A Method to get all the Config values whose key starts with the given prefix. The prefix is removed from the returned keys
+
+	public static Map<String, String> getConfigValues(String prefix) {
+
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for (String key : properties.stringPropertyNames()) {
+			if (key.startsWith(prefix) && key.length() > prefix.length()) {
+				values.put(key.substring(prefix.length()), properties.getProperty(key).trim());
+			}
+		}
+		return values;
+
 	}
 
 }
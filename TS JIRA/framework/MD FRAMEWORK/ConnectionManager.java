@@ -0,0 +1,149 @@
+package com.optum.coe.automation.rally;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.rallydev.rest.RallyRestApi;
+import com.rallydev.rest.client.ApiKeyClient;
+import com.rallydev.rest.client.HttpClient;
+
+/* This Class holds one connection pooled client per endpoint for the whole process.
+ * Jira calls and Rally calls reuse the pooled connections (keep-alive) instead of creating a new client and TLS handshake for every request.
+ * The clients are created when they are used first time and closed by shutdown() at the end of the run */
+
+public class ConnectionManager {
+
+	// Logger Initialization for ConnectionManager Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static CloseableHttpClient jiraClient;
+	private static RallyRestApi rallyRestApi;
+
+	/* Get the shared Jira http client. Pool size is loaded from JIRA_CONNECTION_POOL_SIZE and idle connections are kept alive
+	 * for CONNECTION_KEEP_ALIVE_SECONDS when the server does not send a keep-alive header */
+
+	public static synchronized CloseableHttpClient getJiraClient() {
+
+		if (jiraClient == null) {
+			int poolSize = ConfigLoader.getIntConfigValue("JIRA_CONNECTION_POOL_SIZE", 10);
+			PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+			connectionManager.setMaxTotal(poolSize);
+			connectionManager.setDefaultMaxPerRoute(poolSize);
+			jiraClient = HttpClients.custom()
+					.setConnectionManager(connectionManager)
+					.setKeepAliveStrategy(getKeepAliveStrategy())
+					.evictIdleConnections(getKeepAliveMillis(), TimeUnit.MILLISECONDS)
+					.build();
+			logger.info("Jira connection pool is created with pool size {}", poolSize);
+		}
+		return jiraClient;
+
+	}
+
+	/* Get the shared Rally rest api. Rally Base URL and Rally API Key are loaded from .properties file.
+	 * Pool size is loaded from RALLY_CONNECTION_POOL_SIZE */
+
+	public static synchronized RallyRestApi getRallyRestApi() {
+
+		if (rallyRestApi == null) {
+			String rallyBaseURL = ConfigLoader.getConfigValue("RALLY_BASE_URL");
+			try {
+				rallyRestApi = new PooledRallyRestApi(new PooledRallyClient(new URI(rallyBaseURL), ConfigLoader.getConfigValue("RALLY_API_KEY")));
+			} catch (URISyntaxException e) {
+				logger.error("URI Sytntax error for the URL {}. Please check the URL.", rallyBaseURL, e);
+				return null;
+			}
+			rallyRestApi.setApplicationName("RallyMigrationApp");
+			logger.info("Rally connection pool is created for {}", rallyBaseURL);
+		}
+		return rallyRestApi;
+
+	}
+
+	// Close the shared clients and their pooled connections. This method should be called once at the end of the run
+
+	public static synchronized void shutdown() {
+
+		if (jiraClient != null) {
+			try {
+				jiraClient.close();
+				logger.info("Closed Jira connection pool");
+			} catch (IOException e) {
+				logger.error("Error occurred while closing Jira connection pool", e);
+			}
+			jiraClient = null;
+		}
+		if (rallyRestApi != null) {
+			try {
+				rallyRestApi.close();
+				logger.info("Closed Rally connection pool");
+			} catch (IOException e) {
+				logger.error("Error occurred while closing Rally connection pool", e);
+			}
+			rallyRestApi = null;
+		}
+
+	}
+
+	private static long getKeepAliveMillis() {
+
+		return ConfigLoader.getIntConfigValue("CONNECTION_KEEP_ALIVE_SECONDS", 30) * 1000L;
+
+	}
+
+	// Use the keep-alive time sent by the server, else use the configured keep-alive time
+
+	private static ConnectionKeepAliveStrategy getKeepAliveStrategy() {
+
+		return (response, context) -> {
+			long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return keepAlive > 0 ? keepAlive : getKeepAliveMillis();
+		};
+
+	}
+
+	// Rally api key client with a pooled connection manager, so that the same client can be used by many threads at the same time
+
+	@SuppressWarnings("deprecation")
+	private static class PooledRallyClient extends ApiKeyClient {
+
+		PooledRallyClient(URI server, String apiKey) {
+			super(server, apiKey);
+			setKeepAliveStrategy(getKeepAliveStrategy());
+		}
+
+		@Override
+		protected ClientConnectionManager createClientConnectionManager() {
+			int poolSize = ConfigLoader.getIntConfigValue("RALLY_CONNECTION_POOL_SIZE", 10);
+			PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault());
+			connectionManager.setMaxTotal(poolSize);
+			connectionManager.setDefaultMaxPerRoute(poolSize);
+			return connectionManager;
+		}
+
+	}
+
+	// RallyRestApi constructor which accepts a client is protected, so this class is used to create the api with the pooled client
+
+	private static class PooledRallyRestApi extends RallyRestApi {
+
+		PooledRallyRestApi(HttpClient client) {
+			super(client);
+		}
+
+	}
+
+}
@@ -0,0 +1,257 @@
+package com.optum.coe.automation.rally;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.rallydev.rest.util.Ref;
+
+/* This Class syncs the Jira testcases which are changed after the last sync to the Rally testcases which are already migrated, instead of migrating them again.
+ * 1. Only the migrated testcases which are updated in Jira after the high-water mark are asked from Jira, page by page. See SyncStateStore
+ * 2. The fingerprint of each changed testcase is compared with its last synced fingerprint. Only the changed fields are updated in Rally
+ * 3. The Rally test steps are reconciled with the Jira test steps only when the steps are changed. See TestStepPlan
+ * 4. Only the attachments which are added in Jira after the last sync are uploaded
+ * 5. The high-water mark is moved to the start time of this sync only when all the changed testcases are synced,
+ *    so a failed testcase is asked again in the next sync. DELTA_SYNC_OVERLAP_MINUTES is subtracted to cover the clock difference between Jira and this host
+ * 6. A testcase whose Rally testcase is not known is skipped without holding the high-water mark. It is kept as skipped in SyncStateStore and tried again by the next sync
+ * A testcase which is migrated before the delta sync has no fingerprint. Its fields and test steps are synced once and its current attachments are taken as already migrated */
+
+public class DeltaSyncEngine implements AutoCloseable {
+
+	// Logger Initialization for DeltaSyncEngine Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private final JiraOperation jiraOperation;
+	private final SyncStateStore stateStore;
+	private final AttachmentMigrator attachmentMigrator;
+	private final int workerCount;
+	private final long overlapMillis;
+	private final AtomicInteger updatedCount = new AtomicInteger();
+	private final AtomicInteger unchangedCount = new AtomicInteger();
+	private final AtomicInteger skippedCount = new AtomicInteger();
+
+	/* A Constructor loads the value from .properties file.
+	 * MIGRATION_WORKER_COUNT - how many testcases are synced at the same time
+	 * DELTA_SYNC_OVERLAP_MINUTES - the testcases updated this many minutes before the high-water mark are asked again
+	 * ATTACHMENT_MIGRATION_ENABLED - upload the attachments which are added in Jira
+	 * JIRA_RALLY_OID_FIELD - Jira custom field with the Rally testcase OID, used when the testcase is not in the sync state or the migration journal */
+
+	public DeltaSyncEngine(JiraOperation jiraOperation) {
+
+		this.jiraOperation = jiraOperation;
+		stateStore = SyncStateStore.getInstance();
+		workerCount = Math.max(1, ConfigLoader.getIntConfigValue("MIGRATION_WORKER_COUNT", 4));
+		overlapMillis = TimeUnit.MINUTES.toMillis(Math.max(0, ConfigLoader.getIntConfigValue("DELTA_SYNC_OVERLAP_MINUTES", 5)));
+		attachmentMigrator = ConfigLoader.getBooleanConfigValue("ATTACHMENT_MIGRATION_ENABLED", false)
+				? new AttachmentMigrator(jiraOperation, ConnectionManager.getRallyRestApi()) : null;
+
+	}
+
+	/* A method which syncs all the testcases which are changed in Jira after the high-water mark.
+	 * Returns the keys of the testcases which are not synced. The high-water mark is not moved when the list is not empty */
+
+	public List<String> sync() {
+
+		long syncStartMillis = System.currentTimeMillis();
+		long highWaterMark = stateStore.getHighWaterMark();
+		long updatedAfterMillis = highWaterMark > 0 ? Math.max(1, highWaterMark - overlapMillis) : 0;
+		if (highWaterMark > 0) {
+			logger.info("Delta sync of the testcases updated in Jira after {}", new Date(updatedAfterMillis));
+		} else {
+			logger.info("First delta sync. All the migrated testcases are checked");
+		}
+
+		List<String> failedKeys = Collections.synchronizedList(new ArrayList<String>());
+		Semaphore workerPermits = new Semaphore(workerCount);
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		boolean searchCompleted;
+		try (JiraSearchIterator<JsonObject> testcases = jiraOperation.getJiraChangedTestcaseIterator(updatedAfterMillis)) {
+			// The skipped testcases are tried again first. Their details are read by the key, because their change can be older than the high-water mark
+			for (String key : stateStore.getSkippedKeys()) {
+				JsonObject keyJson = new JsonObject();
+				keyJson.addProperty("key", key);
+				submitSync(executor, workerPermits, failedKeys, key, keyJson);
+			}
+			while (testcases.hasNext()) {
+				JsonObject searchTestcaseJson = testcases.next();
+				submitSync(executor, workerPermits, failedKeys, searchTestcaseJson.get("key").getAsString(), searchTestcaseJson);
+			}
+			searchCompleted = !testcases.isFailed();
+		} finally {
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+					logger.info("Waiting for running testcase syncs to complete");
+				}
+			} catch (InterruptedException e) {
+				logger.error("Interrupted while waiting for testcase syncs to complete", e);
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		logger.info("Delta sync completed. Updated testcases - {}, Unchanged testcases - {}, Skipped testcases - {}, Failed testcases - {}", updatedCount.get(),
+				unchangedCount.get(), skippedCount.get(), failedKeys.size());
+		if (searchCompleted && failedKeys.isEmpty()) {
+			stateStore.setHighWaterMark(syncStartMillis);
+		} else {
+			logger.error("High-water mark is not moved. Failed Jira testcase keys: {}{}", failedKeys, searchCompleted ? "" : ". The Jira search is not completed");
+		}
+		return failedKeys;
+
+	}
+
+	// Sync the testcase on a worker thread. The key is added to the failed keys when the testcase is not synced
+
+	private void submitSync(ExecutorService executor, Semaphore workerPermits, List<String> failedKeys, String key, JsonObject searchTestcaseJson) {
+
+		workerPermits.acquireUninterruptibly();
+		executor.execute(() -> {
+			boolean synced = false;
+			try {
+				synced = syncTestcase(key, searchTestcaseJson);
+			} catch (Exception e) {
+				logger.error("Unexpected error while syncing the Jira testcase {}", key, e);
+			} finally {
+				if (!synced) {
+					failedKeys.add(key);
+				}
+				workerPermits.release();
+			}
+		});
+
+	}
+
+	/* A method which syncs one changed Jira testcase to its Rally testcase.
+	 * 1. Complete the testcase details when a required field is not returned by the search
+	 * 2. Find the Rally testcase from the sync state, the migration journal or the Rally testcase OID in Jira
+	 * 3. Update the Rally testcase fields which are changed after the last sync
+	 * 4. Reconcile the Rally test steps when the Jira test steps are changed
+	 * 5. Upload the attachments which are added after the last sync
+	 * 6. Save the new fingerprint
+	 * Returns true when the testcase is synced, there is nothing to sync or the testcase is kept as skipped for the next sync */
+
+	boolean syncTestcase(String key, JsonObject searchTestcaseJson) throws Exception {
+
+		JsonObject jiraTestcaseJson = jiraOperation.completeJiraTestCaseDetails(searchTestcaseJson);
+		if (jiraTestcaseJson == null) {
+			logger.error("Jira testcase details are not found for the key {}", key);
+			return false;
+		}
+		SyncStateStore.TestcaseState state = stateStore.getState(key);
+		String rallyTestcaseRef = state != null ? state.getRallyTestcaseRef() : getRallyTestcaseRef(key, jiraTestcaseJson);
+		if (rallyTestcaseRef == null) {
+			logger.warn("Jira testcase {} is marked as migrated, but its Rally testcase is not known. The testcase is skipped until the next sync", key);
+			stateStore.addSkippedKey(key);
+			skippedCount.incrementAndGet();
+			return true;
+		}
+
+		TestcaseFingerprint previous = state == null ? null : state.parseFingerprint();
+		TestcaseFingerprint current = TestcaseFingerprint.of(jiraTestcaseJson);
+
+		List<String> changedFields = new ArrayList<String>();
+		for (String field : TestcaseFingerprint.TESTCASE_FIELDS) {
+			if (current.isChanged(field, previous)) {
+				changedFields.add(field);
+			}
+		}
+		RallyOperation rallyOperation = new RallyOperation();
+		rallyOperation.setRallyTestCaseOID(rallyTestcaseRef);
+		if (!changedFields.isEmpty()) {
+			logger.debug("Fields {} of the Jira testcase {} are changed. Updating the Rally testcase {}", changedFields, key, rallyTestcaseRef);
+			if (!rallyOperation.updateRallyTestcase(rallyTestcaseRef, jiraTestcaseJson, changedFields)) {
+				logger.error("Rally testcase {} is not updated for the Jira testcase {}", rallyTestcaseRef, key);
+				return false;
+			}
+		}
+
+		// The Rally steps are read and reconciled only when the Jira steps are changed, or not known for a testcase without a fingerprint
+		TestStepPlan stepPlan = null;
+		if (current.isChanged(TestcaseFingerprint.STEPS, previous)) {
+			stepPlan = rallyOperation.reconcileTestSteps(MigrationEngine.getSortedTestSteps(jiraTestcaseJson));
+			if (!stepPlan.isSuccessful()) {
+				logger.error("Test steps of the Rally testcase {} are not reconciled for the Jira testcase {}. {}", rallyTestcaseRef, key, stepPlan);
+				return false;
+			}
+		}
+
+		int uploadedCount = 0;
+		if (attachmentMigrator != null) {
+			Set<String> attachmentIds = ConcurrentHashMap.newKeySet();
+			Set<String> syncedIds = previous != null && previous.has(TestcaseFingerprint.ATTACHMENTS) ? new HashSet<String>(previous.getAttachmentIds()) : null;
+			try {
+				uploadedCount = attachmentMigrator.migrateAttachments(key, rallyTestcaseRef, jiraTestcaseJson, attachment -> {
+					String attachmentId = TestcaseFingerprint.getAttachmentId(attachment);
+					attachmentIds.add(attachmentId);
+					return syncedIds != null && !syncedIds.contains(attachmentId);
+				}).join().size();
+			} catch (RuntimeException e) {
+				logger.error("New attachments are not migrated to rally for the Jira testcase key {}", key, e);
+				return false;
+			}
+			current = current.withAttachments(attachmentIds);
+		} else {
+			current = current.withPart(TestcaseFingerprint.ATTACHMENTS, previous);
+		}
+
+		if (changedFields.isEmpty() && uploadedCount == 0 && (stepPlan == null || stepPlan.isEmpty())) {
+			unchangedCount.incrementAndGet();
+		} else {
+			updatedCount.incrementAndGet();
+			logger.info("Jira testcase {} is synced to Rally testcase {}. Updated fields - {}, Test steps - {}, New attachments - {}", key, rallyTestcaseRef, changedFields,
+					stepPlan == null ? "not changed" : stepPlan, uploadedCount);
+		}
+		stateStore.putState(key, rallyTestcaseRef, current);
+		return true;
+
+	}
+
+	// Stop the attachment pool
+
+	@Override
+	public void close() {
+
+		if (attachmentMigrator != null) {
+			attachmentMigrator.close();
+		}
+
+	}
+
+	/* Get the Rally testcase reference from the migration journal, or from the Rally testcase OID which is written back to Jira.
+	 * It is used by MigrationVerifier too. Returns null when the Rally testcase is not known */
+
+	static String getRallyTestcaseRef(String key, JsonObject jiraTestcaseJson) {
+
+		String rallyTestcaseRef = MigrationJournal.getInstance().getProgress(key).getTestcaseRef();
+		if (rallyTestcaseRef != null) {
+			return rallyTestcaseRef;
+		}
+		JsonElement customFields = jiraTestcaseJson.get("customFields");
+		if (customFields != null && customFields.isJsonObject()) {
+			JsonElement rallyOid = customFields.getAsJsonObject().get(ConfigLoader.getConfigValue("JIRA_RALLY_OID_FIELD", "Rally TestCase OID"));
+			if (rallyOid != null && !rallyOid.isJsonNull() && !rallyOid.getAsString().isEmpty()) {
+				// The OID alone is written by older runs, the reference by the parallel migration
+				String value = rallyOid.getAsString();
+				return Ref.isRef(value) ? value : "/testcase/" + value;
+			}
+		}
+		return null;
+
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.optum.coe.automation.rally;
+
+import com.google.gson.annotations.SerializedName;
+
+//import org.apache.logging.log4j.LogManager;
+//import org.apache.logging.log4j.Logger;
+
+/* Jira attachment of a testcase or a test step. Testcase attachments are returned by /testcase/{key}/attachments with "url" and "filename",
+ * test step attachments are returned in testScript.steps with "id" and "name", so both the names are mapped to fileName */
+
+public class JiraAttachment {
+	
+	// Logger Initialization for JiraAttachment Class
+	//private static final Logger logger = LogManager.getLogger();
+	
+	private int id;
+	
+	@SerializedName(value = "fileName", alternate = { "filename", "name" })
+	private String fileName;
+	
+	private String url;
+	private String contentType;
+	private long fileSize;
+	
+	
+	public int getId() {
+		return id;
+	}
+	
+	public void setId(int id) {
+		this.id = id;
+	}
+	
+	public void setFileName(String fileName) {
+		this.fileName = fileName;
+	}
+	
+	public String getFileName() {
+		return fileName;
+	}
+	
+	public String getUrl() {
+		return url;
+	}
+	
+	public void setUrl(String url) {
+		this.url = url;
+	}
+	
+	public String getContentType() {
+		return contentType;
+	}
+	
+	public void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+	
+	public long getFileSize() {
+		return fileSize;
+	}
+	
+	public void setFileSize(long fileSize) {
+		this.fileSize = fileSize;
+	}
+	
+	
+}
@@ -0,0 +1,374 @@
+package com.optum.coe.automation.rally;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.apache.http.HttpEntity;
+import org.apache.http.ParseException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+public class JiraOperation {
+
+	// Initialization of the class member variables. This section can be updated in future if more member variables are added during integration if needed. 
+	
+	private String jiraBaseURL; 
+	private String jiraApiKey;
+	private String jiraProjectKey;
+	private String max_chunk; 
+	private String tcAttachmentDownloadLocation;
+	private CloseableHttpClient jiraClient;
+	
+	// Logger Initialization for JiraOperation Class
+	
+	private static final Logger logger = LogManager.getLogger();
+	
+	private static final Gson gson = JiraToRallyMapper.getGson();
+	
+	// Testcase fields which are asked in the search when the testcase details are retrieved in bulk. The fields are used by RallyOperation
+	private static final String DEFAULT_SEARCH_FIELDS = "key,name,objective,precondition,priority,status,owner,folder,labels,testScript";
+	
+	// Testcase fields which must be available in the search result. Else the testcase details are requested for the key
+	private static final String[] REQUIRED_DETAILS_FIELDS = { "name", "folder", "testScript" };
+	
+	/* A Constructor loads the value from .properties file. These value will be loaded as soon as a object is created for this class.
+	 * Jira Base URL, Jira API Key, Jira Project Key, Max Chunk values are loaded from .properties file
+	 * max_chunk value refers that how many test cases should be migrated for a run.
+	 * The shared connection pooled Jira http client from ConnectionManager is used for all the Jira calls */
+	
+	public JiraOperation() {
+		
+		this(ConnectionManager.getJiraClient());
+		
+	}
+	
+	// A Constructor which accepts the Jira http client to be used for all the Jira calls. The client is shared and it is not closed by this class
+	
+	public JiraOperation(CloseableHttpClient jiraClient) {
+		
+		this.jiraClient = jiraClient;
+		jiraBaseURL=ConfigLoader.getConfigValue("JIRA_BASE_URL");
+		jiraApiKey=ConfigLoader.getConfigValue("JIRA_API_TOKEN");
+		jiraProjectKey=ConfigLoader.getConfigValue("JIRA_PROJECT_KEY");
+		max_chunk=ConfigLoader.getConfigValue("MAX_VALUE_CHUNK");
+		tcAttachmentDownloadLocation=ConfigLoader.getConfigValue("TEST_CASE_ATTACHMENT_LOCATION");
+		logger.info("Jira values for the project key {} are assiged from rally_migration_config.properties file", jiraProjectKey);
+		logger.log(Level.getLevel("VERBOSE"), "Below the values assigned from rally_migration_config.properties file. \nJira Base URL - {}\nJira Project Key {}\nMax Chunk value - {}\nTest Attachment Download location - {}",
+				jiraBaseURL, jiraProjectKey, max_chunk, tcAttachmentDownloadLocation);
+
+	}
+	
+	// Create a method to get non migrated testcase keys using JIRA REST Api and save them to Testcase array list. Only the first max chunk testcase keys are returned
+	
+	public ArrayList<String> getJiraNonMigratedTestcaseKeys() {
+		
+		// An ArrayList is used to store the testcases keys from Jira response
+		
+		ArrayList<String> testCaseKeys = new ArrayList<String>();
+		try {
+			testCaseKeys.addAll(getJiraNonMigratedTestcaseKeys(0, ConfigLoader.getIntConfigValue("MAX_VALUE_CHUNK", 100)));
+		} catch (IOException e) {
+			logger.error("Error while retrieving non migrated keys from JIRA", e);
+		}
+		return testCaseKeys;
+	}
+	
+	/* Create a method to get all the non migrated testcase keys page by page. The keys of a page are returned as soon as the page is received
+	 * and the next page is requested while the current page is processed. Page size is loaded from JIRA_SEARCH_PAGE_SIZE in .properties file.
+	 * The Jira status write-back is held until the last page is received, so the search result does not shrink under the page offset */
+	
+	public JiraSearchIterator<String> getJiraNonMigratedTestcaseKeyIterator() {
+		
+		return new JiraSearchIterator<String>(this::getJiraNonMigratedTestcaseKeys, key -> key, ConfigLoader.getIntConfigValue("JIRA_SEARCH_PAGE_SIZE", 100),
+				holdStatusWriteBack());
+		
+	}
+	
+	/* Create a method to get all the non migrated testcases with their details page by page. The search asks for the fields configured in JIRA_SEARCH_FIELDS,
+	 * so that a separate testcase details request is not required for each key */
+	
+	public JiraSearchIterator<JsonObject> getJiraNonMigratedTestcaseIterator() {
+		
+		return new JiraSearchIterator<JsonObject>(this::getJiraNonMigratedTestcases, testcase -> testcase.get("key").getAsString(),
+				ConfigLoader.getIntConfigValue("JIRA_SEARCH_PAGE_SIZE", 100), holdStatusWriteBack());
+		
+	}
+	
+	// Hold the Jira status write-back while a non migrated testcase search is running. Returns the action which releases the hold
+	
+	private static Runnable holdStatusWriteBack() {
+		
+		if (!ConfigLoader.getBooleanConfigValue("JIRA_WRITEBACK_ENABLED", true)) {
+			return () -> {
+			};
+		}
+		return JiraStatusWriter.getInstance().holdFlush();
+		
+	}
+	
+	// Create a method to get one page of non migrated testcase keys starting from the given offset
+	
+	public List<String> getJiraNonMigratedTestcaseKeys(int startAt, int maxResults) throws IOException {
+		
+		List<String> testCaseKeys = new ArrayList<String>();
+		
+		/* Jira URL string building. This URL will give the Jira Testcase keys
+	
+		   1. For the given page. "startAt" and "maxResults" are the URL arguments which handle this part.
+		             AND
+		   2. For the testcases which are not migrated already. It will be determined by "TestCase Migrated" field which will be false for migrated testcase in Jira  
+		              AND
+		   3. For the testcases which need to be migrated. It will be determined by "Migrate Test to Rally" field which will be true for non-migated testcase in Jira
+					  AND
+		   4. For the testcases associated with the configured Jira project key */
+		
+		String url = getNonMigratedTestcaseSearchUrl("key", startAt, maxResults);
+		logger.info("String URL to get non migrated testcase keys from Jira {}", url); // Log the string URL in log file
+		
+		  /* Call "getJiraResponse" from Utils class. This method will return the JIRA JSON response for the given URL.
+		   * Since the URL has been built such a way that to list the non migrated testcases, the output of this method would be Jira testcase keys in a JSON format */
+		
+		HttpEntity response = Utils.getJiraResponse(jiraClient, url, jiraApiKey);
+		if (response == null) {
+			throw new IOException("Response is NULL from while retrieving non migrated keys from JIRA");
+		}
+		
+		// Read the keys from the Json array one by one with a streaming reader, so that the whole response is not loaded in memory
+		try (JsonReader reader = new JsonReader(new InputStreamReader(response.getContent(), StandardCharsets.UTF_8))) {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					if (reader.nextName().equals("key")) {
+						String key = reader.nextString();
+						logger.debug("Key retrieved: {}", key);
+						testCaseKeys.add(key);
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+			}
+			reader.endArray();
+		} catch (IllegalStateException e) {
+			throw new IOException("Error while parsing the Json response", e);
+		} finally {
+			EntityUtils.consumeQuietly(response);
+		}
+		
+		return testCaseKeys;
+	}
+	
+	// Create a method to get one page of non migrated testcases with the details fields starting from the given offset
+	
+	public List<JsonObject> getJiraNonMigratedTestcases(int startAt, int maxResults) throws IOException {
+		
+		List<JsonObject> testcases = new ArrayList<JsonObject>();
+		String url = getNonMigratedTestcaseSearchUrl(ConfigLoader.getConfigValue("JIRA_SEARCH_FIELDS", DEFAULT_SEARCH_FIELDS), startAt, maxResults);
+		logger.info("String URL to get non migrated testcases from Jira {}", url);
+		
+		HttpEntity response = Utils.getJiraResponse(jiraClient, url, jiraApiKey);
+		if (response == null) {
+			throw new IOException("Response is NULL from while retrieving non migrated testcases from JIRA");
+		}
+		
+		// Parse the testcases of the Json array one by one, so that only one testcase is held as a parsed tree at a time
+		try (JsonReader reader = new JsonReader(new InputStreamReader(response.getContent(), StandardCharsets.UTF_8))) {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				testcases.add(JsonParser.parseReader(reader).getAsJsonObject());
+			}
+			reader.endArray();
+		} catch (IllegalStateException | JsonParseException e) {
+			throw new IOException("Error while parsing the Json response", e);
+		} finally {
+			EntityUtils.consumeQuietly(response);
+		}
+		
+		logger.info("{} testcases retrieved from Jira at offset {}", testcases.size(), startAt);
+		return testcases;
+	}
+	
+	/* Create a method to complete the testcase details returned by the search. When a required field is not returned by the search,
+	 * the testcase details are requested for the key. Else the search result is returned as it is */
+	
+	public JsonObject completeJiraTestCaseDetails(JsonObject testcase) {
+		
+		for (String field : REQUIRED_DETAILS_FIELDS) {
+			if (!testcase.has(field)) {
+				String key = testcase.get("key").getAsString();
+				logger.info("Field {} is not returned by the search for the key {}. Getting the testcase details", field, key);
+				return getJiraTestCaseDetails(key);
+			}
+		}
+		return testcase;
+	}
+	
+	// Create a method to mark the given testcase as migrated in Jira and save the Rally testcase OID to the testcase
+	
+	public boolean updateTestCaseMigratedStatus(String key, String rallyTestcaseOID) {
+		
+		return Utils.updateTestCaseMigratedStatusinJira(jiraClient, jiraBaseURL, jiraApiKey, key, true, rallyTestcaseOID);
+	}
+	
+	/* Create a method to get all the migrated testcases which are updated in Jira after the given time, with their details page by page.
+	 * All the migrated testcases are returned when the time is 0. It is used by the delta sync */
+	
+	public JiraSearchIterator<JsonObject> getJiraChangedTestcaseIterator(long updatedAfterMillis) {
+		
+		return new JiraSearchIterator<JsonObject>((startAt, maxResults) -> getJiraChangedTestcases(updatedAfterMillis, startAt, maxResults),
+				testcase -> testcase.get("key").getAsString(), ConfigLoader.getIntConfigValue("JIRA_SEARCH_PAGE_SIZE", 100));
+		
+	}
+	
+	/* Create a method to get one page of the migrated testcases which are updated in Jira after the given time.
+	 * The updated field and its date format are loaded from JIRA_UPDATED_FIELD and DELTA_SYNC_DATE_FORMAT in .properties file.
+	 * The custom fields are asked too, so that the Rally testcase OID which is written back to Jira is available */
+	
+	public List<JsonObject> getJiraChangedTestcases(long updatedAfterMillis, int startAt, int maxResults) throws IOException {
+		
+		String query = "projectKey = " + jiraProjectKey + " AND \"" + ConfigLoader.getConfigValue("JIRA_MIGRATED_FIELD", "TestCase Migrated") + "\" = true";
+		if (updatedAfterMillis > 0) {
+			SimpleDateFormat dateFormat = new SimpleDateFormat(ConfigLoader.getConfigValue("DELTA_SYNC_DATE_FORMAT", "yyyy-MM-dd HH:mm"));
+			query += " AND " + ConfigLoader.getConfigValue("JIRA_UPDATED_FIELD", "updatedOn") + " >= \"" + dateFormat.format(new Date(updatedAfterMillis)) + "\"";
+		}
+		String fields = ConfigLoader.getConfigValue("JIRA_SEARCH_FIELDS", DEFAULT_SEARCH_FIELDS) + ",customFields";
+		String url = getTestcaseSearchUrl(fields, startAt, maxResults, query);
+		logger.info("String URL to get changed testcases from Jira {}", url);
+		
+		HttpEntity response = Utils.getJiraResponse(jiraClient, url, jiraApiKey);
+		if (response == null) {
+			throw new IOException("Response is NULL from while retrieving changed testcases from JIRA");
+		}
+		
+		List<JsonObject> testcases = new ArrayList<JsonObject>();
+		try (JsonReader reader = new JsonReader(new InputStreamReader(response.getContent(), StandardCharsets.UTF_8))) {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				testcases.add(JsonParser.parseReader(reader).getAsJsonObject());
+			}
+			reader.endArray();
+		} catch (IllegalStateException | JsonParseException e) {
+			throw new IOException("Error while parsing the Json response", e);
+		} finally {
+			EntityUtils.consumeQuietly(response);
+		}
+		
+		logger.info("{} changed testcases retrieved from Jira at offset {}", testcases.size(), startAt);
+		return testcases;
+	}
+	
+	// Jira search URL for the non migrated testcases with the given fields and page
+	
+	private String getNonMigratedTestcaseSearchUrl(String fields, int startAt, int maxResults) {
+		
+		return getTestcaseSearchUrl(fields, startAt, maxResults, "projectKey = " + jiraProjectKey + " AND \"Migrate Test to Rally\" = true AND \"TestCase Migrated\" = false");
+	}
+	
+	// Jira search URL for the given query, fields and page. The query is encoded
+	
+	private String getTestcaseSearchUrl(String fields, int startAt, int maxResults, String query) {
+		
+		return jiraBaseURL + "/rest/atm/1.0/testcase/search?fields=" + fields + "&startAt=" + startAt + "&maxResults=" + maxResults + "&query=" + encode(query);
+	}
+	
+	// Encoded Jira query
+	
+	private String encode(String query) {
+		
+		try {
+			return URLEncoder.encode(query, StandardCharsets.UTF_8.toString());
+		} catch (UnsupportedEncodingException e) {
+			logger.error("Error while encoding a part of URL ", e );
+			return null;
+		}
+	}
+	
+    // Create a method to get the testcase details for a given jira testcase key. This method accepts Jira key as string argument and returns the testcase keys as Json Object for further processing
+	
+// Create a method to get JIRA Test case details for the current key
+	
+
+	public JsonObject getJiraTestCaseDetails(String key) {
+			JsonObject jiraJson = null;
+			
+			// Jira URL string building. This URL will give the Jira testcase details for the given testcase key
+			String url = jiraBaseURL + "/rest/atm/1.0/testcase/" + key;
+			
+			/* Call "getJiraResponse" from Utils class. This method will return the JIRA JSON response for the given URL.
+			 * Since the URL has been built such a way that to get the testcase details for the given testcase key, the output of this method would be Jira Testcase details in a JSON format */
+			
+			HttpEntity response = Utils.getJiraResponse(jiraClient, url, jiraApiKey);
+			if ( response !=  null) {
+				try {
+					// Convert the response as String and then parse the string, Return the testcase details as JsonObject
+					String responseBody = EntityUtils.toString(response);
+					// The body is logged only on the sampled payload channel
+					MigrationLog.logPayload("Jira testcase details", key, () -> responseBody);
+					jiraJson = JsonParser.parseString(responseBody).getAsJsonObject();
+				
+				// Exception handling
+				} catch (ParseException e) {
+					logger.error("Failed to retrieving JIRA testcase details for the key {}; Parser exception", key, e);
+					
+				} catch (IOException e) {
+					logger.error("Failed to retrieving JIRA testcase details for the key {}; IO exception", key, e);
+				}
+				
+				
+			} else {
+				
+				logger.error("failed to get jira testcase details for the key {}; Returning null", key);
+			}
+
+		return jiraJson;
+
+	}
+	
+	
+	
+	// Create a method to get the file attachments of the given testcase key. The attachment URL and file name are returned for each attachment
+	
+	public List<JiraAttachment> getJiraTestCaseAttachments(String key) throws IOException {
+		
+		String url = jiraBaseURL + "/rest/atm/1.0/testcase/" + key + "/attachments";
+		HttpEntity response = Utils.getJiraResponse(jiraClient, url, jiraApiKey);
+		if (response == null) {
+			throw new IOException("Response is NULL from while retrieving attachments for the key " + key);
+		}
+		try (InputStreamReader reader = new InputStreamReader(response.getContent(), StandardCharsets.UTF_8)) {
+			JiraAttachment[] attachments = gson.fromJson(reader, JiraAttachment[].class);
+			return attachments == null ? new ArrayList<JiraAttachment>() : Arrays.asList(attachments);
+		} catch (JsonParseException e) {
+			throw new IOException("Error while parsing the attachments Json response for the key " + key, e);
+		} finally {
+			EntityUtils.consumeQuietly(response);
+		}
+	}
+	
+	/* Create a method to open the content of the given attachment as a stream. Test step attachments do not have URL in the step Json,
+	 * so the URL is built from the attachment id. The caller should consume the returned HttpEntity */
+	
+	public HttpEntity getJiraAttachmentContent(JiraAttachment attachment) {
+		
+		String url = attachment.getUrl() != null ? attachment.getUrl() : jiraBaseURL + "/rest/tests/1.0/attachment/" + attachment.getId();
+		return Utils.getJiraResponse(jiraClient, url, jiraApiKey);
+	}
+	
+}
@@ -0,0 +1,165 @@
+package com.optum.coe.automation.rally;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class iterates all the non migrated Jira testcases page by page using the "startAt" offset of the Jira search.
+ * The items can be testcase keys or testcase details, based on the page loader.
+ * 1. The items of a page are returned as soon as the page is received
+ * 2. The next page is requested on a background thread while the items of the current page are processed
+ * 3. The iteration stops when Jira returns a page which is smaller than the page size
+ * 4. A testcase is returned only once, even when it is returned again in a later page because the search result is changed during the run.
+ *    A testcase which is removed from the search result during the run moves the next testcases to an earlier page, so the search of the non migrated testcases
+ *    holds the Jira status write-back until the iteration is completed. See JiraStatusWriter
+ * A page which could not be retrieved stops the iteration and the error is logged */
+
+public class JiraSearchIterator<T> implements Iterator<T>, AutoCloseable {
+
+	// Logger Initialization for JiraSearchIterator Class
+	private static final Logger logger = LogManager.getLogger();
+
+	// Loads one page of the Jira search from the given offset
+
+	public interface PageLoader<T> {
+		List<T> load(int startAt, int maxResults) throws IOException;
+	}
+
+	private final PageLoader<T> pageLoader;
+	private final Function<T, String> keyFunction;
+	private final int pageSize;
+	private final ExecutorService prefetchExecutor;
+	private final Runnable closeAction;
+	private final Set<String> returnedKeys = new HashSet<String>();
+	private Iterator<T> currentPage = Collections.emptyIterator();
+	private Future<List<T>> nextPage;
+	private int nextStartAt;
+	private T nextItem;
+	private volatile boolean failed;
+
+	// The key function returns the Jira testcase key of an item. It is used to return each testcase only once
+
+	public JiraSearchIterator(PageLoader<T> pageLoader, Function<T, String> keyFunction, int pageSize) {
+
+		this(pageLoader, keyFunction, pageSize, () -> {
+		});
+
+	}
+
+	// Overloaded constructor with an action which is run when no more pages are requested, because the last page is received, a page is failed or the iterator is closed
+
+	public JiraSearchIterator(PageLoader<T> pageLoader, Function<T, String> keyFunction, int pageSize, Runnable closeAction) {
+
+		this.pageLoader = pageLoader;
+		this.closeAction = closeAction;
+		this.keyFunction = keyFunction;
+		this.pageSize = Math.max(1, pageSize);
+		prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "jira-search-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		requestNextPage();
+
+	}
+
+	@Override
+	public boolean hasNext() {
+
+		while (nextItem == null) {
+			T item = nextPageItem();
+			if (item == null) {
+				return false;
+			}
+			if (returnedKeys.add(keyFunction.apply(item))) {
+				nextItem = item;
+			}
+		}
+		return true;
+
+	}
+
+	@Override
+	public T next() {
+
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T item = nextItem;
+		nextItem = null;
+		return item;
+
+	}
+
+	// Returns true when a page could not be retrieved, so the iteration is stopped before all the testcases are returned
+
+	public boolean isFailed() {
+
+		return failed;
+
+	}
+
+	// Stop requesting more pages. The items which are already received can still be iterated
+
+	@Override
+	public void close() {
+
+		nextPage = null;
+		prefetchExecutor.shutdownNow();
+		closeAction.run();
+
+	}
+
+	// Get the next item from the current page. The next page is waited for when the current page is completed. Returns null when there are no more items
+
+	private T nextPageItem() {
+
+		while (!currentPage.hasNext() && nextPage != null) {
+			List<T> page;
+			try {
+				page = nextPage.get();
+			} catch (ExecutionException e) {
+				logger.error("Failed to retrieve non migrated testcases from Jira at offset {}", nextStartAt - pageSize, e.getCause());
+				failed = true;
+				close();
+				return null;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failed = true;
+				close();
+				return null;
+			}
+
+			// A full page means there may be more items, so the next page is requested before the current page is processed
+			if (page.size() < pageSize) {
+				close();
+			} else {
+				requestNextPage();
+			}
+			currentPage = page.iterator();
+		}
+		return currentPage.hasNext() ? currentPage.next() : null;
+
+	}
+
+	private void requestNextPage() {
+
+		int startAt = nextStartAt;
+		nextStartAt += pageSize;
+		nextPage = prefetchExecutor.submit(() -> pageLoader.load(startAt, pageSize));
+
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.optum.coe.automation.rally;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class writes the "TestCase Migrated" status and the Rally testcase OID back to Jira in the background.
+ * 1. A migrated testcase is added to a pending queue and the migration continues without waiting for Jira
+ * 2. The pending updates are coalesced by testcase key, so a testcase is updated only once even when it is added again
+ * 3. The pending updates are written to Jira when JIRA_WRITEBACK_BATCH_SIZE updates are pending or every JIRA_WRITEBACK_FLUSH_SECONDS seconds
+ * 4. A failed update is kept in the queue and tried again in the next flush. The remaining updates are written when the writer is closed
+ * 5. The flushes are held while a search of the non migrated testcases is running. The search pages by offset, so a testcase which is marked as migrated
+ *    during the search would move the next testcases to an earlier page and they would be skipped. See JiraOperation.getJiraNonMigratedTestcaseKeyIterator
+ * Jira test management api does not have a bulk update, so a batch is written as one request per testcase from the writer thread */
+
+public class JiraStatusWriter {
+
+	// Logger Initialization for JiraStatusWriter Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static JiraStatusWriter instance;
+
+	private final JiraOperation jiraOperation;
+	private final int batchSize;
+	private final ConcurrentHashMap<String, String> pendingUpdates = new ConcurrentHashMap<String, String>();
+	private final ScheduledExecutorService flushExecutor;
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	private final AtomicInteger flushHolds = new AtomicInteger();
+	private volatile boolean closed;
+
+	public JiraStatusWriter(JiraOperation jiraOperation, int batchSize, int flushSeconds) {
+
+		this.jiraOperation = jiraOperation;
+		this.batchSize = Math.max(1, batchSize);
+		flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "jira-status-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flushExecutor.scheduleWithFixedDelay(this::flush, flushSeconds, Math.max(1, flushSeconds), TimeUnit.SECONDS);
+
+	}
+
+	// Get the process-wide writer. Batch size and flush interval are loaded from .properties file
+
+	public static synchronized JiraStatusWriter getInstance() {
+
+		if (instance == null) {
+			instance = new JiraStatusWriter(new JiraOperation(), ConfigLoader.getIntConfigValue("JIRA_WRITEBACK_BATCH_SIZE", 50),
+					ConfigLoader.getIntConfigValue("JIRA_WRITEBACK_FLUSH_SECONDS", 30));
+		}
+		return instance;
+
+	}
+
+	// Add a migrated testcase to the pending updates. The Jira update is written later by the writer thread
+
+	public void submit(String key, String rallyTestcaseOID) {
+
+		pendingUpdates.put(key, rallyTestcaseOID == null ? "" : rallyTestcaseOID);
+		if (pendingUpdates.size() >= batchSize) {
+			requestFlush();
+		}
+
+	}
+
+	/* Hold the flushes of the writer thread until the returned action is run. The action may be run more than once.
+	 * The pending updates are written when the last hold is released, or when the writer is closed */
+
+	public Runnable holdFlush() {
+
+		flushHolds.incrementAndGet();
+		AtomicBoolean released = new AtomicBoolean();
+		return () -> {
+			if (released.compareAndSet(false, true) && flushHolds.decrementAndGet() == 0 && !pendingUpdates.isEmpty()) {
+				requestFlush();
+			}
+		};
+
+	}
+
+	// Write the remaining updates to Jira and stop the writer thread
+
+	public void close() {
+
+		closed = true;
+		flushExecutor.shutdown();
+		try {
+			flushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writePendingUpdates();
+		if (!pendingUpdates.isEmpty()) {
+			logger.error("TestCase Migrated status is not updated in Jira for the keys {}", pendingUpdates.keySet());
+		}
+
+	}
+
+	/* Ask the writer thread to flush. An update which is submitted after the writer is closed, for example by a late attachment upload,
+	 * is written by the caller thread because the writer thread is stopped */
+
+	private void requestFlush() {
+
+		if (closed) {
+			writePendingUpdates();
+		} else if (flushRequested.compareAndSet(false, true)) {
+			try {
+				flushExecutor.execute(this::flush);
+			} catch (RejectedExecutionException e) {
+				// The writer is closed after the closed flag was read
+				writePendingUpdates();
+			}
+		}
+
+	}
+
+	// Write the pending updates to Jira from the writer thread, unless the flushes are held
+
+	private void flush() {
+
+		if (flushHolds.get() > 0) {
+			flushRequested.set(false);
+			return;
+		}
+		writePendingUpdates();
+
+	}
+
+	// Write the pending updates to Jira. This method runs on the writer thread, except the last flush from close()
+
+	private synchronized void writePendingUpdates() {
+
+		flushRequested.set(false);
+		if (pendingUpdates.isEmpty()) {
+			return;
+		}
+		List<String> keys = new ArrayList<String>(pendingUpdates.keySet());
+		int updatedCount = 0;
+		for (String key : keys) {
+			String rallyTestcaseOID = pendingUpdates.get(key);
+			if (rallyTestcaseOID == null) {
+				continue;
+			}
+			try {
+				if (jiraOperation.updateTestCaseMigratedStatus(key, rallyTestcaseOID.isEmpty() ? null : rallyTestcaseOID)) {
+					// Remove the update only if it is not added again while it was written
+					pendingUpdates.remove(key, rallyTestcaseOID);
+					updatedCount++;
+				}
+			} catch (RuntimeException e) {
+				logger.error("Error occurred while updating TestCase Migrated status in Jira for the key {}", key, e);
+			}
+		}
+		logger.info("TestCase Migrated status is updated in Jira for {} of {} testcases", updatedCount, keys.size());
+
+	}
+
+	// Number of updates which are not written to Jira yet
+
+	public int getPendingCount() {
+
+		return pendingUpdates.size();
+
+	}
+
+}
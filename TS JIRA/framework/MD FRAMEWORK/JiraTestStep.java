@@ -0,0 +1,62 @@
+package com.optum.coe.automation.rally;
+
+import java.util.List;
+
+// Jira test step. The field names are same as the Jira testScript.steps Json, so that the step can be loaded with Gson
+
+public class JiraTestStep {
+    private int id;
+    private int index;
+    private String description;
+    private String testData;
+    private String expectedResult;
+    private List<JiraAttachment> attachments;
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getTestdata() {
+        return testData;
+    }
+
+    public void setTestdata(String testData) {
+        this.testData = testData;
+    }
+
+    public String getExpectedresult() {
+        return expectedResult;
+    }
+
+    public void setExpectedresult(String expectedResult) {
+        this.expectedResult = expectedResult;
+    }
+
+    public List<JiraAttachment> getAttachments() {
+        return attachments;
+    }
+
+    public void setAttachments(List<JiraAttachment> attachments) {
+        this.attachments = attachments;
+    }
+}
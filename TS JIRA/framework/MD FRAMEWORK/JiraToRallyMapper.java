@@ -0,0 +1,91 @@
+package com.optum.coe.automation.rally;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/* This Class maps the Jira testcase and test step details to the Rally create payloads in one pass.
+ * 1. The values are read from the Jira Json and added to the Rally payload directly. No intermediate Json object or Json string is created
+ * 2. The Gson instance is shared. Gson is thread-safe, so the same instance is used by all the migration threads
+ * The mapping rules are same as before: "Normal" priority is "Useful" in Rally, "Ready" status is Ready = true and the method is always Manual */
+
+public final class JiraToRallyMapper {
+
+	private static final Gson gson = new Gson();
+
+	static final String DEFAULT_TESTCASE_NAME = "Default Test Case Name - No TestCase name found in Jira";
+	static final String DEFAULT_PRIORITY = "Default Priority";
+
+	private JiraToRallyMapper() {
+	}
+
+	// Get the shared Gson instance which is used to load the Jira Json to the Jira classes
+
+	public static Gson getGson() {
+
+		return gson;
+
+	}
+
+	/* Map the Jira testcase details to the Rally testcase create payload. The test folder is added by the caller after the folder is resolved.
+	 * The tags are the Rally tag references of the Jira labels */
+
+	public static JsonObject toRallyTestcase(JsonObject jiraJson, String projectRef, String userRef, JsonArray tags) {
+
+		JsonObject testCase = new JsonObject();
+
+		String name = getString(jiraJson, "name");
+		testCase.addProperty("Name", name != null ? name : DEFAULT_TESTCASE_NAME);
+		testCase.addProperty("Project", projectRef);
+		testCase.addProperty("Method", "Manual");
+
+		String priority = getString(jiraJson, "priority");
+		if (priority == null) {
+			testCase.addProperty("Priority", DEFAULT_PRIORITY);
+		} else {
+			testCase.addProperty("Priority", priority.equalsIgnoreCase("Normal") ? "Useful" : priority);
+		}
+
+		testCase.addProperty("Owner", "/user/" + userRef);
+		testCase.addProperty("Ready", "Ready".equals(getString(jiraJson, "status")));
+		if (tags != null) {
+			testCase.add("Tags", tags);
+		}
+		return testCase;
+
+	}
+
+	// Map the Jira test step to the Rally test step create payload for the given Rally testcase
+
+	public static JsonObject toRallyTestStep(JiraTestStep step, String testcaseRef) {
+
+		JsonObject payLoad = new JsonObject();
+		payLoad.addProperty("TestCase", testcaseRef);
+		payLoad.addProperty("Input", getInput(step));
+		payLoad.addProperty("expectedResult", step.getExpectedresult());
+		payLoad.addProperty("index", step.getIndex());
+		payLoad.addProperty("id", step.getId());
+		return payLoad;
+
+	}
+
+	// The Rally step input is the Jira step description followed by the test data, when the step has test data
+
+	static String getInput(JiraTestStep step) {
+
+		if (step.getTestdata() != null && !step.getTestdata().isEmpty()) {
+			return step.getDescription() + " | " + step.getTestdata();
+		}
+		return step.getDescription();
+
+	}
+
+	private static String getString(JsonObject json, String memberName) {
+
+		JsonElement element = json.get(memberName);
+		return element == null || element.isJsonNull() ? null : element.getAsString();
+
+	}
+
+}
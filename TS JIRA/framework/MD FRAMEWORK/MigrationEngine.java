@@ -0,0 +1,548 @@
+package com.optum.coe.automation.rally;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+// This Class migrates Jira testcases to Rally in parallel. Each Jira testcase is migrated as its own task on a bounded worker pool
+
+public class MigrationEngine implements AutoCloseable {
+
+	// Logger Initialization for MigrationEngine Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final Gson gson = JiraToRallyMapper.getGson();
+
+	// Initialization of the class member variables. Values are loaded from .properties file and default values are used when they are not configured
+	private final int workerCount;
+	private final boolean useVirtualThreads;
+	private final Semaphore jiraPermits;
+	private final Semaphore rallyPermits;
+	private final JiraOperation jiraOperation;
+	private final MigrationJournal journal;
+	private final boolean writeBackEnabled;
+	private final boolean pipelineEnabled;
+	private final AttachmentMigrator attachmentMigrator;
+	private final MigrationVerifier verifier;
+	private final Map<String, CompletableFuture<Boolean>> pendingAttachments = new ConcurrentHashMap<String, CompletableFuture<Boolean>>();
+
+	/* A Constructor loads the value from .properties file.
+	 * MIGRATION_WORKER_COUNT - how many testcases are migrated at the same time
+	 * MIGRATION_USE_VIRTUAL_THREADS - run the testcase tasks on virtual threads when the JVM supports it
+	 * JIRA_MAX_CONCURRENT_REQUESTS / RALLY_MAX_CONCURRENT_REQUESTS - how many requests can be in flight for each host
+	 * ATTACHMENT_MIGRATION_ENABLED - migrate the testcase and test step file attachments in the background
+	 * MIGRATION_PIPELINE_ENABLED - migrate the testcases through the staged pipeline instead of one task per testcase
+	 * VERIFICATION_CHUNK_SIZE - verify the migrated testcases in Rally in chunks of this size in the background. 0 means no verification during the migration */
+
+	public MigrationEngine(JiraOperation jiraOperation) {
+
+		this.jiraOperation = jiraOperation;
+		journal = MigrationJournal.getInstance();
+		writeBackEnabled = ConfigLoader.getBooleanConfigValue("JIRA_WRITEBACK_ENABLED", true);
+		pipelineEnabled = ConfigLoader.getBooleanConfigValue("MIGRATION_PIPELINE_ENABLED", false);
+		workerCount = Math.max(1, ConfigLoader.getIntConfigValue("MIGRATION_WORKER_COUNT", 4));
+		useVirtualThreads = ConfigLoader.getBooleanConfigValue("MIGRATION_USE_VIRTUAL_THREADS", true);
+		jiraPermits = new Semaphore(Math.max(1, ConfigLoader.getIntConfigValue("JIRA_MAX_CONCURRENT_REQUESTS", workerCount)), true);
+		rallyPermits = new Semaphore(Math.max(1, ConfigLoader.getIntConfigValue("RALLY_MAX_CONCURRENT_REQUESTS", workerCount)), true);
+		attachmentMigrator = ConfigLoader.getBooleanConfigValue("ATTACHMENT_MIGRATION_ENABLED", false)
+				? new AttachmentMigrator(jiraOperation, ConnectionManager.getRallyRestApi()) : null;
+		verifier = ConfigLoader.getIntConfigValue("VERIFICATION_CHUNK_SIZE", 0) > 0 ? new MigrationVerifier(jiraOperation, ConnectionManager.getRallyRestApi()) : null;
+		logger.info("Migration engine is initialized with {} workers. Jira request limit - {}, Rally request limit - {}", workerCount, jiraPermits.availablePermits(), rallyPermits.availablePermits());
+
+	}
+
+	/* A method which migrates all the given Jira testcase keys.
+	 * 1. Submit one task per testcase key. The number of running tasks is bounded by the worker count, so the caller waits when all workers are busy
+	 * 2. A failed testcase is logged and added to the failed list; the remaining testcases are still migrated
+	 * 3. Wait until all the tasks are completed and return the failed testcase keys */
+
+	public List<String> migrate(List<String> testcaseKeys) {
+
+		return migrate(testcaseKeys.iterator());
+
+	}
+
+	// Overloaded method which migrates the Jira testcase keys as they are returned by the iterator, for example page by page from Jira search
+
+	public List<String> migrate(Iterator<String> testcaseKeys) {
+
+		return migrate(testcaseKeys, key -> key, key -> null);
+
+	}
+
+	/* A method which migrates all the non migrated testcases of the Jira project. The testcase keys are read from Jira page by page and migrated as the pages are received.
+	 * When JIRA_BULK_DETAILS_ENABLED is true, the search returns the testcase details too and the details are not requested for each key */
+
+	public List<String> migrateNonMigratedTestcases() {
+
+		if (ConfigLoader.getBooleanConfigValue("JIRA_BULK_DETAILS_ENABLED", false)) {
+			try (JiraSearchIterator<JsonObject> testcases = jiraOperation.getJiraNonMigratedTestcaseIterator()) {
+				return migrateTestcases(testcases);
+			}
+		}
+		try (JiraSearchIterator<String> testcaseKeys = jiraOperation.getJiraNonMigratedTestcaseKeyIterator()) {
+			return migrate(testcaseKeys);
+		}
+
+	}
+
+	/* A method which migrates the Jira testcases returned by the search with their details. The testcase details are not requested again for each key,
+	 * unless a required field is not returned by the search */
+
+	public List<String> migrateTestcases(Iterator<JsonObject> testcases) {
+
+		return migrate(testcases, testcase -> testcase.get("key").getAsString(), testcase -> testcase);
+
+	}
+
+	/* Migrate the testcase items with the worker pool, or with the staged pipeline when MIGRATION_PIPELINE_ENABLED is true.
+	 * The search function returns the testcase details which are returned by the search, or null when only the key is available */
+
+	private <T> List<String> migrate(Iterator<T> testcases, Function<T, String> keyFunction, Function<T, JsonObject> searchFunction) {
+
+		List<String> failedKeys = Collections.synchronizedList(new ArrayList<String>());
+		AtomicInteger migratedCount = new AtomicInteger();
+
+		if (pipelineEnabled) {
+			new MigrationPipeline(this, workerCount).run(testcases,
+					testcase -> createContext(keyFunction.apply(testcase), searchFunction.apply(testcase)), migratedCount, failedKeys);
+		} else {
+			migrateWithWorkers(testcases, keyFunction, searchFunction, migratedCount, failedKeys);
+		}
+
+		// A testcase is failed when its attachments are not migrated, so the attachments which are still uploading are waited for
+		for (Map.Entry<String, CompletableFuture<Boolean>> attachments : pendingAttachments.entrySet()) {
+			if (!attachments.getValue().join()) {
+				migratedCount.decrementAndGet();
+				failedKeys.add(attachments.getKey());
+				MigrationMetrics.getInstance().recordTestcaseFailed();
+			}
+		}
+		pendingAttachments.clear();
+
+		logger.info("Migration completed. Migrated testcases - {}, Failed testcases - {}", migratedCount.get(), failedKeys.size());
+		if (!failedKeys.isEmpty()) {
+			logger.error("Failed Jira testcase keys: {}", failedKeys);
+		}
+		return failedKeys;
+
+	}
+
+	private <T> void migrateWithWorkers(Iterator<T> testcases, Function<T, String> keyFunction, Function<T, JsonObject> searchFunction,
+			AtomicInteger migratedCount, List<String> failedKeys) {
+
+		Semaphore workerPermits = new Semaphore(workerCount);
+		ExecutorService executor = createExecutor();
+		MigrationMetrics metrics = MigrationMetrics.getInstance();
+		metrics.registerGauge("workers busy", () -> workerCount - workerPermits.availablePermits());
+
+		try {
+			while (testcases.hasNext()) {
+				T testcase = testcases.next();
+				String key = keyFunction.apply(testcase);
+				JsonObject searchTestcaseJson = searchFunction.apply(testcase);
+				workerPermits.acquireUninterruptibly();
+				executor.execute(() -> {
+					TestcaseContext context = createContext(key, searchTestcaseJson);
+					boolean migrated = false;
+					try {
+						migrated = migrateTestcase(context);
+					} catch (Exception e) {
+						logger.error("Unexpected error while migrating the Jira testcase {}", key, e);
+					} finally {
+						if (migrated) {
+							migratedCount.incrementAndGet();
+						} else {
+							failedKeys.add(key);
+							metrics.recordTestcaseFailed();
+						}
+						logCaseSummary(context, migrated);
+						workerPermits.release();
+					}
+				});
+			}
+		} finally {
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+					logger.info("Waiting for running testcase migrations to complete");
+				}
+			} catch (InterruptedException e) {
+				logger.error("Interrupted while waiting for testcase migrations to complete", e);
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			metrics.unregisterGauge("workers busy");
+		}
+
+	}
+
+	/* A method which migrates one Jira testcase to Rally. Each completed stage is recorded in the migration journal,
+	 * so that a testcase is resumed from its first incomplete stage when the migration is started again.
+	 * 1. Get Jira Testcase details for the given testcase key. When the details are already returned by the search, they are completed only if a required field is missing
+	 * 2. Transform the Jira testcase details to the Rally testcase
+	 * 3. Check if the Jira folder structure is available in Rally and create it when it is not available
+	 * 4. Create the testcase in Rally
+	 * 5. Create the test steps in batches in the Jira step index order, so that the step order in Rally is same as Jira.
+	 *    For a testcase which is created by the previous run, the existing Rally steps are reconciled with the Jira steps instead
+	 * 6. Start the attachment migration in the background, when it is enabled
+	 * 7. Queue the TestCase Migrated status update for Jira. When there are attachments, the status is updated after the attachments are uploaded
+	 * Returns true only when the testcase and all of its steps are created. The staged pipeline runs the same steps, each on its own stage */
+
+	boolean migrateTestcase(TestcaseContext testcase) throws Exception {
+
+		if (isAlreadyMigrated(testcase)) {
+			return true;
+		}
+		return fetchDetails(testcase) && transform(testcase) && resolveFolder(testcase) && createTestcase(testcase) && createStepsAndAttachments(testcase);
+
+	}
+
+	TestcaseContext createContext(String key, JsonObject searchTestcaseJson) {
+
+		return new TestcaseContext(key, searchTestcaseJson, journal.getProgress(key));
+
+	}
+
+	// Returns true when the testcase is already migrated as per the migration journal. The Jira status update is queued again
+
+	boolean isAlreadyMigrated(TestcaseContext testcase) {
+
+		testcase.stage = "journal";
+		if (!testcase.progress.isCompleted()) {
+			return false;
+		}
+		testcase.alreadyMigrated = true;
+		logger.debug("Jira testcase {} is already migrated to Rally testcase {} as per the migration journal", testcase.key, testcase.progress.getTestcaseRef());
+		updateMigratedStatus(testcase.key, testcase.progress.getTestcaseRef());
+		return true;
+
+	}
+
+	// Get the Jira testcase details from the migration journal, from the search result or from Jira
+
+	boolean fetchDetails(TestcaseContext testcase) throws Exception {
+
+		testcase.stage = "fetch";
+		logger.debug("Processing {}", testcase.key);
+		testcase.jiraTestcaseJson = testcase.progress.getDetails();
+		if (testcase.jiraTestcaseJson != null) {
+			return true;
+		}
+		jiraPermits.acquire();
+		try {
+			testcase.jiraTestcaseJson = testcase.searchTestcaseJson == null ? jiraOperation.getJiraTestCaseDetails(testcase.key)
+					: jiraOperation.completeJiraTestCaseDetails(testcase.searchTestcaseJson);
+		} finally {
+			jiraPermits.release();
+		}
+		if (testcase.jiraTestcaseJson == null) {
+			logger.error("Jira testcase details are not found for the key {}", testcase.key);
+			return false;
+		}
+		journal.record(testcase.key, MigrationJournal.Stage.DETAILS_FETCHED, testcase.jiraTestcaseJson.toString());
+		return true;
+
+	}
+
+	// Transform the Jira testcase details to the Rally testcase. Nothing is transformed when the testcase is already created
+
+	boolean transform(TestcaseContext testcase) throws Exception {
+
+		testcase.stage = "transform";
+		if (testcase.progress.getTestcaseRef() != null) {
+			return true;
+		}
+		rallyPermits.acquire();
+		try {
+			testcase.rallyTestcaseJson = testcase.rallyOperation.transformTestcase(testcase.jiraTestcaseJson);
+		} finally {
+			rallyPermits.release();
+		}
+		return true;
+
+	}
+
+	// Check if the Jira folder structure is available in Rally and create it when it is not available
+
+	boolean resolveFolder(TestcaseContext testcase) throws Exception {
+
+		testcase.stage = "folder";
+		if (testcase.progress.getTestcaseRef() != null) {
+			return true;
+		}
+		if (testcase.progress.getFolderRef() != null) {
+			testcase.testFolder = new JsonObject();
+			testcase.testFolder.addProperty("_ref", testcase.progress.getFolderRef());
+			return true;
+		}
+		rallyPermits.acquire();
+		try {
+			testcase.testFolder = testcase.rallyOperation.resolveTestFolder(testcase.jiraTestcaseJson);
+		} finally {
+			rallyPermits.release();
+		}
+		if (testcase.testFolder == null) {
+			logger.error("Test folder is not resolved in rally for the Jira testcase key {}", testcase.key);
+			return false;
+		}
+		journal.record(testcase.key, MigrationJournal.Stage.FOLDER_RESOLVED, testcase.testFolder.get("_ref").getAsString());
+		return true;
+
+	}
+
+	// Create the testcase in Rally in the resolved test folder. When the migration is sharded, the lease of the partition of the key is checked just before the create
+
+	boolean createTestcase(TestcaseContext testcase) throws Exception {
+
+		testcase.stage = "create";
+		if (testcase.progress.getTestcaseRef() != null) {
+			testcase.rallyOperation.setRallyTestCaseOID(testcase.progress.getTestcaseRef());
+			testcase.resumed = true;
+			return true;
+		}
+		boolean rallyTestcaseCreationStatus;
+		rallyPermits.acquire();
+		try {
+			if (!ShardCoordinator.canCreate(testcase.key)) {
+				logger.error("The shard partition lease of the Jira testcase key {} is lost or about to expire. The testcase is not created in rally", testcase.key);
+				return false;
+			}
+			rallyTestcaseCreationStatus = testcase.rallyOperation.createTransformedRallyTestcase(testcase.rallyTestcaseJson, testcase.testFolder);
+		} finally {
+			rallyPermits.release();
+		}
+		if (!rallyTestcaseCreationStatus) {
+			logger.error("The Jira testcase is not created in rally. Jira Testcase key is {} is not created in rally", testcase.key);
+			return false;
+		}
+		journal.record(testcase.key, MigrationJournal.Stage.TESTCASE_CREATED, testcase.rallyOperation.getRallyTestCaseOID());
+		return true;
+
+	}
+
+	// Create the test steps of the testcase and start the attachment migration. Returns true when all the steps are created
+
+	boolean createStepsAndAttachments(TestcaseContext testcase) throws Exception {
+
+		testcase.stage = "steps";
+		String key = testcase.key;
+		MigrationJournal.TestcaseProgress progress = testcase.progress;
+		RallyOperation rallyOperation = testcase.rallyOperation;
+		if (!progress.isStepsCreated() && !ShardCoordinator.canCreate(key)) {
+			logger.error("The shard partition lease of the Jira testcase key {} is lost or about to expire. The test steps are not created in rally", key);
+			return false;
+		}
+		if (!progress.isStepsCreated() && testcase.resumed) {
+			// The testcase is created by the previous run, so some of its steps may be in Rally without a journal record. The Rally steps are reconciled instead
+			TestStepPlan plan;
+			rallyPermits.acquire();
+			try {
+				plan = rallyOperation.reconcileTestSteps(getSortedTestSteps(testcase.jiraTestcaseJson));
+			} finally {
+				rallyPermits.release();
+			}
+			for (TestStepPlan.Operation operation : plan.getOperations()) {
+				if (operation.getType() == TestStepPlan.OperationType.CREATE && operation.isSuccessful()) {
+					testcase.stepsCreated++;
+					MigrationMetrics.getInstance().recordTestStepCreated();
+					journal.record(key, MigrationJournal.Stage.STEP_CREATED, operation.getStep().getIndex() + "=" + operation.getStepRef());
+				}
+			}
+			if (!plan.isSuccessful()) {
+				logger.error("Test steps are not reconciled in rally for the Jira testcase key {}. {}", key, plan);
+				return false;
+			}
+			journal.record(key, MigrationJournal.Stage.STEPS_CREATED, null);
+		} else if (!progress.isStepsCreated()) {
+			List<JiraTestStep> testSteps = getSortedTestSteps(testcase.jiraTestcaseJson);
+
+			List<TestStepResult> stepResults;
+			rallyPermits.acquire();
+			try {
+				stepResults = rallyOperation.createTestSteps(testSteps);
+			} finally {
+				rallyPermits.release();
+			}
+			boolean stepsStatus = true;
+			for (TestStepResult stepResult : stepResults) {
+				if (stepResult.isSuccessful()) {
+					testcase.stepsCreated++;
+					MigrationMetrics.getInstance().recordTestStepCreated();
+					journal.record(key, MigrationJournal.Stage.STEP_CREATED, stepResult.getStep().getIndex() + "=" + stepResult.getStepRef());
+				} else {
+					logger.error("Test step {} is not created in rally for the Jira testcase key {}. {}", stepResult.getStep().getIndex(), key, stepResult.getErrors());
+					stepsStatus = false;
+				}
+			}
+			if (!stepsStatus) {
+				return false;
+			}
+			journal.record(key, MigrationJournal.Stage.STEPS_CREATED, null);
+		}
+
+		String rallyTestcaseOID = rallyOperation.getRallyTestCaseOID();
+		TestcaseFingerprint fingerprint = TestcaseFingerprint.of(testcase.jiraTestcaseJson);
+		if (attachmentMigrator != null && !progress.isAttachmentsUploaded()) {
+			/* The worker is released while the attachments are uploaded on the attachment pool. The attachment ids are kept in the fingerprint for the delta sync.
+			 * Each created attachment is recorded in the journal, so an attachment which is created before the previous run is stopped is not created again */
+			Set<String> attachmentIds = ConcurrentHashMap.newKeySet();
+			pendingAttachments.put(key, attachmentMigrator.migrateAttachments(key, rallyTestcaseOID, testcase.jiraTestcaseJson, attachment -> {
+				String attachmentId = TestcaseFingerprint.getAttachmentId(attachment);
+				attachmentIds.add(attachmentId);
+				return !progress.isAttachmentUploaded(attachmentId);
+			}, (attachment, attachmentRef) -> journal.record(key, MigrationJournal.Stage.ATTACHMENT_UPLOADED,
+					TestcaseFingerprint.getAttachmentId(attachment) + "=" + attachmentRef)).handle((attachmentRefs, e) -> {
+				if (e != null) {
+					logger.error("Attachments are not migrated to rally for the Jira testcase key {}", key, e);
+					return false;
+				}
+				journal.record(key, MigrationJournal.Stage.ATTACHMENTS_UPLOADED, null);
+				completeTestcase(key, rallyTestcaseOID, testcase.jiraTestcaseJson, fingerprint.withAttachments(attachmentIds));
+				return true;
+			}));
+			return true;
+		}
+
+		completeTestcase(key, rallyTestcaseOID, testcase.jiraTestcaseJson, fingerprint);
+		return true;
+
+	}
+
+	// Stop the attachment pool and verify the last chunk of the migrated testcases
+
+	@Override
+	public void close() {
+
+		if (attachmentMigrator != null) {
+			attachmentMigrator.close();
+		}
+		if (verifier != null) {
+			verifier.close();
+		}
+
+	}
+
+	/* Record the completed testcase and its fingerprint, so that the next delta sync updates only what is changed in Jira after this migration.
+	 * The testcase is added to the verification chunk when the chunk verification is enabled */
+
+	private void completeTestcase(String key, String rallyTestcaseOID, JsonObject jiraTestcaseJson, TestcaseFingerprint fingerprint) {
+
+		journal.record(key, MigrationJournal.Stage.COMPLETED, null);
+		SyncStateStore.getInstance().putState(key, rallyTestcaseOID, fingerprint);
+		MigrationMetrics.getInstance().recordTestcaseMigrated();
+		logger.debug("Jira testcase {} is migrated to Rally testcase {}", key, rallyTestcaseOID);
+		updateMigratedStatus(key, rallyTestcaseOID);
+		if (verifier != null) {
+			verifier.submit(key, rallyTestcaseOID, jiraTestcaseJson);
+		}
+
+	}
+
+	/* Log the summary line of the testcase when it leaves the migration, instead of its payloads.
+	 * The stage is the last stage which is started for the testcase, so for a failed testcase it is the stage which failed */
+
+	void logCaseSummary(TestcaseContext testcase, boolean migrated) {
+
+		String result = !migrated ? "FAILED" : testcase.alreadyMigrated ? "ALREADY_MIGRATED" : "MIGRATED";
+		String rallyTestcaseRef = testcase.alreadyMigrated ? testcase.progress.getTestcaseRef() : testcase.rallyOperation.getRallyTestCaseOID();
+		JsonElement folder = testcase.jiraTestcaseJson == null ? null : testcase.jiraTestcaseJson.get("folder");
+		MigrationLog.logCaseSummary(testcase.key, result, rallyTestcaseRef, folder == null || folder.isJsonNull() ? null : folder.getAsString(),
+				testcase.stepsCreated, testcase.stage, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - testcase.startNanos));
+
+	}
+
+	// Queue the TestCase Migrated status update for Jira. The update is written in the background by JiraStatusWriter
+
+	private void updateMigratedStatus(String key, String rallyTestcaseOID) {
+
+		if (writeBackEnabled) {
+			JiraStatusWriter.getInstance().submit(key, rallyTestcaseOID);
+		}
+
+	}
+
+	// Get the test steps from Jira testcase Json and sort them by the step index
+
+	static List<JiraTestStep> getSortedTestSteps(JsonObject jiraTestcaseJson) {
+
+		List<JiraTestStep> testSteps = new ArrayList<JiraTestStep>();
+		JsonObject testScript = jiraTestcaseJson.getAsJsonObject("testScript");
+		if (testScript == null || !testScript.has("steps")) {
+			return testSteps;
+		}
+		JsonArray stepsArray = testScript.getAsJsonArray("steps");
+		for (JsonElement element : stepsArray) {
+			testSteps.add(gson.fromJson(element, JiraTestStep.class));
+		}
+		testSteps.sort(Comparator.comparingInt(JiraTestStep::getIndex));
+		return testSteps;
+
+	}
+
+	/* Create the executor for testcase tasks. Virtual threads are used when configured and available in the JVM (Java 21 and above),
+	 * else a fixed thread pool with the configured worker count is used */
+
+	private ExecutorService createExecutor() {
+
+		if (useVirtualThreads) {
+			try {
+				ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+				logger.info("Virtual threads are used for testcase migration tasks");
+				return executor;
+			} catch (ReflectiveOperationException e) {
+				logger.info("Virtual threads are not available in this JVM. Using a fixed thread pool of {} threads", workerCount);
+			}
+		}
+		return Executors.newFixedThreadPool(workerCount);
+
+	}
+
+	// Migration state of one Jira testcase which is passed from one migration step to the next
+
+	static class TestcaseContext {
+
+		final String key;
+		final JsonObject searchTestcaseJson;
+		final MigrationJournal.TestcaseProgress progress;
+		final RallyOperation rallyOperation = new RallyOperation();
+		JsonObject jiraTestcaseJson;
+		JsonObject rallyTestcaseJson;
+		JsonObject testFolder;
+		// Summary of the testcase: last started stage, created steps and start time
+		final long startNanos = System.nanoTime();
+		String stage;
+		boolean alreadyMigrated;
+		// True when the Rally testcase is created by a previous run
+		boolean resumed;
+		int stepsCreated;
+
+		TestcaseContext(String key, JsonObject searchTestcaseJson, MigrationJournal.TestcaseProgress progress) {
+			this.key = key;
+			this.searchTestcaseJson = searchTestcaseJson;
+			this.progress = progress;
+		}
+
+	}
+
+}
@@ -0,0 +1,340 @@
+package com.optum.coe.automation.rally;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/* This Class keeps an append-only local journal of the migration progress of each Jira testcase.
+ * 1. Each completed stage of a testcase (details fetched, folder resolved, testcase created, step created, steps created, attachment uploaded, attachments uploaded, completed)
+ *    is appended to the journal file
+ * 2. When the migration is started again, the journal is replayed and each testcase is resumed from its first incomplete stage without calling Jira or Rally for the completed stages
+ * 3. The journal is compacted at startup and after every MIGRATION_JOURNAL_COMPACT_EVERY records. Completed testcases are kept as a single line
+ * Each line of the file is "key<TAB>stage<TAB>value". The journal is kept only in memory when MIGRATION_JOURNAL_FILE is not configured */
+
+public class MigrationJournal {
+
+	// Logger Initialization for MigrationJournal Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String SEPARATOR = "\t";
+
+	// Migration stages of a testcase in the order they are completed
+	public enum Stage {
+		DETAILS_FETCHED, FOLDER_RESOLVED, TESTCASE_CREATED, STEP_CREATED, STEPS_CREATED, ATTACHMENT_UPLOADED, ATTACHMENTS_UPLOADED, COMPLETED
+	}
+
+	private static MigrationJournal instance;
+
+	private final Path journalFile;
+	private final int compactEvery;
+	private final ConcurrentHashMap<String, TestcaseProgress> progressByKey = new ConcurrentHashMap<String, TestcaseProgress>();
+	private BufferedWriter journalWriter;
+	private int recordsSinceCompaction;
+
+	// A Constructor which replays and compacts the given journal file. The journal is kept only in memory when the file is null
+
+	public MigrationJournal(Path journalFile, int compactEvery) {
+
+		this.journalFile = journalFile;
+		this.compactEvery = compactEvery;
+		if (journalFile != null) {
+			replay();
+			compact();
+		}
+
+	}
+
+	// Get the process-wide journal. Journal file location is loaded from MIGRATION_JOURNAL_FILE in .properties file
+
+	public static synchronized MigrationJournal getInstance() {
+
+		if (instance == null) {
+			String journalFileLocation = ConfigLoader.getConfigValue("MIGRATION_JOURNAL_FILE", null);
+			instance = new MigrationJournal(journalFileLocation == null ? null : Paths.get(journalFileLocation),
+					ConfigLoader.getIntConfigValue("MIGRATION_JOURNAL_COMPACT_EVERY", 10000));
+		}
+		return instance;
+
+	}
+
+	// Get the migration progress of the given testcase key. An empty progress is returned for a testcase which is not started yet
+
+	public TestcaseProgress getProgress(String key) {
+
+		return progressByKey.computeIfAbsent(key, k -> new TestcaseProgress());
+
+	}
+
+	// Record a completed stage of the given testcase. The record is written to the journal file before this method returns
+
+	public synchronized void record(String key, Stage stage, String value) {
+
+		getProgress(key).apply(stage, value);
+		if (journalFile == null) {
+			return;
+		}
+		try {
+			if (journalWriter == null) {
+				journalWriter = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+			journalWriter.write(key + SEPARATOR + stage.name() + SEPARATOR + (value == null ? "" : value));
+			journalWriter.newLine();
+			journalWriter.flush();
+		} catch (IOException e) {
+			logger.error("Failed to write the migration journal record for the key {} and stage {}", key, stage, e);
+		}
+		if (++recordsSinceCompaction >= compactEvery) {
+			compact();
+		}
+
+	}
+
+	/* Copy the records of the testcases accepted by the filter from another journal file, for example the journal of a sharded worker which is stopped.
+	 * A testcase which already has progress in this journal is not copied. Returns the number of copied testcases */
+
+	public int importRecords(Path otherJournalFile, Predicate<String> keyFilter) {
+
+		if (!Files.exists(otherJournalFile)) {
+			return 0;
+		}
+		Set<String> importedKeys = new HashSet<String>();
+		try {
+			for (String line : Files.readAllLines(otherJournalFile, StandardCharsets.UTF_8)) {
+				String[] values = line.split(SEPARATOR, 3);
+				if (values.length < 2 || !keyFilter.test(values[0])) {
+					continue;
+				}
+				if (!importedKeys.contains(values[0])) {
+					TestcaseProgress progress = progressByKey.get(values[0]);
+					if (progress != null && !progress.getRecords().isEmpty()) {
+						continue;
+					}
+					importedKeys.add(values[0]);
+				}
+				try {
+					record(values[0], Stage.valueOf(values[1]), values.length == 3 ? values[2] : "");
+				} catch (IllegalArgumentException e) {
+					logger.error("Invalid migration journal record is skipped: {}", line);
+				}
+			}
+			logger.info("Migration journal records of {} testcases are imported from {}", importedKeys.size(), otherJournalFile);
+		} catch (IOException e) {
+			logger.error("Failed to import the migration journal file {}", otherJournalFile, e);
+		}
+		return importedKeys.size();
+
+	}
+
+	// Close the journal file
+
+	public synchronized void close() {
+
+		closeWriter();
+
+	}
+
+	// Replay the journal file and build the progress of each testcase
+
+	private void replay() {
+
+		if (!Files.exists(journalFile)) {
+			return;
+		}
+		int count = 0;
+		try {
+			List<String> lines = Files.readAllLines(journalFile, StandardCharsets.UTF_8);
+			for (String line : lines) {
+				String[] values = line.split(SEPARATOR, 3);
+				if (values.length < 2) {
+					continue;
+				}
+				try {
+					getProgress(values[0]).apply(Stage.valueOf(values[1]), values.length == 3 ? values[2] : "");
+					count++;
+				} catch (IllegalArgumentException e) {
+					logger.error("Invalid migration journal record is skipped: {}", line);
+				}
+			}
+			logger.info("{} migration journal records are replayed for {} testcases from {}", count, progressByKey.size(), journalFile);
+		} catch (IOException e) {
+			logger.error("Failed to replay the migration journal file {}", journalFile, e);
+		}
+
+	}
+
+	// Rewrite the journal file with the current progress of each testcase. The new file is written to a temporary file and then moved over the journal file
+
+	private synchronized void compact() {
+
+		closeWriter();
+		Path compactFile = journalFile.resolveSibling(journalFile.getFileName() + ".compact");
+		try {
+			Path parent = journalFile.toAbsolutePath().getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+			try (BufferedWriter writer = Files.newBufferedWriter(compactFile, StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, TestcaseProgress> entry : progressByKey.entrySet()) {
+					for (String record : entry.getValue().getRecords()) {
+						writer.write(entry.getKey() + SEPARATOR + record);
+						writer.newLine();
+					}
+				}
+			}
+			Files.move(compactFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			recordsSinceCompaction = 0;
+			logger.info("Migration journal is compacted for {} testcases", progressByKey.size());
+		} catch (IOException e) {
+			logger.error("Failed to compact the migration journal file {}", journalFile, e);
+		}
+
+	}
+
+	private void closeWriter() {
+
+		if (journalWriter != null) {
+			try {
+				journalWriter.close();
+			} catch (IOException e) {
+				logger.error("Error occurred while closing the migration journal file {}", journalFile, e);
+			}
+			journalWriter = null;
+		}
+
+	}
+
+	// Migration progress of one Jira testcase
+
+	public static class TestcaseProgress {
+
+		private String details;
+		private String folderRef;
+		private String testcaseRef;
+		private final Map<Integer, String> createdSteps = new LinkedHashMap<Integer, String>();
+		private final Map<String, String> uploadedAttachments = new LinkedHashMap<String, String>();
+		private boolean stepsCreated;
+		private boolean attachmentsUploaded;
+		private boolean completed;
+
+		public synchronized JsonObject getDetails() {
+			return details == null ? null : JsonParser.parseString(details).getAsJsonObject();
+		}
+
+		public synchronized String getFolderRef() {
+			return folderRef;
+		}
+
+		public synchronized String getTestcaseRef() {
+			return testcaseRef;
+		}
+
+		public synchronized boolean isStepCreated(int stepIndex) {
+			return createdSteps.containsKey(stepIndex);
+		}
+
+		public synchronized boolean isStepsCreated() {
+			return stepsCreated;
+		}
+
+		// Returns true when the Jira attachment is already created as a Rally attachment of the testcase
+
+		public synchronized boolean isAttachmentUploaded(String jiraAttachmentId) {
+			return uploadedAttachments.containsKey(jiraAttachmentId);
+		}
+
+		public synchronized boolean isAttachmentsUploaded() {
+			return attachmentsUploaded;
+		}
+
+		public synchronized boolean isCompleted() {
+			return completed;
+		}
+
+		// Apply a journal record to the progress. A step record value is "stepIndex=stepRef" and an attachment record value is "jiraAttachmentId=attachmentRef"
+
+		synchronized void apply(Stage stage, String value) {
+			switch (stage) {
+			case DETAILS_FETCHED:
+				details = value;
+				break;
+			case FOLDER_RESOLVED:
+				folderRef = value;
+				break;
+			case TESTCASE_CREATED:
+				testcaseRef = value;
+				break;
+			case STEP_CREATED:
+				int separatorIndex = value.indexOf('=');
+				createdSteps.put(Integer.valueOf(value.substring(0, separatorIndex)), value.substring(separatorIndex + 1));
+				break;
+			case STEPS_CREATED:
+				stepsCreated = true;
+				break;
+			case ATTACHMENT_UPLOADED:
+				int attachmentSeparatorIndex = value.indexOf('=');
+				uploadedAttachments.put(value.substring(0, attachmentSeparatorIndex), value.substring(attachmentSeparatorIndex + 1));
+				break;
+			case ATTACHMENTS_UPLOADED:
+				attachmentsUploaded = true;
+				break;
+			case COMPLETED:
+				completed = true;
+				break;
+			}
+		}
+
+		// Journal records which rebuild this progress. A completed testcase is kept as a single record with its Rally testcase reference
+
+		synchronized List<String> getRecords() {
+			List<String> records = new ArrayList<String>();
+			if (completed) {
+				records.add(Stage.TESTCASE_CREATED.name() + SEPARATOR + testcaseRef);
+				records.add(Stage.COMPLETED.name() + SEPARATOR);
+				return records;
+			}
+			if (details != null) {
+				records.add(Stage.DETAILS_FETCHED.name() + SEPARATOR + details);
+			}
+			if (folderRef != null) {
+				records.add(Stage.FOLDER_RESOLVED.name() + SEPARATOR + folderRef);
+			}
+			if (testcaseRef != null) {
+				records.add(Stage.TESTCASE_CREATED.name() + SEPARATOR + testcaseRef);
+			}
+			for (Map.Entry<Integer, String> step : createdSteps.entrySet()) {
+				records.add(Stage.STEP_CREATED.name() + SEPARATOR + step.getKey() + "=" + step.getValue());
+			}
+			if (stepsCreated) {
+				records.add(Stage.STEPS_CREATED.name() + SEPARATOR);
+			}
+			for (Map.Entry<String, String> attachment : uploadedAttachments.entrySet()) {
+				records.add(Stage.ATTACHMENT_UPLOADED.name() + SEPARATOR + attachment.getKey() + "=" + attachment.getValue());
+			}
+			if (attachmentsUploaded) {
+				records.add(Stage.ATTACHMENTS_UPLOADED.name() + SEPARATOR);
+			}
+			return records;
+		}
+
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.optum.coe.automation.rally;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class has the two logging channels of a high volume run, so that the testcase payloads are not written to the main log.
+ * 1. Payload channel (logger com.optum.coe.automation.rally.payload) - Jira and Rally bodies at DEBUG. Only one of every LOG_PAYLOAD_SAMPLE_RATE
+ *    payloads is logged and the body is built only when it is logged
+ * 2. Summary channel (logger com.optum.coe.automation.rally.summary) - one key=value line per migrated or failed testcase at INFO
+ * The channels are routed to their own files by log4j2-production.xml */
+
+public final class MigrationLog {
+
+	private static final Logger payloadLogger = LogManager.getLogger("com.optum.coe.automation.rally.payload");
+	private static final Logger summaryLogger = LogManager.getLogger("com.optum.coe.automation.rally.summary");
+
+	private static final int payloadSampleRate = Math.max(1, ConfigLoader.getIntConfigValue("LOG_PAYLOAD_SAMPLE_RATE", 100));
+	private static final AtomicLong payloadCount = new AtomicLong();
+
+	private MigrationLog() {
+	}
+
+	// Log the payload of the given type and key when the payload channel is at DEBUG and the payload is sampled
+
+	public static void logPayload(String type, String key, Supplier<String> payload) {
+
+		if (payloadLogger.isDebugEnabled() && payloadCount.getAndIncrement() % payloadSampleRate == 0) {
+			payloadLogger.debug("{} for the key {}: {}", type, key, payload.get());
+		}
+
+	}
+
+	/* Log the summary line of one testcase, for example
+	 * case=MD-T1 result=MIGRATED rallyTestcase=/testcase/123 folder=/Billing/Claims steps=5 stage=steps durationMs=840 */
+
+	public static void logCaseSummary(String key, String result, String rallyTestcaseRef, String folder, int steps, String stage, long durationMillis) {
+
+		summaryLogger.info("case={} result={} rallyTestcase={} folder={} steps={} stage={} durationMs={}", key, result, rallyTestcaseRef, folder, steps,
+				stage, durationMillis);
+
+	}
+
+}
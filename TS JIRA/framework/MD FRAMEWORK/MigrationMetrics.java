@@ -0,0 +1,472 @@
+package com.optum.coe.automation.rally;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class collects the metrics of the migration run with low overhead counters, so that the bottleneck of a long run can be found.
+ * 1. Request count, error count, retry count and latency histogram of each Jira and Rally endpoint. The calls are recorded by ApiCallExecutor
+ * 2. Requests in flight for each server
+ * 3. Migrated testcases, created test steps and uploaded attachments, with the rate per second
+ * 4. Test folder cache hit ratio
+ * 5. Queue depths, which are registered as gauges by the pipeline stages and the worker pool
+ * The metrics are exposed through JMX, logged every METRICS_REPORT_SECONDS and logged as the end of run report when the metrics are closed */
+
+public class MigrationMetrics implements MigrationMetricsMBean {
+
+	// Logger Initialization for MigrationMetrics Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String OBJECT_NAME = "com.optum.coe.automation.rally:type=MigrationMetrics";
+
+	private static MigrationMetrics instance;
+
+	private final long startNanos = System.nanoTime();
+	private final ConcurrentHashMap<String, EndpointStats> endpoints = new ConcurrentHashMap<String, EndpointStats>();
+	private final ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<String, AtomicInteger>();
+	private final ConcurrentHashMap<String, IntSupplier> gauges = new ConcurrentHashMap<String, IntSupplier>();
+	private final LongAdder testcasesMigrated = new LongAdder();
+	private final LongAdder testcasesFailed = new LongAdder();
+	private final LongAdder testStepsCreated = new LongAdder();
+	private final LongAdder attachmentsUploaded = new LongAdder();
+	private final LongAdder folderCacheHits = new LongAdder();
+	private final LongAdder folderCacheMisses = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+	private final int reportSeconds;
+	private ScheduledExecutorService reporter;
+	private ObjectName objectName;
+	private long lastReportNanos = startNanos;
+	private long lastTestcasesMigrated;
+	private long lastTestStepsCreated;
+	private long lastAttachmentsUploaded;
+
+	/* A Constructor loads the value from .properties file.
+	 * METRICS_REPORT_SECONDS - how often the metrics summary is logged, 0 means only the end of run report
+	 * METRICS_JMX_ENABLED - register the metrics as an MBean */
+
+	MigrationMetrics() {
+
+		reportSeconds = Math.max(0, ConfigLoader.getIntConfigValue("METRICS_REPORT_SECONDS", 60));
+		if (ConfigLoader.getBooleanConfigValue("METRICS_JMX_ENABLED", true)) {
+			try {
+				MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+				objectName = new ObjectName(OBJECT_NAME);
+				if (!mBeanServer.isRegistered(objectName)) {
+					mBeanServer.registerMBean(this, objectName);
+				}
+			} catch (JMException e) {
+				logger.error("Migration metrics are not registered in JMX", e);
+				objectName = null;
+			}
+		}
+		if (reportSeconds > 0) {
+			reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "metrics-reporter");
+				thread.setDaemon(true);
+				return thread;
+			});
+			reporter.scheduleAtFixedRate(this::logSummary, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+		}
+
+	}
+
+	// Get the process-wide metrics. The metrics are started on the first use
+
+	public static synchronized MigrationMetrics getInstance() {
+
+		if (instance == null) {
+			instance = new MigrationMetrics();
+		}
+		return instance;
+
+	}
+
+	// A call to the server is started. It is counted as in flight until it is recorded
+
+	public void callStarted(String serverName) {
+
+		inFlight.computeIfAbsent(serverName, s -> new AtomicInteger()).incrementAndGet();
+
+	}
+
+	// Record a completed call of the endpoint, successful or failed. The call is no longer in flight
+
+	public void recordCall(String serverName, String endpoint, long latencyNanos, boolean failed) {
+
+		AtomicInteger serverInFlight = inFlight.get(serverName);
+		if (serverInFlight != null) {
+			serverInFlight.decrementAndGet();
+		}
+		EndpointStats stats = getEndpointStats(serverName, endpoint);
+		stats.count.increment();
+		if (failed) {
+			stats.errors.increment();
+		}
+		stats.latency.record(latencyNanos);
+
+	}
+
+	public void recordRetry(String serverName, String endpoint) {
+
+		retries.increment();
+		getEndpointStats(serverName, endpoint).retries.increment();
+
+	}
+
+	public void recordTestcaseMigrated() {
+		testcasesMigrated.increment();
+	}
+
+	public void recordTestcaseFailed() {
+		testcasesFailed.increment();
+	}
+
+	public void recordTestStepCreated() {
+		testStepsCreated.increment();
+	}
+
+	public void recordAttachmentUploaded() {
+		attachmentsUploaded.increment();
+	}
+
+	public void recordFolderCacheLookup(boolean hit) {
+
+		if (hit) {
+			folderCacheHits.increment();
+		} else {
+			folderCacheMisses.increment();
+		}
+
+	}
+
+	// Register a queue depth or a busy worker count. It is shown in the reports until it is unregistered. The gauges of a project are named with the project key
+
+	public void registerGauge(String name, IntSupplier gauge) {
+
+		gauges.put(getGaugeName(name), gauge);
+
+	}
+
+	public void unregisterGauge(String name) {
+
+		gauges.remove(getGaugeName(name));
+
+	}
+
+	private static String getGaugeName(String name) {
+
+		ProjectScheduler.Project project = ProjectScheduler.getCurrentProject();
+		return project == null ? name : project.getName() + " " + name;
+
+	}
+
+	@Override
+	public long getTestcasesMigrated() {
+		return testcasesMigrated.sum();
+	}
+
+	@Override
+	public long getTestcasesFailed() {
+		return testcasesFailed.sum();
+	}
+
+	@Override
+	public long getTestStepsCreated() {
+		return testStepsCreated.sum();
+	}
+
+	@Override
+	public long getAttachmentsUploaded() {
+		return attachmentsUploaded.sum();
+	}
+
+	@Override
+	public double getTestcasesPerSecond() {
+		return getRate(testcasesMigrated.sum(), System.nanoTime() - startNanos);
+	}
+
+	@Override
+	public double getTestStepsPerSecond() {
+		return getRate(testStepsCreated.sum(), System.nanoTime() - startNanos);
+	}
+
+	@Override
+	public double getAttachmentsPerSecond() {
+		return getRate(attachmentsUploaded.sum(), System.nanoTime() - startNanos);
+	}
+
+	@Override
+	public double getFolderCacheHitRatio() {
+
+		long hits = folderCacheHits.sum();
+		long lookups = hits + folderCacheMisses.sum();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+
+	}
+
+	@Override
+	public long getRetryCount() {
+		return retries.sum();
+	}
+
+	@Override
+	public int getJiraRequestsInFlight() {
+		return getInFlight(ApiCallExecutor.JIRA);
+	}
+
+	@Override
+	public int getRallyRequestsInFlight() {
+		return getInFlight(ApiCallExecutor.RALLY);
+	}
+
+	@Override
+	public String[] getQueueDepths() {
+
+		List<String> queueDepths = new ArrayList<String>();
+		for (Map.Entry<String, IntSupplier> gauge : new TreeMap<String, IntSupplier>(gauges).entrySet()) {
+			queueDepths.add(gauge.getKey() + " " + gauge.getValue().getAsInt());
+		}
+		return queueDepths.toArray(new String[0]);
+
+	}
+
+	@Override
+	public String[] getEndpointStatistics() {
+
+		List<String> statistics = new ArrayList<String>();
+		for (Map.Entry<String, EndpointStats> endpoint : new TreeMap<String, EndpointStats>(endpoints).entrySet()) {
+			EndpointStats stats = endpoint.getValue();
+			LatencyHistogram latency = stats.latency;
+			statistics.add(endpoint.getKey() + " - requests " + stats.count.sum() + ", errors " + stats.errors.sum() + ", retries " + stats.retries.sum()
+					+ ", latency ms p50 " + latency.getPercentileMillis(0.5) + " p90 " + latency.getPercentileMillis(0.9) + " p99 "
+					+ latency.getPercentileMillis(0.99) + " max " + latency.getMaxMillis());
+		}
+		return statistics.toArray(new String[0]);
+
+	}
+
+	// Full report of the run so far: totals with the average rates, folder cache, in flight requests, queue depths and endpoint statistics
+
+	@Override
+	public String getReport() {
+
+		long elapsedNanos = System.nanoTime() - startNanos;
+		StringBuilder report = new StringBuilder("Migration metrics after " + TimeUnit.NANOSECONDS.toSeconds(elapsedNanos) + " seconds");
+		report.append(System.lineSeparator()).append("Testcases migrated ").append(getTestcasesMigrated()).append(" (").append(format(getTestcasesPerSecond()))
+				.append("/s), failed ").append(getTestcasesFailed()).append(", test steps ").append(getTestStepsCreated()).append(" (")
+				.append(format(getTestStepsPerSecond())).append("/s), attachments ").append(getAttachmentsUploaded()).append(" (")
+				.append(format(getAttachmentsPerSecond())).append("/s)");
+		report.append(System.lineSeparator()).append("Folder cache hit ratio ").append(format(getFolderCacheHitRatio())).append(", retries ")
+				.append(getRetryCount()).append(", in flight Jira ").append(getJiraRequestsInFlight()).append(" Rally ").append(getRallyRequestsInFlight());
+		for (String queueDepth : getQueueDepths()) {
+			report.append(System.lineSeparator()).append("Queue ").append(queueDepth);
+		}
+		for (String endpoint : getEndpointStatistics()) {
+			report.append(System.lineSeparator()).append(endpoint);
+		}
+		return report.toString();
+
+	}
+
+	// Stop the periodic summary, log the end of run report and remove the MBean
+
+	public synchronized void close() {
+
+		if (reporter != null) {
+			reporter.shutdownNow();
+			reporter = null;
+		}
+		logger.info(getReport());
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				logger.error("Migration metrics are not removed from JMX", e);
+			}
+			objectName = null;
+		}
+
+	}
+
+	// Log the rates since the last summary along with the queue depths and the requests in flight
+
+	private synchronized void logSummary() {
+
+		long now = System.nanoTime();
+		long intervalNanos = now - lastReportNanos;
+		long migrated = testcasesMigrated.sum();
+		long steps = testStepsCreated.sum();
+		long attachments = attachmentsUploaded.sum();
+		logger.info("Migration metrics: testcases {} ({}/s), test steps {} ({}/s), attachments {} ({}/s), failed {}, folder cache hit ratio {}, retries {}, "
+				+ "in flight Jira {} Rally {}, queues {}", migrated, format(getRate(migrated - lastTestcasesMigrated, intervalNanos)), steps,
+				format(getRate(steps - lastTestStepsCreated, intervalNanos)), attachments, format(getRate(attachments - lastAttachmentsUploaded, intervalNanos)),
+				getTestcasesFailed(), format(getFolderCacheHitRatio()), getRetryCount(), getJiraRequestsInFlight(), getRallyRequestsInFlight(),
+				String.join(", ", getQueueDepths()));
+		lastReportNanos = now;
+		lastTestcasesMigrated = migrated;
+		lastTestStepsCreated = steps;
+		lastAttachmentsUploaded = attachments;
+
+	}
+
+	/* Latency percentile in milliseconds of the endpoints of the server with the given method whose path ends with the given path, for example
+	 * "GET" and "/testfolder". The requests of all the matching endpoints are counted together. Returns -1 when no request is recorded */
+
+	public long getLatencyMillis(String serverName, String method, String pathSuffix, double percentile) {
+
+		LatencyHistogram latency = new LatencyHistogram();
+		String prefix = serverName + " " + method + " ";
+		for (Map.Entry<String, EndpointStats> endpoint : endpoints.entrySet()) {
+			// The Rally rest api adds .js to the type of a query and a create
+			String name = endpoint.getKey().endsWith(".js") ? endpoint.getKey().substring(0, endpoint.getKey().length() - 3) : endpoint.getKey();
+			if (name.startsWith(prefix) && name.endsWith(pathSuffix)) {
+				latency.add(endpoint.getValue().latency);
+			}
+		}
+		return latency.total.sum() == 0 ? -1 : latency.getPercentileMillis(percentile);
+
+	}
+
+	private EndpointStats getEndpointStats(String serverName, String endpoint) {
+
+		return endpoints.computeIfAbsent(serverName + " " + endpoint, e -> new EndpointStats());
+
+	}
+
+	private int getInFlight(String serverName) {
+
+		AtomicInteger serverInFlight = inFlight.get(serverName);
+		return serverInFlight == null ? 0 : serverInFlight.get();
+
+	}
+
+	private static double getRate(long count, long nanos) {
+
+		return nanos <= 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+
+	}
+
+	private static String format(double value) {
+
+		return String.format("%.2f", value);
+
+	}
+
+	// Counters of one endpoint
+
+	private static class EndpointStats {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+	}
+
+	/* Latency histogram with 4 buckets per power of two microseconds, so a percentile is within 25% of the exact latency.
+	 * Recording is one atomic increment and no sample is kept */
+
+	static class LatencyHistogram {
+
+		private static final int SUB_BUCKET_BITS = 2;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+		private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final LongAdder total = new LongAdder();
+		private volatile long maxMicros;
+
+		void record(long latencyNanos) {
+
+			long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+			counts.incrementAndGet(getBucket(micros));
+			total.increment();
+			if (micros > maxMicros) {
+				synchronized (this) {
+					maxMicros = Math.max(maxMicros, micros);
+				}
+			}
+
+		}
+
+		// Upper bound of the bucket which holds the given percentile (0.5 for the median), in milliseconds
+
+		long getPercentileMillis(double percentile) {
+
+			long count = total.sum();
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(percentile * count);
+			long seen = 0;
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				seen += counts.get(bucket);
+				if (seen >= rank) {
+					return TimeUnit.MICROSECONDS.toMillis(Math.min(getUpperBound(bucket), maxMicros));
+				}
+			}
+			return getMaxMillis();
+
+		}
+
+		long getMaxMillis() {
+			return TimeUnit.MICROSECONDS.toMillis(maxMicros);
+		}
+
+		// Add the recorded latencies of the other histogram to this histogram
+
+		synchronized void add(LatencyHistogram other) {
+
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				counts.addAndGet(bucket, other.counts.get(bucket));
+			}
+			total.add(other.total.sum());
+			maxMicros = Math.max(maxMicros, other.maxMicros);
+
+		}
+
+		// Values below SUB_BUCKETS have their own bucket. Larger values are bucketed by the highest bit and the next SUB_BUCKET_BITS bits
+
+		private static int getBucket(long micros) {
+
+			if (micros < SUB_BUCKETS) {
+				return (int) micros;
+			}
+			int highestBit = 63 - Long.numberOfLeadingZeros(micros);
+			int subBucket = (int) (micros >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return Math.min(BUCKETS - 1, (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket);
+
+		}
+
+		private static long getUpperBound(int bucket) {
+
+			if (bucket < SUB_BUCKETS) {
+				return bucket;
+			}
+			int highestBit = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+			long subBucket = bucket % SUB_BUCKETS;
+			long lowerBound = (1L << highestBit) + (subBucket << (highestBit - SUB_BUCKET_BITS));
+			return lowerBound + (1L << (highestBit - SUB_BUCKET_BITS)) - 1;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.optum.coe.automation.rally;
+
+// JMX view of MigrationMetrics. The attributes are shown under com.optum.coe.automation.rally:type=MigrationMetrics in JConsole or VisualVM
+
+public interface MigrationMetricsMBean {
+
+	long getTestcasesMigrated();
+
+	long getTestcasesFailed();
+
+	long getTestStepsCreated();
+
+	long getAttachmentsUploaded();
+
+	double getTestcasesPerSecond();
+
+	double getTestStepsPerSecond();
+
+	double getAttachmentsPerSecond();
+
+	double getFolderCacheHitRatio();
+
+	long getRetryCount();
+
+	int getJiraRequestsInFlight();
+
+	int getRallyRequestsInFlight();
+
+	String[] getQueueDepths();
+
+	String[] getEndpointStatistics();
+
+	String getReport();
+
+}
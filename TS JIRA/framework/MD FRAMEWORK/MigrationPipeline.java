@@ -0,0 +1,263 @@
+package com.optum.coe.automation.rally;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class migrates the Jira testcases through a staged pipeline. Each stage has its own worker threads and the stages are connected by bounded queues.
+ * key discovery -> detail fetch -> Jira to Rally transform -> folder resolve -> testcase create -> step / attachment create
+ * 1. A stage takes the next testcase from its queue as soon as it is free, so Jira calls, transformation and Rally calls run at the same time for different testcases
+ * 2. A stage waits when the queue of the next stage is full. The wait reaches back to the key discovery, so the number of testcases in memory is bounded
+ *    by the queue sizes whatever the size of the project is
+ * 3. A failed testcase is logged and added to the failed list; the remaining testcases are still migrated
+ * 4. The queue depth and the throughput of each stage are logged every PIPELINE_REPORT_SECONDS. The queue depths are also shown by MigrationMetrics */
+
+public class MigrationPipeline {
+
+	// Logger Initialization for MigrationPipeline Class
+	private static final Logger logger = LogManager.getLogger();
+
+	// Result of a stage for one testcase. NEXT passes the testcase to the next stage, DONE completes the testcase and FAILED adds it to the failed list
+	enum Outcome {
+		NEXT, DONE, FAILED
+	}
+
+	// Work of a stage for one testcase
+
+	interface StageTask {
+		Outcome process(MigrationEngine.TestcaseContext testcase) throws Exception;
+	}
+
+	private final MigrationEngine engine;
+	private final List<Stage> stages = new ArrayList<Stage>();
+	private final AtomicLong discoveredCount = new AtomicLong();
+	private final int reportSeconds;
+	private long lastDiscoveredCount;
+
+	/* A Constructor loads the value from .properties file.
+	 * PIPELINE_QUEUE_CAPACITY - how many testcases can wait in front of each stage
+	 * PIPELINE_<STAGE>_WORKERS - how many testcases each stage processes at the same time
+	 * PIPELINE_REPORT_SECONDS - how often the queue depth and throughput are logged */
+
+	public MigrationPipeline(MigrationEngine engine, int workerCount) {
+
+		this.engine = engine;
+		int queueCapacity = Math.max(1, ConfigLoader.getIntConfigValue("PIPELINE_QUEUE_CAPACITY", 100));
+		reportSeconds = Math.max(1, ConfigLoader.getIntConfigValue("PIPELINE_REPORT_SECONDS", 30));
+
+		addStage("fetch", ConfigLoader.getIntConfigValue("PIPELINE_FETCH_WORKERS", workerCount), queueCapacity,
+				testcase -> engine.isAlreadyMigrated(testcase) ? Outcome.DONE : next(engine.fetchDetails(testcase)));
+		addStage("transform", ConfigLoader.getIntConfigValue("PIPELINE_TRANSFORM_WORKERS", 2), queueCapacity,
+				testcase -> next(engine.transform(testcase)));
+		addStage("folder", ConfigLoader.getIntConfigValue("PIPELINE_FOLDER_WORKERS", 2), queueCapacity,
+				testcase -> next(engine.resolveFolder(testcase)));
+		addStage("create", ConfigLoader.getIntConfigValue("PIPELINE_CREATE_WORKERS", workerCount), queueCapacity,
+				testcase -> next(engine.createTestcase(testcase)));
+		addStage("steps", ConfigLoader.getIntConfigValue("PIPELINE_STEP_WORKERS", workerCount), queueCapacity,
+				testcase -> engine.createStepsAndAttachments(testcase) ? Outcome.DONE : Outcome.FAILED);
+
+	}
+
+	/* Run the pipeline for all the items of the iterator. The iterator is read on the calling thread as the key discovery stage.
+	 * Returns when all the testcases have left the pipeline. Migrated testcases are counted and failed testcase keys are added to the given list */
+
+	public <T> void run(Iterator<T> items, Function<T, MigrationEngine.TestcaseContext> contextFunction, AtomicInteger migratedCount, List<String> failedKeys) {
+
+		MigrationMetrics metrics = MigrationMetrics.getInstance();
+		for (Stage stage : stages) {
+			stage.start(migratedCount, failedKeys);
+			metrics.registerGauge("pipeline " + stage.name, stage.queue::size);
+		}
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "pipeline-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(this::report, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+
+		try {
+			while (items.hasNext()) {
+				stages.get(0).put(contextFunction.apply(items.next()));
+				discoveredCount.incrementAndGet();
+			}
+		} catch (InterruptedException e) {
+			logger.error("Interrupted while discovering the Jira testcases. The discovered testcases are still migrated", e);
+			Thread.currentThread().interrupt();
+		} finally {
+			// A stage is closed only when the stage in front of it is completed, so no testcase is put to a closed stage
+			for (Stage stage : stages) {
+				stage.close();
+				stage.await();
+			}
+			reporter.shutdownNow();
+			report();
+			for (Stage stage : stages) {
+				metrics.unregisterGauge("pipeline " + stage.name);
+			}
+		}
+
+	}
+
+	// Current queue depth and throughput of each stage
+
+	public String getStatus() {
+
+		StringBuilder status = new StringBuilder("discovered ").append(discoveredCount.get());
+		for (Stage stage : stages) {
+			status.append(" | ").append(stage.name).append(" queue ").append(stage.queue.size()).append('/').append(stage.capacity)
+					.append(", processed ").append(stage.processedCount.get()).append(", failed ").append(stage.failedCount.get());
+		}
+		return status.toString();
+
+	}
+
+	private static Outcome next(boolean status) {
+
+		return status ? Outcome.NEXT : Outcome.FAILED;
+
+	}
+
+	private void addStage(String name, int workers, int capacity, StageTask task) {
+
+		Stage stage = new Stage(engine, name, Math.max(1, workers), capacity, task);
+		if (!stages.isEmpty()) {
+			stages.get(stages.size() - 1).next = stage;
+		}
+		stages.add(stage);
+
+	}
+
+	// Log the queue depth of each stage and the throughput since the last report
+
+	private synchronized void report() {
+
+		StringBuilder throughput = new StringBuilder("discovered ").append(discoveredCount.get() - lastDiscoveredCount);
+		lastDiscoveredCount = discoveredCount.get();
+		for (Stage stage : stages) {
+			long processed = stage.processedCount.get();
+			throughput.append(" | ").append(stage.name).append(' ').append(processed - stage.lastProcessedCount);
+			stage.lastProcessedCount = processed;
+		}
+		logger.info("Pipeline status: {}", getStatus());
+		logger.info("Pipeline throughput in the last {} seconds: {}", reportSeconds, throughput);
+
+	}
+
+	// One stage of the pipeline with its input queue and worker threads
+
+	private static class Stage {
+
+		private final String name;
+		private final int workers;
+		private final int capacity;
+		private final BlockingQueue<MigrationEngine.TestcaseContext> queue;
+		private final StageTask task;
+		private final MigrationEngine engine;
+		private final List<Thread> threads = new ArrayList<Thread>();
+		private final AtomicLong processedCount = new AtomicLong();
+		private final AtomicLong failedCount = new AtomicLong();
+		private Stage next;
+		private long lastProcessedCount;
+		private volatile boolean closed;
+
+		Stage(MigrationEngine engine, String name, int workers, int capacity, StageTask task) {
+			this.engine = engine;
+			this.name = name;
+			this.workers = workers;
+			this.capacity = capacity;
+			this.task = task;
+			queue = new ArrayBlockingQueue<MigrationEngine.TestcaseContext>(capacity);
+		}
+
+		void start(AtomicInteger migratedCount, List<String> failedKeys) {
+			for (int i = 1; i <= workers; i++) {
+				Thread thread = new Thread(() -> work(migratedCount, failedKeys), "pipeline-" + name + "-" + i);
+				thread.setDaemon(true);
+				threads.add(thread);
+				thread.start();
+			}
+			logger.info("Pipeline stage {} is started with {} workers", name, workers);
+		}
+
+		// Put the testcase to the stage queue. The caller waits when the queue is full
+		void put(MigrationEngine.TestcaseContext testcase) throws InterruptedException {
+			queue.put(testcase);
+		}
+
+		// No more testcases are put to this stage. The workers stop when the queue is empty
+		void close() {
+			closed = true;
+		}
+
+		void await() {
+			for (Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		private void work(AtomicInteger migratedCount, List<String> failedKeys) {
+			while (true) {
+				MigrationEngine.TestcaseContext testcase;
+				try {
+					testcase = queue.poll(100, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (testcase == null) {
+					if (closed) {
+						return;
+					}
+					continue;
+				}
+
+				Outcome outcome;
+				try {
+					outcome = task.process(testcase);
+				} catch (Exception e) {
+					logger.error("Unexpected error in the {} stage while migrating the Jira testcase {}", name, testcase.key, e);
+					outcome = Outcome.FAILED;
+				}
+				processedCount.incrementAndGet();
+
+				if (outcome == Outcome.NEXT) {
+					try {
+						next.put(testcase);
+						continue;
+					} catch (InterruptedException e) {
+						logger.error("Interrupted while passing the Jira testcase {} to the {} stage", testcase.key, next.name);
+						failedKeys.add(testcase.key);
+						MigrationMetrics.getInstance().recordTestcaseFailed();
+						engine.logCaseSummary(testcase, false);
+						return;
+					}
+				}
+				if (outcome == Outcome.DONE) {
+					migratedCount.incrementAndGet();
+				} else {
+					failedCount.incrementAndGet();
+					failedKeys.add(testcase.key);
+					MigrationMetrics.getInstance().recordTestcaseFailed();
+				}
+				engine.logCaseSummary(testcase, outcome == Outcome.DONE);
+			}
+		}
+
+	}
+
+}
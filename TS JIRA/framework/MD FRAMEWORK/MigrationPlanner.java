@@ -0,0 +1,482 @@
+package com.optum.coe.automation.rally;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.rallydev.rest.RallyRestApi;
+
+/* This Class plans a migration without writing anything to Jira or Rally (dry run), and executes a saved plan.
+ * 1. The non migrated Jira testcases are read with the same read paths as the migration: the key search and the testcase details,
+ *    or the bulk search when JIRA_BULK_DETAILS_ENABLED is true, and the attachment list when ATTACHMENT_MIGRATION_ENABLED is true
+ * 2. The Rally test folder tree and tags are read once. The folder paths and tags which are not in Rally are the folders and tags to create
+ * 3. The request count of each operation of the real run is projected. The latency of an operation is the median measured by MigrationMetrics
+ *    during the dry run, or PLAN_DEFAULT_LATENCY_MS for a write which is not measured. The upload time of the attachments is added with PLAN_UPLOAD_BYTES_PER_SECOND
+ * 4. The duration of each server is the larger of its request time divided by its concurrency and the time of its most rate limited endpoint.
+ *    The critical path is the longest chain of dependent requests: the deepest new folder path and then the largest testcase with its steps and attachments
+ * 5. The plan is written to MIGRATION_PLAN_FILE. Each line is "folder<TAB>path", "tag<TAB>name",
+ *    "case<TAB>key<TAB>folder<TAB>steps<TAB>attachments<TAB>attachmentBytes" or "estimate<TAB>name<TAB>value"
+ * The plan is executed by MIGRATION_PLAN_EXECUTE_ENABLED: the planned folders and tags are created first and then the planned testcases are migrated.
+ * The testcases which are migrated after the plan is made are resumed from the migration journal */
+
+public class MigrationPlanner {
+
+	// Logger Initialization for MigrationPlanner Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String SEPARATOR = "\t";
+	private static final String FOLDER_RECORD = "folder";
+	private static final String TAG_RECORD = "tag";
+	private static final String CASE_RECORD = "case";
+	private static final String ESTIMATE_RECORD = "estimate";
+
+	private final JiraOperation jiraOperation;
+	private final RallyRestApi restApi;
+	private final String projectRef;
+	private final int workerCount;
+	private final boolean bulkDetailsEnabled;
+	private final boolean attachmentsEnabled;
+	private final Map<Integer, PlannedTestcase> testcases = new ConcurrentSkipListMap<Integer, PlannedTestcase>();
+	private final Set<String> folderPaths = ConcurrentHashMap.newKeySet();
+	private final Map<String, String> tagNames = new ConcurrentHashMap<String, String>();
+	private final List<String> failedKeys = Collections.synchronizedList(new ArrayList<String>());
+
+	/* A Constructor loads the value from .properties file.
+	 * MIGRATION_WORKER_COUNT - how many testcases are read from Jira at the same time during the dry run, and the concurrency of the projected run */
+
+	public MigrationPlanner(JiraOperation jiraOperation, RallyRestApi restApi) {
+
+		this.jiraOperation = jiraOperation;
+		this.restApi = restApi;
+		projectRef = ConfigLoader.getConfigValue("RALLY_PROJECT_REF");
+		workerCount = Math.max(1, ConfigLoader.getIntConfigValue("MIGRATION_WORKER_COUNT", 4));
+		bulkDetailsEnabled = ConfigLoader.getBooleanConfigValue("JIRA_BULK_DETAILS_ENABLED", false);
+		attachmentsEnabled = ConfigLoader.getBooleanConfigValue("ATTACHMENT_MIGRATION_ENABLED", false);
+
+	}
+
+	/* A method which makes the migration plan and writes it to the plan file.
+	 * 1. Read the non migrated Jira testcases with their details and attachment lists
+	 * 2. Find the folders and tags which are not in Rally
+	 * 3. Project the request counts and the duration of the migration
+	 * Returns the estimates of the plan */
+
+	public Map<String, String> plan(Path planFile) throws IOException {
+
+		long startMillis = System.currentTimeMillis();
+		TestFolderTree folderTree = TestFolderTree.load(restApi, projectRef);
+		readJiraTestcases();
+
+		Set<String> newFolders = new TreeSet<String>();
+		for (String folderPath : folderPaths) {
+			if (folderTree.getFolderRef(folderPath) == null) {
+				newFolders.add(folderPath);
+			}
+		}
+		Map<String, String> newTags = new TreeMap<String, String>();
+		RallyTagIndex tagIndex = RallyTagIndex.getInstance();
+		for (Map.Entry<String, String> tag : tagNames.entrySet()) {
+			if (!tagIndex.hasTag(tag.getValue())) {
+				newTags.put(tag.getKey(), tag.getValue());
+			}
+		}
+
+		Map<String, String> estimates = estimate(newFolders, newTags.size());
+		write(planFile, newFolders, newTags.values(), estimates);
+
+		StringBuilder summary = new StringBuilder("Migration plan is written to " + planFile + " in " + (System.currentTimeMillis() - startMillis) + " ms");
+		for (Map.Entry<String, String> estimate : estimates.entrySet()) {
+			summary.append(System.lineSeparator()).append(estimate.getKey()).append(" - ").append(estimate.getValue());
+		}
+		logger.info(summary);
+		if (!failedKeys.isEmpty()) {
+			logger.error("Jira testcases which are not read and not in the plan: {}", failedKeys);
+		}
+		return estimates;
+
+	}
+
+	/* A method which executes the plan file: create the planned folders (parents first) and tags, then migrate the planned testcases with MigrationEngine.
+	 * Returns the failed testcase keys */
+
+	public static List<String> execute(Path planFile, JiraOperation jiraOperation) throws IOException {
+
+		List<String> testcaseKeys = new ArrayList<String>();
+		List<String> folders = new ArrayList<String>();
+		List<String> tags = new ArrayList<String>();
+		for (String line : Files.readAllLines(planFile, StandardCharsets.UTF_8)) {
+			String[] values = line.split(SEPARATOR);
+			if (values.length < 2) {
+				continue;
+			}
+			if (FOLDER_RECORD.equals(values[0])) {
+				folders.add(values[1]);
+			} else if (TAG_RECORD.equals(values[0])) {
+				tags.add(values[1]);
+			} else if (CASE_RECORD.equals(values[0])) {
+				testcaseKeys.add(values[1]);
+			}
+		}
+		logger.info("Executing the migration plan {}: {} folders, {} tags and {} testcases", planFile, folders.size(), tags.size(), testcaseKeys.size());
+
+		RallyRestApi restApi = ConnectionManager.getRallyRestApi();
+		String projectRef = ConfigLoader.getConfigValue("RALLY_PROJECT_REF");
+		for (String folder : folders) {
+			if (Utils.createTestFolder(folder.split("/"), projectRef, restApi) == null) {
+				logger.error("Planned folder {} is not created. It is created again by the testcases of the folder", folder);
+			}
+		}
+		for (String tag : tags) {
+			if (RallyTagIndex.getInstance().getOrCreateTag(tag) == null) {
+				logger.error("Planned tag {} is not created. It is created again by the testcases of the tag", tag);
+			}
+		}
+		try (MigrationEngine migrationEngine = new MigrationEngine(jiraOperation)) {
+			return migrationEngine.migrate(testcaseKeys);
+		}
+
+	}
+
+	// Read the non migrated Jira testcases with the worker pool. The testcases keep the order of the Jira search in the plan
+
+	private void readJiraTestcases() {
+
+		Semaphore workerPermits = new Semaphore(workerCount);
+		ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+		int index = 0;
+		try {
+			if (bulkDetailsEnabled) {
+				try (JiraSearchIterator<JsonObject> jiraTestcases = jiraOperation.getJiraNonMigratedTestcaseIterator()) {
+					while (jiraTestcases.hasNext()) {
+						JsonObject searchTestcaseJson = jiraTestcases.next();
+						submit(executor, workerPermits, index++, searchTestcaseJson.get("key").getAsString(), searchTestcaseJson);
+					}
+				}
+			} else {
+				try (JiraSearchIterator<String> testcaseKeys = jiraOperation.getJiraNonMigratedTestcaseKeyIterator()) {
+					while (testcaseKeys.hasNext()) {
+						submit(executor, workerPermits, index++, testcaseKeys.next(), null);
+					}
+				}
+			}
+		} finally {
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+					logger.info("Waiting for the Jira testcases to be read for the plan");
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+	private void submit(ExecutorService executor, Semaphore workerPermits, int index, String key, JsonObject searchTestcaseJson) {
+
+		workerPermits.acquireUninterruptibly();
+		executor.execute(() -> {
+			try {
+				JsonObject jiraTestcaseJson = searchTestcaseJson == null ? jiraOperation.getJiraTestCaseDetails(key)
+						: jiraOperation.completeJiraTestCaseDetails(searchTestcaseJson);
+				if (jiraTestcaseJson == null) {
+					failedKeys.add(key);
+					return;
+				}
+				testcases.put(index, planTestcase(key, jiraTestcaseJson));
+			} catch (IOException | RuntimeException e) {
+				logger.error("Jira testcase {} is not read for the plan", key, e);
+				failedKeys.add(key);
+			} finally {
+				workerPermits.release();
+			}
+		});
+
+	}
+
+	// Plan one testcase: its folder paths, tags, steps and attachments
+
+	private PlannedTestcase planTestcase(String key, JsonObject jiraTestcaseJson) throws IOException {
+
+		String folderPath = "";
+		JsonElement folder = jiraTestcaseJson.get("folder");
+		if (folder != null && !folder.isJsonNull()) {
+			// Every prefix of the path is a folder, like Utils.createTestFolder resolves them
+			for (String folderName : folder.getAsString().split("/")) {
+				if (!folderName.trim().isEmpty()) {
+					folderPath += "/" + folderName.trim();
+					folderPaths.add(folderPath);
+				}
+			}
+		}
+		for (String tagName : RallyOperation.getTagNames(jiraTestcaseJson)) {
+			tagNames.putIfAbsent(tagName.toLowerCase(Locale.ROOT), tagName);
+		}
+
+		List<JiraTestStep> steps = MigrationEngine.getSortedTestSteps(jiraTestcaseJson);
+		int attachmentCount = 0;
+		long attachmentBytes = 0;
+		if (attachmentsEnabled) {
+			List<JiraAttachment> attachments = new ArrayList<JiraAttachment>(jiraOperation.getJiraTestCaseAttachments(key));
+			for (JiraTestStep step : steps) {
+				if (step.getAttachments() != null) {
+					attachments.addAll(step.getAttachments());
+				}
+			}
+			for (JiraAttachment attachment : attachments) {
+				attachmentCount++;
+				attachmentBytes += Math.max(0, attachment.getFileSize());
+			}
+		}
+		return new PlannedTestcase(key, folderPath, steps.size(), attachmentCount, attachmentBytes);
+
+	}
+
+	/* Project the request count and duration of the real run.
+	 * PLAN_DEFAULT_LATENCY_MS - latency of a request which is not measured by the dry run, for example a create
+	 * PLAN_UPLOAD_BYTES_PER_SECOND - transfer rate of the attachment download and upload
+	 * <SERVER>_MAX_CONCURRENT_REQUESTS and <SERVER>_RATE_LIMIT_PER_SECOND - same limits as ApiCallExecutor */
+
+	private Map<String, String> estimate(Set<String> newFolders, int newTagCount) {
+
+		long defaultLatency = Math.max(1, ConfigLoader.getIntConfigValue("PLAN_DEFAULT_LATENCY_MS", 500));
+		double bytesPerSecond = Math.max(1, Double.parseDouble(ConfigLoader.getConfigValue("PLAN_UPLOAD_BYTES_PER_SECOND", "1048576")));
+		int searchPageSize = Math.max(1, ConfigLoader.getIntConfigValue("JIRA_SEARCH_PAGE_SIZE", 100));
+		int stepBatchSize = Math.max(1, ConfigLoader.getIntConfigValue("RALLY_STEP_BATCH_SIZE", 25));
+		boolean writeBackEnabled = ConfigLoader.getBooleanConfigValue("JIRA_WRITEBACK_ENABLED", true);
+
+		long stepCount = 0;
+		long stepBatchCount = 0;
+		long attachmentCount = 0;
+		long attachmentBytes = 0;
+		PlannedTestcase largestTestcase = null;
+		for (PlannedTestcase testcase : testcases.values()) {
+			stepCount += testcase.stepCount;
+			stepBatchCount += (testcase.stepCount + stepBatchSize - 1) / stepBatchSize;
+			attachmentCount += testcase.attachmentCount;
+			attachmentBytes += testcase.attachmentBytes;
+			if (largestTestcase == null || testcase.stepCount + testcase.attachmentCount > largestTestcase.stepCount + largestTestcase.attachmentCount) {
+				largestTestcase = testcase;
+			}
+		}
+		int testcaseCount = testcases.size();
+		long transferMillis = (long) (attachmentBytes * 1000 / bytesPerSecond);
+
+		List<PlannedOperation> operations = new ArrayList<PlannedOperation>();
+		PlannedOperation search = new PlannedOperation(ApiCallExecutor.JIRA, "Jira testcase search", (testcaseCount + searchPageSize - 1) / searchPageSize,
+				getLatency(ApiCallExecutor.JIRA, "GET", "/testcase/search"), defaultLatency);
+		PlannedOperation details = new PlannedOperation(ApiCallExecutor.JIRA, "Jira testcase details", bulkDetailsEnabled ? 0 : testcaseCount,
+				getLatency(ApiCallExecutor.JIRA, "GET", "/testcase/{id}"), defaultLatency);
+		PlannedOperation attachmentList = new PlannedOperation(ApiCallExecutor.JIRA, "Jira attachment list", attachmentsEnabled ? testcaseCount : 0,
+				getLatency(ApiCallExecutor.JIRA, "GET", "/attachments"), defaultLatency);
+		PlannedOperation download = new PlannedOperation(ApiCallExecutor.JIRA, "Jira attachment download", attachmentCount, -1, defaultLatency);
+		download.transferMillis = transferMillis;
+		PlannedOperation statusUpdate = new PlannedOperation(ApiCallExecutor.JIRA, "Jira migrated status update", writeBackEnabled ? testcaseCount : 0,
+				getLatency(ApiCallExecutor.JIRA, "PUT", "/testcase/{id}"), defaultLatency);
+		PlannedOperation folderQuery = new PlannedOperation(ApiCallExecutor.RALLY, "Rally folder query", newFolders.size(),
+				getLatency(ApiCallExecutor.RALLY, "GET", "/testfolder"), defaultLatency);
+		PlannedOperation folderCreate = new PlannedOperation(ApiCallExecutor.RALLY, "Rally folder create", newFolders.size(),
+				getLatency(ApiCallExecutor.RALLY, "POST", "/testfolder/create"), defaultLatency);
+		PlannedOperation tagCreate = new PlannedOperation(ApiCallExecutor.RALLY, "Rally tag create", newTagCount,
+				getLatency(ApiCallExecutor.RALLY, "POST", "/tag/create"), defaultLatency);
+		PlannedOperation testcaseCreate = new PlannedOperation(ApiCallExecutor.RALLY, "Rally testcase create", testcaseCount,
+				getLatency(ApiCallExecutor.RALLY, "POST", "/testcase/create"), defaultLatency);
+		PlannedOperation stepBatch = new PlannedOperation(ApiCallExecutor.RALLY, "Rally test step batch", stepBatchCount,
+				getLatency(ApiCallExecutor.RALLY, "POST", "/batch"), defaultLatency);
+		PlannedOperation attachmentContent = new PlannedOperation(ApiCallExecutor.RALLY, "Rally attachment content", attachmentCount,
+				getLatency(ApiCallExecutor.RALLY, "POST", "/attachmentcontent/create"), defaultLatency);
+		attachmentContent.transferMillis = transferMillis;
+		PlannedOperation attachmentCreate = new PlannedOperation(ApiCallExecutor.RALLY, "Rally attachment create", attachmentCount,
+				getLatency(ApiCallExecutor.RALLY, "POST", "/attachment/create"), defaultLatency);
+		Collections.addAll(operations, search, details, attachmentList, download, statusUpdate, folderQuery, folderCreate, tagCreate, testcaseCreate, stepBatch,
+				attachmentContent, attachmentCreate);
+
+		// Critical path: the deepest new folder is created level by level, then the largest testcase is created with its steps and its largest attachment
+		int folderDepth = 0;
+		for (String folder : newFolders) {
+			folderDepth = Math.max(folderDepth, folder.split("/").length - 1);
+		}
+		long criticalPathMillis = folderDepth * (folderQuery.latencyMillis + folderCreate.latencyMillis);
+		if (largestTestcase != null) {
+			criticalPathMillis += details.latencyMillis + testcaseCreate.latencyMillis
+					+ (largestTestcase.stepCount + stepBatchSize - 1) / stepBatchSize * stepBatch.latencyMillis;
+			if (largestTestcase.attachmentCount > 0) {
+				criticalPathMillis += attachmentList.latencyMillis + download.latencyMillis + attachmentContent.latencyMillis + attachmentCreate.latencyMillis
+						+ (long) (largestTestcase.attachmentBytes * 1000 / bytesPerSecond);
+			}
+		}
+
+		long jiraMillis = getServerMillis(ApiCallExecutor.JIRA, operations);
+		long rallyMillis = getServerMillis(ApiCallExecutor.RALLY, operations);
+		long durationMillis = Math.max(criticalPathMillis, Math.max(jiraMillis, rallyMillis));
+		String bottleneck = durationMillis == criticalPathMillis ? "critical path" : durationMillis == rallyMillis ? "Rally" : "Jira";
+
+		Map<String, String> estimates = new TreeMap<String, String>();
+		estimates.put("Testcases", String.valueOf(testcaseCount));
+		estimates.put("Test steps", String.valueOf(stepCount));
+		estimates.put("Attachments", attachmentCount + " (" + attachmentBytes + " bytes)");
+		estimates.put("Folders to create", String.valueOf(newFolders.size()));
+		estimates.put("Tags to create", String.valueOf(newTagCount));
+		estimates.put("Testcases not read", String.valueOf(failedKeys.size()));
+		long jiraRequests = 0;
+		long rallyRequests = 0;
+		for (PlannedOperation operation : operations) {
+			estimates.put("Requests " + operation.name, operation.count + " x " + operation.latencyMillis + " ms" + (operation.measured ? " (measured)" : ""));
+			if (ApiCallExecutor.JIRA.equals(operation.serverName)) {
+				jiraRequests += operation.count;
+			} else {
+				rallyRequests += operation.count;
+			}
+		}
+		estimates.put("Requests Jira total", String.valueOf(jiraRequests));
+		estimates.put("Requests Rally total", String.valueOf(rallyRequests));
+		estimates.put("Duration Jira", formatDuration(jiraMillis) + " at " + getConcurrency(ApiCallExecutor.JIRA) + " concurrent requests");
+		estimates.put("Duration Rally", formatDuration(rallyMillis) + " at " + getConcurrency(ApiCallExecutor.RALLY) + " concurrent requests");
+		estimates.put("Duration critical path", formatDuration(criticalPathMillis)
+				+ (largestTestcase == null ? "" : " (folder depth " + folderDepth + ", testcase " + largestTestcase.key + ")"));
+		estimates.put("Duration estimated", formatDuration(durationMillis) + ", limited by " + bottleneck);
+		return estimates;
+
+	}
+
+	/* Duration of the requests of the server. The requests of the server run in parallel up to its concurrency, and each endpoint
+	 * can not be faster than its rate limit. The attachment transfer time is added to the request time */
+
+	private long getServerMillis(String serverName, List<PlannedOperation> operations) {
+
+		double ratePerSecond = Double.parseDouble(ConfigLoader.getConfigValue(serverName + "_RATE_LIMIT_PER_SECOND", "0"));
+		int concurrency = getConcurrency(serverName);
+		long requestMillis = 0;
+		long rateLimitedMillis = 0;
+		for (PlannedOperation operation : operations) {
+			if (!serverName.equals(operation.serverName)) {
+				continue;
+			}
+			requestMillis += operation.count * operation.latencyMillis + operation.transferMillis;
+			if (ratePerSecond > 0) {
+				rateLimitedMillis = Math.max(rateLimitedMillis, (long) (operation.count * 1000 / ratePerSecond));
+			}
+		}
+		return Math.max(requestMillis / concurrency, rateLimitedMillis);
+
+	}
+
+	private int getConcurrency(String serverName) {
+
+		return Math.max(1, ConfigLoader.getIntConfigValue(serverName + "_MAX_CONCURRENT_REQUESTS", workerCount));
+
+	}
+
+	// Median latency of the endpoint which is measured during the dry run. Returns -1 when the endpoint is not called by the dry run
+
+	private static long getLatency(String serverName, String method, String pathSuffix) {
+
+		return MigrationMetrics.getInstance().getLatencyMillis(serverName, method, pathSuffix, 0.5);
+
+	}
+
+	// Write the plan file. The folders are sorted, so a parent folder is always before its sub folders
+
+	private void write(Path planFile, Set<String> newFolders, Iterable<String> newTags, Map<String, String> estimates) throws IOException {
+
+		Path parent = planFile.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(planFile, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, String> estimate : estimates.entrySet()) {
+				writeLine(writer, ESTIMATE_RECORD, estimate.getKey(), estimate.getValue());
+			}
+			for (String folder : newFolders) {
+				writeLine(writer, FOLDER_RECORD, folder);
+			}
+			for (String tag : newTags) {
+				writeLine(writer, TAG_RECORD, tag);
+			}
+			for (PlannedTestcase testcase : testcases.values()) {
+				writeLine(writer, CASE_RECORD, testcase.key, testcase.folderPath, String.valueOf(testcase.stepCount), String.valueOf(testcase.attachmentCount),
+						String.valueOf(testcase.attachmentBytes));
+			}
+		}
+
+	}
+
+	private static void writeLine(BufferedWriter writer, String... values) throws IOException {
+
+		writer.write(String.join(SEPARATOR, values));
+		writer.newLine();
+
+	}
+
+	private static String formatDuration(long millis) {
+
+		long seconds = TimeUnit.MILLISECONDS.toSeconds(millis);
+		return String.format("%dd %02dh %02dm %02ds", seconds / 86400, seconds / 3600 % 24, seconds / 60 % 60, seconds % 60);
+
+	}
+
+	// One testcase of the plan
+
+	private static class PlannedTestcase {
+
+		private final String key;
+		private final String folderPath;
+		private final int stepCount;
+		private final int attachmentCount;
+		private final long attachmentBytes;
+
+		PlannedTestcase(String key, String folderPath, int stepCount, int attachmentCount, long attachmentBytes) {
+			this.key = key;
+			this.folderPath = folderPath;
+			this.stepCount = stepCount;
+			this.attachmentCount = attachmentCount;
+			this.attachmentBytes = attachmentBytes;
+		}
+
+	}
+
+	// Projected requests of one operation of the real run. The default latency is used when the latency is not measured
+
+	private static class PlannedOperation {
+
+		private final String serverName;
+		private final String name;
+		private final long count;
+		private final long latencyMillis;
+		private final boolean measured;
+		private long transferMillis;
+
+		PlannedOperation(String serverName, String name, long count, long measuredLatencyMillis, long defaultLatencyMillis) {
+			this.serverName = serverName;
+			this.name = name;
+			this.count = count;
+			this.measured = measuredLatencyMillis >= 0;
+			this.latencyMillis = measured ? Math.max(1, measuredLatencyMillis) : defaultLatencyMillis;
+		}
+
+	}
+
+}
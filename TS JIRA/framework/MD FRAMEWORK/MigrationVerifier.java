@@ -0,0 +1,546 @@
+package com.optum.coe.automation.rally;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.rallydev.rest.RallyRestApi;
+import com.rallydev.rest.request.QueryRequest;
+import com.rallydev.rest.response.QueryResponse;
+import com.rallydev.rest.util.Fetch;
+import com.rallydev.rest.util.QueryFilter;
+import com.rallydev.rest.util.Ref;
+
+/* This Class verifies the migrated Rally testcases against their Jira testcases in bulk, instead of reading each Rally testcase and its steps one by one.
+ * 1. The Rally testcases and test steps are read with paged queries and a minimal fetch: all of the project for a full pass,
+ *    or only the testcases of a chunk with ObjectID and TestCase filters joined with OR
+ * 2. The Rally test folder paths are resolved from the folder tree, which is loaded once and loaded again only when a folder is not in it
+ * 3. The name, priority, folder path and the step text and order of each Rally testcase are compared in memory with the values mapped from the Jira testcase
+ * 4. A mismatch, a Jira testcase without a known Rally testcase and a Rally testcase which is not found are reported.
+ *    They are logged and appended to VERIFICATION_REPORT_FILE when it is configured
+ * The full pass is run after the migration when VERIFICATION_ENABLED is true. MigrationEngine verifies each chunk of VERIFICATION_CHUNK_SIZE migrated testcases
+ * in the background when the chunk size is more than 0 */
+
+public class MigrationVerifier implements AutoCloseable {
+
+	// Logger Initialization for MigrationVerifier Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String SEPARATOR = "\t";
+	private static final int PAGE_SIZE = 2000;
+
+	private final JiraOperation jiraOperation;
+	private final RallyRestApi restApi;
+	private final String projectRef;
+	private final int queryBatchSize;
+	private final int chunkSize;
+	private final Path reportFile;
+	private final Report totalReport = new Report();
+	private final List<Testcase> pendingTestcases = new ArrayList<Testcase>();
+	private ExecutorService chunkExecutor;
+	private Map<String, String> folderPaths;
+	private BufferedWriter reportWriter;
+
+	/* A Constructor loads the value from .properties file.
+	 * VERIFICATION_QUERY_BATCH_SIZE - how many testcases are asked in one Rally query of a chunk verification
+	 * VERIFICATION_CHUNK_SIZE - how many migrated testcases are verified together by submit
+	 * VERIFICATION_REPORT_FILE - file to which the problems are appended. They are only logged when it is not configured */
+
+	public MigrationVerifier(JiraOperation jiraOperation, RallyRestApi restApi) {
+
+		this.jiraOperation = jiraOperation;
+		this.restApi = restApi;
+		projectRef = TestFolderTree.toProjectRef(ConfigLoader.getConfigValue("RALLY_PROJECT_REF"));
+		queryBatchSize = Math.max(1, ConfigLoader.getIntConfigValue("VERIFICATION_QUERY_BATCH_SIZE", 40));
+		chunkSize = Math.max(1, ConfigLoader.getIntConfigValue("VERIFICATION_CHUNK_SIZE", 100));
+		String reportFileLocation = ConfigLoader.getConfigValue("VERIFICATION_REPORT_FILE", null);
+		reportFile = reportFileLocation == null ? null : Paths.get(reportFileLocation);
+
+	}
+
+	/* A method which verifies all the migrated testcases of the project.
+	 * 1. Read all the Rally testcases and test steps of the project
+	 * 2. Read the migrated Jira testcases page by page and compare each one with its Rally testcase
+	 * Returns the report of this pass */
+
+	public Report verifyProject() throws IOException {
+
+		long startMillis = System.currentTimeMillis();
+		Map<String, JsonObject> rallyTestcases = getRallyTestcases(null);
+		Map<String, List<TestStepPlan.RallyStep>> rallySteps = getRallyTestSteps(null);
+		logger.info("{} Rally testcases and their test steps are loaded for the verification of the project {}", rallyTestcases.size(), projectRef);
+
+		Report report = new Report();
+		try (JiraSearchIterator<JsonObject> jiraTestcases = jiraOperation.getJiraChangedTestcaseIterator(0)) {
+			while (jiraTestcases.hasNext()) {
+				JsonObject searchTestcaseJson = jiraTestcases.next();
+				String key = searchTestcaseJson.get("key").getAsString();
+				JsonObject jiraTestcaseJson = jiraOperation.completeJiraTestCaseDetails(searchTestcaseJson);
+				if (jiraTestcaseJson == null) {
+					report.addProblem(key, null, "Jira testcase details are not found");
+					continue;
+				}
+				verify(new Testcase(key, getRallyTestcaseRef(key, jiraTestcaseJson), jiraTestcaseJson), rallyTestcases, rallySteps, report);
+			}
+			if (jiraTestcases.isFailed()) {
+				report.addProblem("-", null, "Jira search is not completed. Some migrated testcases are not verified");
+			}
+		}
+		complete(report, "Verification of the project " + projectRef, startMillis);
+		return report;
+
+	}
+
+	/* A method which verifies the given migrated testcases. The Rally testcases and steps of the testcases are read with
+	 * one query of each type for every VERIFICATION_QUERY_BATCH_SIZE testcases. Returns the report of the testcases */
+
+	public Report verifyTestcases(Collection<Testcase> testcases) throws IOException {
+
+		long startMillis = System.currentTimeMillis();
+		Report report = new Report();
+		List<Testcase> batch = new ArrayList<Testcase>();
+		for (Testcase testcase : testcases) {
+			if (testcase.rallyTestcaseRef == null) {
+				report.addProblem(testcase.key, null, "Rally testcase is not known");
+				continue;
+			}
+			batch.add(testcase);
+			if (batch.size() == queryBatchSize) {
+				verifyBatch(batch, report);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			verifyBatch(batch, report);
+		}
+		complete(report, "Verification of " + testcases.size() + " testcases", startMillis);
+		return report;
+
+	}
+
+	/* Add a migrated testcase to the current chunk. The chunk is verified in the background when it has VERIFICATION_CHUNK_SIZE testcases,
+	 * so the migration workers do not wait for the verification. This method is called by the migration workers */
+
+	public void submit(String key, String rallyTestcaseRef, JsonObject jiraTestcaseJson) {
+
+		List<Testcase> chunk = null;
+		synchronized (pendingTestcases) {
+			pendingTestcases.add(new Testcase(key, rallyTestcaseRef, jiraTestcaseJson));
+			if (pendingTestcases.size() >= chunkSize) {
+				chunk = new ArrayList<Testcase>(pendingTestcases);
+				pendingTestcases.clear();
+			}
+		}
+		if (chunk != null) {
+			submitChunk(chunk);
+		}
+
+	}
+
+	// Total report of all the verifications of this verifier
+
+	public Report getTotalReport() {
+		return totalReport;
+	}
+
+	// Verify the last chunk, wait for the chunks which are still verified and close the report file
+
+	@Override
+	public void close() {
+
+		List<Testcase> chunk;
+		synchronized (pendingTestcases) {
+			chunk = new ArrayList<Testcase>(pendingTestcases);
+			pendingTestcases.clear();
+		}
+		if (!chunk.isEmpty()) {
+			submitChunk(chunk);
+		}
+		ExecutorService executor;
+		synchronized (this) {
+			executor = chunkExecutor;
+		}
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+					logger.info("Waiting for the testcase verification to complete");
+				}
+			} catch (InterruptedException e) {
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			logger.info("Verification of the migrated testcases is completed. {}", totalReport);
+		}
+		synchronized (this) {
+			if (reportWriter != null) {
+				try {
+					reportWriter.close();
+				} catch (IOException e) {
+					logger.error("Error occurred while closing the verification report file {}", reportFile, e);
+				}
+				reportWriter = null;
+			}
+		}
+
+	}
+
+	// Rally testcase reference of the Jira testcase from the delta sync state, the migration journal or the Rally testcase OID in Jira
+
+	static String getRallyTestcaseRef(String key, JsonObject jiraTestcaseJson) {
+
+		SyncStateStore.TestcaseState state = SyncStateStore.getInstance().getState(key);
+		return state != null ? state.getRallyTestcaseRef() : DeltaSyncEngine.getRallyTestcaseRef(key, jiraTestcaseJson);
+
+	}
+
+	private synchronized void submitChunk(List<Testcase> chunk) {
+
+		if (chunkExecutor == null) {
+			chunkExecutor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "migration-verifier");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		chunkExecutor.execute(() -> {
+			try {
+				verifyTestcases(chunk);
+			} catch (IOException | RuntimeException e) {
+				logger.error("Error occurred while verifying a chunk of {} migrated testcases", chunk.size(), e);
+			}
+		});
+
+	}
+
+	private void verifyBatch(List<Testcase> batch, Report report) throws IOException {
+
+		Map<String, JsonObject> rallyTestcases = getRallyTestcases(batch);
+		Map<String, List<TestStepPlan.RallyStep>> rallySteps = getRallyTestSteps(batch);
+		for (Testcase testcase : batch) {
+			verify(testcase, rallyTestcases, rallySteps, report);
+		}
+
+	}
+
+	/* Compare one Jira testcase with its Rally testcase. The expected Rally values are mapped from the Jira testcase like the migration does,
+	 * so a Jira value which is changed by the mapping (for example the "Normal" priority) is not a mismatch */
+
+	private void verify(Testcase testcase, Map<String, JsonObject> rallyTestcases, Map<String, List<TestStepPlan.RallyStep>> rallySteps, Report report) {
+
+		if (testcase.rallyTestcaseRef == null) {
+			report.addProblem(testcase.key, null, "Rally testcase is not known");
+			return;
+		}
+		String rallyTestcaseRef = getRelativeRef(testcase.rallyTestcaseRef);
+		JsonObject rallyTestcase = rallyTestcases.get(rallyTestcaseRef);
+		if (rallyTestcase == null) {
+			report.addProblem(testcase.key, rallyTestcaseRef, "Rally testcase is not found");
+			return;
+		}
+
+		List<String> differences = new ArrayList<String>();
+		JsonObject expected = JiraToRallyMapper.toRallyTestcase(testcase.jiraTestcaseJson, null, null, null);
+		for (String field : new String[] { "Name", "Priority" }) {
+			String expectedValue = getString(expected, field);
+			String actualValue = getString(rallyTestcase, field);
+			if (!Objects.equals(normalize(expectedValue), normalize(actualValue))) {
+				differences.add(field + " is '" + actualValue + "' instead of '" + expectedValue + "'");
+			}
+		}
+
+		String expectedFolderPath = getFolderPath(getString(testcase.jiraTestcaseJson, "folder"));
+		String actualFolderPath = getRallyFolderPath(rallyTestcase.get("TestFolder"));
+		if (!Objects.equals(expectedFolderPath, actualFolderPath)) {
+			differences.add(TestcaseFingerprint.TEST_FOLDER + " is '" + actualFolderPath + "' instead of '" + expectedFolderPath + "'");
+		}
+
+		String stepDifference = compareSteps(MigrationEngine.getSortedTestSteps(testcase.jiraTestcaseJson),
+				rallySteps.getOrDefault(rallyTestcaseRef, Collections.<TestStepPlan.RallyStep>emptyList()));
+		if (stepDifference != null) {
+			differences.add(stepDifference);
+		}
+
+		if (differences.isEmpty()) {
+			report.matchedCount++;
+		} else {
+			report.addProblem(testcase.key, rallyTestcaseRef, String.join("; ", differences));
+		}
+
+	}
+
+	// Compare the step text and order. Returns the first difference, or null when the steps are same
+
+	private String compareSteps(List<JiraTestStep> jiraSteps, List<TestStepPlan.RallyStep> rallySteps) {
+
+		for (int i = 0; i < Math.min(jiraSteps.size(), rallySteps.size()); i++) {
+			JiraTestStep jiraStep = jiraSteps.get(i);
+			TestStepPlan.RallyStep rallyStep = rallySteps.get(i);
+			if (!Objects.equals(normalize(JiraToRallyMapper.getInput(jiraStep)), normalize(rallyStep.getInput()))
+					|| !Objects.equals(normalize(jiraStep.getExpectedresult()), normalize(rallyStep.getExpectedResult()))) {
+				return TestcaseFingerprint.STEPS + " are different from step " + (i + 1);
+			}
+		}
+		if (jiraSteps.size() != rallySteps.size()) {
+			return TestcaseFingerprint.STEPS + " count is " + rallySteps.size() + " instead of " + jiraSteps.size();
+		}
+		return null;
+
+	}
+
+	/* Read the Rally testcases with a minimal fetch, by their relative reference. All the testcases of the project are read when the batch is null,
+	 * else only the testcases of the batch */
+
+	private Map<String, JsonObject> getRallyTestcases(List<Testcase> batch) throws IOException {
+
+		QueryRequest testcaseRequest = new QueryRequest("testcase");
+		testcaseRequest.setFetch(new Fetch("_ref", "Name", "Priority", "TestFolder"));
+		if (batch == null) {
+			testcaseRequest.setProject(projectRef);
+			testcaseRequest.setScopedDown(false);
+			testcaseRequest.setScopedUp(false);
+		} else {
+			QueryFilter[] filters = new QueryFilter[batch.size()];
+			for (int i = 0; i < filters.length; i++) {
+				filters[i] = new QueryFilter("ObjectID", "=", Ref.getOidFromRef(getRelativeRef(batch.get(i).rallyTestcaseRef)));
+			}
+			testcaseRequest.setQueryFilter(QueryFilter.or(filters));
+		}
+		Map<String, JsonObject> testcases = new HashMap<String, JsonObject>();
+		for (JsonElement element : query(testcaseRequest, "testcases")) {
+			JsonObject testcase = element.getAsJsonObject();
+			testcases.put(getRelativeRef(testcase.get("_ref").getAsString()), testcase);
+		}
+		return testcases;
+
+	}
+
+	/* Read the Rally test steps with a minimal fetch, grouped by the relative reference of their testcase in the StepIndex order.
+	 * All the steps of the project are read when the batch is null, else only the steps of the testcases of the batch */
+
+	private Map<String, List<TestStepPlan.RallyStep>> getRallyTestSteps(List<Testcase> batch) throws IOException {
+
+		QueryRequest stepRequest = new QueryRequest("testcasestep");
+		stepRequest.setFetch(new Fetch("TestCase", "StepIndex", "Input", "ExpectedResult"));
+		if (batch == null) {
+			stepRequest.setQueryFilter(new QueryFilter("TestCase.Project", "=", projectRef));
+		} else {
+			QueryFilter[] filters = new QueryFilter[batch.size()];
+			for (int i = 0; i < filters.length; i++) {
+				filters[i] = new QueryFilter("TestCase", "=", getRelativeRef(batch.get(i).rallyTestcaseRef));
+			}
+			stepRequest.setQueryFilter(QueryFilter.or(filters));
+		}
+		stepRequest.setOrder("StepIndex");
+		Map<String, List<TestStepPlan.RallyStep>> steps = new HashMap<String, List<TestStepPlan.RallyStep>>();
+		for (JsonElement element : query(stepRequest, "test steps")) {
+			JsonObject step = element.getAsJsonObject();
+			String testcaseRef = getRallyRef(step.get("TestCase"));
+			if (testcaseRef != null) {
+				steps.computeIfAbsent(testcaseRef, ref -> new ArrayList<TestStepPlan.RallyStep>()).add(new TestStepPlan.RallyStep(null,
+						step.get("StepIndex").getAsInt(), getString(step, "Input"), getString(step, "ExpectedResult")));
+			}
+		}
+		// The pages are in the StepIndex order of all the testcases, so the steps of each testcase are in order too. They are sorted for a Rally which does not order
+		for (List<TestStepPlan.RallyStep> testcaseSteps : steps.values()) {
+			testcaseSteps.sort((first, second) -> Integer.compare(first.getStepIndex(), second.getStepIndex()));
+		}
+		return steps;
+
+	}
+
+	private Iterable<JsonElement> query(QueryRequest request, String description) throws IOException {
+
+		request.setPageSize(PAGE_SIZE);
+		request.setLimit(Integer.MAX_VALUE);
+		QueryResponse response = Utils.queryRally(restApi, request);
+		if (!response.wasSuccessful()) {
+			throw new IOException("Error occurred reading the Rally " + description + " for the verification " + String.join(", ", response.getErrors()));
+		}
+		return response.getResults();
+
+	}
+
+	// Folder path of the Rally test folder. The folder tree is loaded again once when the folder is created after it was loaded
+
+	private synchronized String getRallyFolderPath(JsonElement testFolder) {
+
+		String folderRef = getRallyRef(testFolder);
+		if (folderRef == null) {
+			return null;
+		}
+		if (folderPaths == null || !folderPaths.containsKey(folderRef)) {
+			try {
+				folderPaths = new HashMap<String, String>();
+				for (Map.Entry<String, String> folderPath : TestFolderTree.load(restApi, projectRef).getFolderPaths().entrySet()) {
+					folderPaths.put(getRelativeRef(folderPath.getKey()), folderPath.getValue());
+				}
+			} catch (IOException e) {
+				logger.error("Failed to load the test folders for the verification", e);
+			}
+			// A folder which is not in the new tree is not loaded again for the next testcases
+			folderPaths.putIfAbsent(folderRef, folderRef);
+		}
+		return folderPaths.getOrDefault(folderRef, folderRef);
+
+	}
+
+	// Jira folder path in the form of the Rally folder tree. The empty folder names are skipped like Utils.createTestFolder does
+
+	private static String getFolderPath(String jiraFolder) {
+
+		if (jiraFolder == null) {
+			return null;
+		}
+		StringBuilder folderPath = new StringBuilder();
+		for (String folderName : jiraFolder.split("/")) {
+			if (!folderName.trim().isEmpty()) {
+				folderPath.append('/').append(folderName.trim());
+			}
+		}
+		return folderPath.length() == 0 ? null : folderPath.toString();
+
+	}
+
+	// Relative reference of a reference value. A reference is returned as an object by Rally and as a text by an older Rally
+
+	private static String getRallyRef(JsonElement ref) {
+
+		if (ref == null || ref.isJsonNull()) {
+			return null;
+		}
+		return getRelativeRef(ref.isJsonObject() ? ref.getAsJsonObject().get("_ref").getAsString() : ref.getAsString());
+
+	}
+
+	private static String getRelativeRef(String ref) {
+
+		return Ref.isRef(ref) ? Ref.getRelativeRef(ref) : ref;
+
+	}
+
+	private static String getString(JsonObject json, String memberName) {
+
+		JsonElement element = json.get(memberName);
+		return element == null || element.isJsonNull() ? null : element.getAsString();
+
+	}
+
+	// Rally returns an empty text for a field which is not set
+
+	private static String normalize(String value) {
+
+		return value == null ? "" : value.trim();
+
+	}
+
+	// Log the report, add it to the total report and append its problems to the report file
+
+	private void complete(Report report, String description, long startMillis) {
+
+		logger.info("{} is completed in {} ms. {}", description, System.currentTimeMillis() - startMillis, report);
+		for (Map.Entry<String, String> problem : report.problems.entrySet()) {
+			logger.error("Verification failed for the Jira testcase {}: {}", problem.getKey(), problem.getValue());
+		}
+		synchronized (totalReport) {
+			totalReport.matchedCount += report.matchedCount;
+			totalReport.problems.putAll(report.problems);
+		}
+		if (reportFile != null && !report.problems.isEmpty()) {
+			writeReport(report);
+		}
+
+	}
+
+	// Append the problems to the report file. Each line is "key<TAB>problem"
+
+	private synchronized void writeReport(Report report) {
+
+		try {
+			if (reportWriter == null) {
+				Path parent = reportFile.toAbsolutePath().getParent();
+				if (parent != null) {
+					Files.createDirectories(parent);
+				}
+				reportWriter = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+			for (Map.Entry<String, String> problem : report.problems.entrySet()) {
+				reportWriter.write(problem.getKey() + SEPARATOR + problem.getValue());
+				reportWriter.newLine();
+			}
+			reportWriter.flush();
+		} catch (IOException e) {
+			logger.error("Failed to write the verification report file {}", reportFile, e);
+		}
+
+	}
+
+	// A migrated testcase which is verified: the Jira key, the Rally testcase reference and the Jira testcase details
+
+	public static class Testcase {
+
+		private final String key;
+		private final String rallyTestcaseRef;
+		private final JsonObject jiraTestcaseJson;
+
+		public Testcase(String key, String rallyTestcaseRef, JsonObject jiraTestcaseJson) {
+			this.key = key;
+			this.rallyTestcaseRef = rallyTestcaseRef;
+			this.jiraTestcaseJson = jiraTestcaseJson;
+		}
+
+	}
+
+	// Result of a verification: the number of testcases which are same in Rally and the problem of each other Jira testcase
+
+	public static class Report {
+
+		private final Map<String, String> problems = new LinkedHashMap<String, String>();
+		private int matchedCount;
+
+		void addProblem(String key, String rallyTestcaseRef, String problem) {
+			problems.put(key, rallyTestcaseRef == null ? problem : rallyTestcaseRef + SEPARATOR + problem);
+		}
+
+		public int getMatchedCount() {
+			return matchedCount;
+		}
+
+		// Problem of each Jira testcase key, with the Rally testcase reference when it is known
+
+		public Map<String, String> getProblems() {
+			return problems;
+		}
+
+		public boolean isSuccessful() {
+			return problems.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "Matched testcases - " + matchedCount + ", Testcases with problems - " + problems.size();
+		}
+
+	}
+
+}
@@ -0,0 +1,292 @@
+package com.optum.coe.automation.rally;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class migrates many Jira projects to their Rally projects at the same time in one process. It is used when MULTI_PROJECT_ENABLED is true.
+ * 1. The projects are loaded from MULTI_PROJECT_MAPPINGS, for example ABC=/project/789325818991:3;XYZ=/project/789325818992.
+ *    Each mapping is the Jira project key, the Rally project reference and an optional weight. The default weight is 1
+ * 2. Each project is migrated on its own thread with its own MigrationEngine. ConfigLoader returns the values of the project to the project thread
+ *    and to all the threads which it starts: JIRA_PROJECT_KEY, RALLY_PROJECT_REF and the values with the MULTI_PROJECT_<JIRA KEY>_ prefix,
+ *    for example MULTI_PROJECT_ABC_RALLY_USER_REF or MULTI_PROJECT_ABC_MIGRATION_WORKER_COUNT
+ * 3. The Jira and Rally call layers are shared by all the projects. When the calls of many projects wait for a slot of the server, the slots are given
+ *    in the ratio of the project weights, so a small project is not queued behind all the calls of a large project. See ApiCallExecutor
+ * 4. Each project has its own test folder cache, cache file and verification report file. The Rally tags belong to the workspace,
+ *    so the tag index is shared and a tag which is missing in many projects is created only once
+ * The migration journal, the delta sync state and the Jira status writer are shared too. They are keyed by the Jira testcase key, which is unique across the projects */
+
+public class ProjectScheduler {
+
+	// Logger Initialization for ProjectScheduler Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String CONFIG_PREFIX = "MULTI_PROJECT_";
+
+	// Config keys of the files which are kept per project
+	private static final String[] PROJECT_FILE_KEYS = { "TEST_FOLDER_CACHE_FILE", "VERIFICATION_REPORT_FILE" };
+
+	// Project of the current thread. The threads which are started by a project thread, for example the migration workers, inherit its project
+	private static final InheritableThreadLocal<Project> currentProject = new InheritableThreadLocal<Project>();
+
+	// A task which is run for each project on its project thread
+
+	private interface ProjectTask {
+		void run(Project project) throws Exception;
+	}
+
+	private final List<Project> projects;
+
+	/* A Constructor loads the projects from .properties file.
+	 * MULTI_PROJECT_MAPPINGS - Jira project key = Rally project reference : weight, separated by ;
+	 * MULTI_PROJECT_<JIRA KEY>_<CONFIG KEY> - a config value which is used only for the given Jira project */
+
+	public ProjectScheduler() {
+
+		projects = parseMappings(ConfigLoader.getConfigValue("MULTI_PROJECT_MAPPINGS", ""));
+		if (projects.isEmpty()) {
+			throw new IllegalArgumentException("No Jira to Rally project mapping is configured in MULTI_PROJECT_MAPPINGS");
+		}
+
+	}
+
+	// Get the project of the current thread. Returns null when the current thread does not migrate a project of the multi project mode
+
+	public static Project getCurrentProject() {
+
+		return currentProject.get();
+
+	}
+
+	public List<Project> getProjects() {
+		return projects;
+	}
+
+	/* A method which migrates the non migrated testcases of all the projects at the same time. A failed project does not stop the other projects.
+	 * The test folders of each project are prefetched to its own cache when TEST_FOLDER_PREFETCH_ENABLED is true */
+
+	public void migrate() {
+
+		// The shared background writer is started here, so its thread does not belong to the project which uses it first
+		if (ConfigLoader.getBooleanConfigValue("JIRA_WRITEBACK_ENABLED", true)) {
+			JiraStatusWriter.getInstance();
+		}
+		runProjects("migration", project -> {
+			if (ConfigLoader.getBooleanConfigValue("TEST_FOLDER_PREFETCH_ENABLED", false)) {
+				TestFolderTree.prefetch(ConnectionManager.getRallyRestApi(), project.getRallyProjectRef(), project.getFolderCache());
+			}
+			try (MigrationEngine migrationEngine = new MigrationEngine(new JiraOperation())) {
+				project.failedCount = migrationEngine.migrateNonMigratedTestcases().size();
+			}
+		});
+
+	}
+
+	// A method which verifies the migrated testcases of all the projects at the same time. See MigrationVerifier
+
+	public void verify() {
+
+		runProjects("verification", project -> {
+			try (MigrationVerifier verifier = new MigrationVerifier(new JiraOperation(), ConnectionManager.getRallyRestApi())) {
+				project.failedCount = verifier.verifyProject().getProblems().size();
+			}
+		});
+
+	}
+
+	/* Run the task for each project on its own thread and wait until all the projects are completed.
+	 * The shared call layers and the metrics reporter are started first by this thread, so their threads do not inherit a project */
+
+	private void runProjects(String taskName, ProjectTask task) {
+
+		ApiCallExecutor.getInstance(ApiCallExecutor.JIRA);
+		ApiCallExecutor.getInstance(ApiCallExecutor.RALLY);
+		MigrationMetrics.getInstance();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (Project project : projects) {
+			project.reset();
+			Thread thread = new Thread(() -> {
+				currentProject.set(project);
+				long startNanos = System.nanoTime();
+				try {
+					logger.info("The {} of the Jira project {} to the Rally project {} is started with weight {}", taskName, project.getName(),
+							project.getRallyProjectRef(), project.getWeight());
+					task.run(project);
+				} catch (Exception e) {
+					project.failedCount = -1;
+					logger.error("The {} of the Jira project {} is failed", taskName, project.getName(), e);
+				} finally {
+					project.durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+					project.closeFolderCache();
+					currentProject.remove();
+				}
+			}, "project-" + project.getName());
+			threads.add(thread);
+			thread.start();
+		}
+
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			logger.error("Interrupted while waiting for the projects to complete", e);
+			for (Thread thread : threads) {
+				thread.interrupt();
+			}
+			Thread.currentThread().interrupt();
+		}
+
+		for (Project project : projects) {
+			logger.info("The {} of the Jira project {} is {} in {} ms. {} - {}, Jira requests - {}, Rally requests - {}", taskName, project.getName(),
+					project.failedCount < 0 ? "failed" : "completed", project.durationMillis, "migration".equals(taskName) ? "Failed testcases" : "Problems",
+					Math.max(0, project.failedCount), project.jiraCallCount.get(), project.rallyCallCount.get());
+		}
+
+	}
+
+	/* Parse the project mappings, for example ABC=/project/789325818991:3;XYZ=/project/789325818992.
+	 * The weight is the number after the last colon. A Rally project URL without a weight is not split at the colon of its scheme */
+
+	static List<Project> parseMappings(String mappings) {
+
+		List<Project> projects = new ArrayList<Project>();
+		for (String mapping : mappings.split(";")) {
+			mapping = mapping.trim();
+			if (mapping.isEmpty()) {
+				continue;
+			}
+			int separator = mapping.indexOf('=');
+			if (separator <= 0 || separator == mapping.length() - 1) {
+				throw new IllegalArgumentException("Invalid Jira to Rally project mapping in MULTI_PROJECT_MAPPINGS: " + mapping);
+			}
+			String jiraProjectKey = mapping.substring(0, separator).trim();
+			String rallyProjectRef = mapping.substring(separator + 1).trim();
+			int weight = 1;
+			int weightSeparator = rallyProjectRef.lastIndexOf(':');
+			if (weightSeparator > 0 && rallyProjectRef.substring(weightSeparator + 1).trim().matches("\\d+")) {
+				weight = Math.max(1, Integer.parseInt(rallyProjectRef.substring(weightSeparator + 1).trim()));
+				rallyProjectRef = rallyProjectRef.substring(0, weightSeparator).trim();
+			}
+			projects.add(new Project(jiraProjectKey, rallyProjectRef, weight));
+		}
+		return projects;
+
+	}
+
+	// One Jira project of the multi project mode with its Rally project, weight, config values and test folder cache
+
+	public static class Project {
+
+		private final String name;
+		private final String rallyProjectRef;
+		private final int weight;
+		private final Map<String, String> configValues = new HashMap<String, String>();
+		private final AtomicLong jiraCallCount = new AtomicLong();
+		private final AtomicLong rallyCallCount = new AtomicLong();
+		private TestFolderCache folderCache;
+		private volatile int failedCount;
+		private volatile long durationMillis;
+
+		/* The files of PROJECT_FILE_KEYS are kept next to the configured file with the Jira project key as the name prefix,
+		 * for example cache/ABC_test_folder_cache.tsv. A value with the MULTI_PROJECT_<JIRA KEY>_ prefix is used instead when it is configured */
+
+		Project(String name, String rallyProjectRef, int weight) {
+
+			this.name = name;
+			this.rallyProjectRef = rallyProjectRef;
+			this.weight = weight;
+			for (String key : PROJECT_FILE_KEYS) {
+				String fileLocation = ConfigLoader.getConfigValue(key, null);
+				if (fileLocation != null) {
+					configValues.put(key, Paths.get(fileLocation).resolveSibling(name + "_" + Paths.get(fileLocation).getFileName()).toString());
+				}
+			}
+			configValues.putAll(ConfigLoader.getConfigValues(CONFIG_PREFIX + name + "_"));
+			configValues.put("JIRA_PROJECT_KEY", name);
+			configValues.put("RALLY_PROJECT_REF", rallyProjectRef);
+
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getRallyProjectRef() {
+			return rallyProjectRef;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+
+		// Config value of this project. Returns null when the global value is used
+
+		public String getConfigValue(String key) {
+			return configValues.get(key);
+		}
+
+		// Get the test folder cache of this project. The cache file is loaded when the cache is used first time
+
+		public synchronized TestFolderCache getFolderCache() {
+
+			if (folderCache == null) {
+				String cacheFileLocation = configValues.get("TEST_FOLDER_CACHE_FILE");
+				folderCache = new TestFolderCache(cacheFileLocation == null ? null : Paths.get(cacheFileLocation));
+			}
+			return folderCache;
+
+		}
+
+		// Testcases which are not migrated, or problems which are found by the verification, in the last run. Returns -1 when the project is failed
+
+		public int getFailedCount() {
+			return failedCount;
+		}
+
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		// Count a Jira or Rally call which is made for this project
+
+		void recordCall(String serverName) {
+
+			(ApiCallExecutor.JIRA.equals(serverName) ? jiraCallCount : rallyCallCount).incrementAndGet();
+
+		}
+
+		public long getCallCount(String serverName) {
+
+			return (ApiCallExecutor.JIRA.equals(serverName) ? jiraCallCount : rallyCallCount).get();
+
+		}
+
+		private void reset() {
+
+			jiraCallCount.set(0);
+			rallyCallCount.set(0);
+			failedCount = 0;
+			durationMillis = 0;
+
+		}
+
+		private synchronized void closeFolderCache() {
+
+			if (folderCache != null) {
+				folderCache.close();
+			}
+
+		}
+
+	}
+
+}
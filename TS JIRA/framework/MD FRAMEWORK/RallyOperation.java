@@ -1,23 +1,29 @@
 package com.optum.coe.automation.rally;
 
 import java.io.IOException;
-import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.rallydev.rest.RallyRestApi;
 import com.rallydev.rest.request.CreateRequest;
+import com.rallydev.rest.request.QueryRequest;
 import com.rallydev.rest.response.CreateResponse;
+import com.rallydev.rest.response.QueryResponse;
+import com.rallydev.rest.response.UpdateResponse;
+import com.rallydev.rest.util.Fetch;
+import com.rallydev.rest.util.QueryFilter;
 import com.rallydev.rest.util.Ref;
 
 public class RallyOperation {
@@ -39,21 +45,33 @@ private String RallyTestCaseOID;
 	private String rallyApiKey;
 	private String rallyProjectKey;
 	private String rallyUser;
+	private RallyRestApi restApi;
 
 	// Logger Initialization for RallyOperation Class
 	private static final Logger logger = LogManager.getLogger();
 	
 	/* A Constructor loads the value from .properties file. These value will be loaded as soon as a object is created for this class.
-	 * Rally Base URL, Rally API Key, Rally Project Reference, Rally user are loaded from .properties file */
+	 * Rally Base URL, Rally API Key, Rally Project Reference, Rally user are loaded from .properties file
+	 * The shared connection pooled Rally rest api from ConnectionManager is used for all the Rally calls */
 	
 public RallyOperation() {
 	
+		this(ConnectionManager.getRallyRestApi());
+
+	}
+
+	// A Constructor which accepts the Rally rest api to be used for all the Rally calls. The rest api is shared and it is not closed by this class
+
+public RallyOperation(RallyRestApi restApi) {
+	
+		this.restApi = restApi;
 		rallyBaseURL=ConfigLoader.getConfigValue("RALLY_BASE_URL");
 		rallyApiKey=ConfigLoader.getConfigValue("RALLY_API_KEY");
 		rallyProjectKey=ConfigLoader.getConfigValue("RALLY_PROJECT_REF");
 		rallyUser=ConfigLoader.getConfigValue("RALLY_USER_REF");
-		logger.info("Rally values for the project key " + rallyProjectKey +" are assiged from rally_migration_config.properties file");
-		logger.log(Level.getLevel("VERBOSE"), "Below the values assigned from rally_migration_config.properties file. \nRally Base URL - " + rallyBaseURL + "\nRally Project Reference " + rallyProjectKey);
+		// A RallyOperation is created for each testcase, so the values are logged at debug
+		logger.debug("Rally values for the project key {} are assiged from rally_migration_config.properties file", rallyProjectKey);
+		logger.log(Level.getLevel("VERBOSE"), "Below the values assigned from rally_migration_config.properties file. \nRally Base URL - {}\nRally Project Reference {}", rallyBaseURL, rallyProjectKey);
 
 	}
 	
@@ -69,218 +87,406 @@ public RallyOperation() {
 	
 	
 	public boolean createRallyTestcase(JsonObject jiraJson)  {
-		boolean status=false;
 		
-		// Create JSON object for rally Json and add rally project reference key
-        JsonObject rallyJson = new JsonObject();
-        rallyJson.addProperty("projectRef", rallyProjectKey);
-        
-        // Create JSON object for testcase Json to add the rally testcase property
-        JsonObject testCase = new JsonObject();
-       
-        // Get testcase name from Jira Json body and add it to rally testcase as a property
-        JsonElement nameElement = jiraJson.get("name");
-        if (nameElement != null && !nameElement.isJsonNull()) {
-            testCase.addProperty("Name", nameElement.getAsString());
-        } else {
-            testCase.addProperty("Name", "Default Test Case Name - No TestCase name found in Jira"); // Give a default value if no name is found in Jira Json body
-        }
-
-        // Add method as Manual to rally testcase as a property
-        testCase.addProperty("Method", "Manual");
-
-        // Add priority value from Jira Json body to rally testcase as a property
-        JsonElement priorityElement = jiraJson.get("priority");
-        if (priorityElement != null && !priorityElement.isJsonNull()) {
-            String priority = priorityElement.getAsString();
-            if (priority.equalsIgnoreCase("Normal")) {
-                testCase.addProperty("Priority", "Useful");
-            } else {
-                testCase.addProperty("Priority", priority);
-            }
-        } else {
-            testCase.addProperty("Priority", "Default Priority"); // Add default value
-        }
-
-        // Add owner from config file to the rally testcase as a property
-        testCase.addProperty("Owner", "/user/" + rallyUser);
-
-        // Add status from Jira Json and add to the rally testcase as a property 
-        JsonElement statusElement = jiraJson.get("status");
-        if (statusElement != null && !statusElement.isJsonNull()) {
-            testCase.addProperty("Ready", statusElement.getAsString().equals("Ready"));
-        } else {
-            testCase.addProperty("Ready", false); // default value
-        }
-
-        // Add tags - Need implementation as discussed in code review meeting
-        JsonArray tagsArray = new JsonArray();
-        JsonObject tagObject = new JsonObject();
-        tagObject.addProperty("_ref", "/tag/56011614555");
-        tagObject.addProperty("Name", "Billing and Eligibility");
-        tagsArray.add(tagObject);
-        testCase.add("Tags", tagsArray);
-
+		return createRallyTestcase(jiraJson, resolveTestFolder(jiraJson));
+		
+	}
+	
+	/* Check if the Jira folder structure of the testcase is available in Rally and create it when it is not available.
+	 * Returns the last folder of the hierarchy with its reference, or null when the folder could not be created or retrieved */
+	
+	public JsonObject resolveTestFolder(JsonObject jiraJson) {
+		
         // Get folder hierarchy from JIRA response
         String folderPath = jiraJson.get("folder").getAsString();
         String[] folderHierarchy = folderPath.split("/");
 
         // Call a Util method to create test folder based on folder hierarchy
-        JsonObject testFolder = Utils.createTestFolder(folderHierarchy, rallyProjectKey , rallyBaseURL, rallyApiKey);
+        JsonObject testFolder = Utils.createTestFolder(folderHierarchy, rallyProjectKey , restApi);
         if (testFolder == null) {
         	
         	logger.error("Failed to create or retrieve TestFolder during Testcase Creation process in Rally");
-            //return status;// Exit the method or handle accordingly
-        } else logger.info("Folder " + folderPath + " is  created successfully in Rally");
+        } else logger.debug("Folder {} is  created successfully in Rally", folderPath);
+        return testFolder;
+        
+	}
+	
+	// Overloaded method to create the testcase in the given test folder, which is already resolved by resolveTestFolder
+	
+	public boolean createRallyTestcase(JsonObject jiraJson, JsonObject testFolder)  {
+		
+		return createTransformedRallyTestcase(transformTestcase(jiraJson), testFolder);
+		
+	}
+	
+	// Transform the Jira Testcase details to the Rally testcase create payload. Jira labels are resolved to Rally tags here
+	
+	public JsonObject transformTestcase(JsonObject jiraJson) {
+		
+		// Tags - Jira labels are mapped to Rally tags through the tag index. The default tag from config file is used when the testcase has no labels
+		return JiraToRallyMapper.toRallyTestcase(jiraJson, rallyProjectKey, rallyUser, getRallyTags(jiraJson));
         
+	}
+	
+	// Create the testcase from the transformed Rally testcase payload in the given test folder
+	
+	public boolean createTransformedRallyTestcase(JsonObject newTestCase, JsonObject testFolder)  {
+		boolean status=false;
+		
         // Add TestFolder to the test case
-        rallyJson.add("TestFolder", testFolder);
-
-        // Add the testCase object to the rallyJson
-        rallyJson.add("testCase", testCase);
+        newTestCase.addProperty("TestFolder", testFolder.get("_ref").getAsString());
 
-        // Save the transformed JSON to a variable
-        String rallyJsonString = new GsonBuilder().setPrettyPrinting().create().toJson(rallyJson);
+        CreateRequest createRequest = new CreateRequest("testcase", newTestCase);
+        CreateResponse createResponse = null;
+        try {
+            createResponse = Utils.createRallyRecord(restApi, createRequest);
+        } catch (IOException e) {
+            logger.error("IO exception during create request." , e);
+            return status;
+        }
 
-        //System.out.println("Transformed JSON: " + rallyJsonString);
+        if (createResponse.wasSuccessful()) {
+        	status = true;
+        	 RallyTestCaseOID=createResponse.getObject().get("_ref").getAsString();
+        	logger.debug("Successfully created test case and the OID for created testcase: {}", RallyTestCaseOID);
+         	
+        } else {
+        	logger.error("Error occurred creating test case");	
+            for (String error : createResponse.getErrors()) {
+            	logger.error(error);
+            }
+        }
 
-        // Initialize Rally API
-        RallyRestApi restApi = null;
+		return status;
+                 
+         
+    }
+	/* Update only the given fields of an existing Rally testcase from the Jira testcase details. It is used by the delta sync.
+	 * The field names are the Rally testcase fields (Name, Priority, Ready, Tags, TestFolder). The tags and the test folder are resolved only when they are changed.
+	 * Returns true when Rally accepts the update */
+	
+	public boolean updateRallyTestcase(String testcaseRef, JsonObject jiraJson, Collection<String> fields) {
+		
+		JsonObject mappedTestCase = JiraToRallyMapper.toRallyTestcase(jiraJson, rallyProjectKey, rallyUser,
+				fields.contains(TestcaseFingerprint.TAGS) ? getRallyTags(jiraJson) : null);
+		JsonObject changes = new JsonObject();
+		for (String field : fields) {
+			if (field.equals(TestcaseFingerprint.TEST_FOLDER)) {
+				JsonObject testFolder = resolveTestFolder(jiraJson);
+				if (testFolder == null) {
+					return false;
+				}
+				changes.addProperty("TestFolder", testFolder.get("_ref").getAsString());
+			} else if (mappedTestCase.has(field)) {
+				changes.add(field, mappedTestCase.get(field));
+			}
+		}
+		if (changes.size() == 0) {
+			return true;
+		}
+		
+		UpdateResponse updateResponse;
 		try {
-			restApi = new RallyRestApi(new URI(rallyBaseURL), rallyApiKey);
-		} catch (URISyntaxException e) {
-			logger.error("URI Sytntax error for the URL " + rallyBaseURL + ". Please check the URL." , e);
+			updateResponse = Utils.updateRallyRecord(restApi, testcaseRef, changes);
+		} catch (IOException e) {
+			logger.error("IO exception during update request for the testcase {}", testcaseRef, e);
+			return false;
+		}
+		if (!updateResponse.wasSuccessful()) {
+			logger.error("Error occurred updating test case {} {}", testcaseRef, String.join(", ", updateResponse.getErrors()));
+			return false;
 		}
-        restApi.setApplicationName("CreateTestCaseApp");
+		RallyTestCaseOID = testcaseRef;
+		logger.debug("Successfully updated the fields {} of the test case {}", changes.keySet(), testcaseRef);
+		return true;
+		
+	}
+	
+	// Map the Jira labels of the testcase to Rally tags. A tag is created in Rally when it is not available
 
-        JsonObject jsonData = JsonParser.parseString(rallyJsonString).getAsJsonObject();
+	private JsonArray getRallyTags(JsonObject jiraJson) {
 
-        // Extract values from JSON:
-        JsonObject testCaseData = jsonData.getAsJsonObject("testCase");
-        JsonObject testFolderData = jsonData.getAsJsonObject("TestFolder");
+		JsonArray tagsArray = new JsonArray();
+		RallyTagIndex tagIndex = RallyTagIndex.getInstance();
+		for (String label : getTagNames(jiraJson)) {
+			String tagRef = tagIndex.getOrCreateTag(label);
+			if (tagRef == null) {
+				logger.error("Tag {} is not added to the testcase. Failed to create or retrieve the tag in Rally", label);
+				continue;
+			}
+			JsonObject tagObject = new JsonObject();
+			tagObject.addProperty("_ref", tagRef);
+			tagsArray.add(tagObject);
+		}
+		return tagsArray;
 
-        try {
-            // Create a new test case
-            JsonObject newTestCase = new JsonObject();
-            newTestCase.addProperty("Name", testCaseData.get("Name").getAsString());
-            newTestCase.addProperty("Project", rallyProjectKey);
-            newTestCase.addProperty("Method", testCaseData.get("Method").getAsString());
-            newTestCase.addProperty("Priority", testCaseData.get("Priority").getAsString());
-            newTestCase.addProperty("Owner", testCaseData.get("Owner").getAsString());
-            newTestCase.addProperty("Ready", testCaseData.get("Ready").getAsBoolean());
-
-            // Add Tags to the test case from the JSON file
-            JsonArray tagsArrayFromJson = testCaseData.getAsJsonArray("Tags");
-            if (tagsArrayFromJson != null) {
-                JsonArray newTagsArray = new JsonArray();
-                for (JsonElement tagElement : tagsArrayFromJson) {
-                    JsonObject tagObjectFromJson = tagElement.getAsJsonObject();
-                    String tagRef = tagObjectFromJson.get("_ref").getAsString();
-                    JsonObject newTagObject = new JsonObject();
-                    newTagObject.addProperty("_ref", tagRef);
-                    newTagsArray.add(newTagObject);
-                }
-                newTestCase.add("Tags", newTagsArray);
-            }
+	}
 
-            // Add TestFolder to the test case from the JSON file
-            String testFolderRef = testFolderData.get("_ref").getAsString();
-            newTestCase.addProperty("TestFolder", testFolderRef);
+	// Rally tag names of the Jira testcase: its labels, or the default tag from config file when the testcase has no labels. It is used by MigrationPlanner too
 
-            CreateRequest createRequest = new CreateRequest("testcase", newTestCase);
-            CreateResponse createResponse = null;
-			try {
-				createResponse = restApi.create(createRequest);
-			} catch (IOException e) {
-				logger.error("IO exception during create request." , e);
-			}
+	static List<String> getTagNames(JsonObject jiraJson) {
 
-            if (createResponse.wasSuccessful()) {
-            	status = true;
-            	 RallyTestCaseOID=createResponse.getObject().get("_ref").getAsString();
-            	logger.info("Successfully created test case and the OID for created testcase: " + createResponse.getObject().get("_ref").getAsString());
-             	
-            } else {
-            	logger.error("Error occurred creating test case");	
-                for (String error : createResponse.getErrors()) {
-                	logger.error(error);
-                }
-            }
-            
-            
-        } finally {
-            // Release resources
-            try {
-				restApi.close();
-				logger.info("Closed rest api resource in finally block");
-			} catch (IOException e) {
-				logger.error("Error occurred while closing rest api resource at finally block" , e);
+		List<String> labels = new ArrayList<String>();
+		JsonElement labelsElement = jiraJson.get("labels");
+		if (labelsElement != null && labelsElement.isJsonArray()) {
+			for (JsonElement label : labelsElement.getAsJsonArray()) {
+				if (!label.isJsonNull() && !label.getAsString().trim().isEmpty()) {
+					labels.add(label.getAsString().trim());
+				}
 			}
-            
-        }
-		return status;
-                 
-         
-    }
+		}
+		String defaultTag = ConfigLoader.getConfigValue("RALLY_DEFAULT_TAG_NAME", null);
+		if (labels.isEmpty() && defaultTag != null) {
+			labels.add(defaultTag);
+		}
+		return labels;
+
+	}
+
 	public boolean createTestStep(JiraTestStep steps) throws IOException, URISyntaxException {
 		
-		JsonObject payLoad = new JsonObject();
-		 payLoad.addProperty("TestCase", RallyTestCaseOID);
-		 payLoad.addProperty("Input",processInput(steps));
-		 payLoad.addProperty("expectedResult",steps.getExpectedresult());
-		 payLoad.addProperty("index", steps.getIndex());
-		 payLoad.addProperty("id", steps.getId());
-		 if(steps.getTestdata() !=null) {
-			 payLoad.addProperty("Input", processInput(steps)); 
-		 }
+		JsonObject payLoad = JiraToRallyMapper.toRallyTestStep(steps, RallyTestCaseOID);
+		boolean status= false;
 		
-		 boolean status= false;
-		
-		 
-	        String rallyJsonString = new GsonBuilder().setPrettyPrinting().create().toJson(payLoad);
-	 
-	        System.out.println("Transformed JSON: " + rallyJsonString);
-	        
-	        JsonParser.parseString(rallyJsonString).getAsJsonObject();
-	        
-	        
-	       RallyRestApi restApi = new RallyRestApi(new URI(rallyBaseURL), rallyApiKey);
-	        restApi.setApplicationName("CreateTestCaseStepApp");
-	        
-
-	        try{CreateRequest createRequest = new CreateRequest("testcasestep",payLoad );
-	            CreateResponse createResponse = restApi.create(createRequest);
+	        CreateRequest createRequest = new CreateRequest("testcasestep",payLoad );
+	        CreateResponse createResponse = Utils.createRallyRecord(restApi, createRequest);
 	 
-	            if (createResponse.wasSuccessful()) {
-	            	String TestcaseStepOID=Ref.getRelativeRef(createResponse.getObject().get("_ref").getAsString());
-	                logger.info("Successfully created test Step and the OID for created teststep: " + createResponse.getObject().get("_ref").getAsString());
-	            } else {
-	                logger.error("Error occurred creating test step");
-	                for (String error : createResponse.getErrors()) {
-	                    logger.error(error);
-	                }
+	        if (createResponse.wasSuccessful()) {
+	        	status = true;
+	        	String TestcaseStepOID=Ref.getRelativeRef(createResponse.getObject().get("_ref").getAsString());
+	            logger.debug("Successfully created test Step and the OID for created teststep: {}", TestcaseStepOID);
+	        } else {
+	            logger.error("Error occurred creating test step");
+	            for (String error : createResponse.getErrors()) {
+	                logger.error(error);
 	            }
-	        } finally
-	        {
-	            try {
-				restApi.close();
-				logger.info("Closed rest api resource in finally block");
-			} catch (IOException e) {
-				logger.error("Error occurred while closing rest api resource at finally block" , e);
-			}
-	        } 
+	        }
 	       
 	   
 		return status;
 	}
 
-		private static String processInput(JiraTestStep step) {
-			if(step.getTestdata()!=null && !step.getTestdata().isEmpty()) {
-				return step.getDescription() +  " | " + step.getTestdata();
-			}else {
-				return step.getDescription();
+	/* A method which creates all the test steps of a testcase through the Rally batch endpoint.
+	 * 1. The steps are sorted by the Jira step index and submitted in chunks of RALLY_STEP_BATCH_SIZE steps, so that the step order in Rally is same as Jira
+	 * 2. Rally processes the entries of a batch in the given order and returns a result for each entry
+	 * 3. Returns one result per step. When a chunk could not be submitted, the remaining steps are returned as failed without submitting them,
+	 *    so that the failed steps can be submitted again in the same order */
+
+	public List<TestStepResult> createTestSteps(List<JiraTestStep> steps) {
+
+		List<JiraTestStep> sortedSteps = new ArrayList<JiraTestStep>(steps);
+		sortedSteps.sort(Comparator.comparingInt(JiraTestStep::getIndex));
+		int batchSize = Math.max(1, ConfigLoader.getIntConfigValue("RALLY_STEP_BATCH_SIZE", 25));
+		List<TestStepResult> results = new ArrayList<TestStepResult>();
+
+		for (int from = 0; from < sortedSteps.size(); from += batchSize) {
+			List<JiraTestStep> chunk = sortedSteps.subList(from, Math.min(from + batchSize, sortedSteps.size()));
+			try {
+				results.addAll(createTestStepBatch(chunk));
+			} catch (IOException e) {
+				logger.error("Error occurred while submitting the test step batch for the testcase {}", RallyTestCaseOID, e);
+				for (JiraTestStep step : sortedSteps.subList(from, sortedSteps.size())) {
+					results.add(new TestStepResult(step, null, Collections.singletonList("Not submitted: " + e.getMessage())));
+				}
+				break;
+			}
+		}
+
+		int failedCount = 0;
+		for (TestStepResult result : results) {
+			if (!result.isSuccessful()) {
+				failedCount++;
+			}
+		}
+		logger.debug("Created {} of {} test steps for the testcase {}", results.size() - failedCount, sortedSteps.size(), RallyTestCaseOID);
+		return results;
+
+	}
+
+	/* A method which makes the test steps of an existing Rally testcase same as the given Jira test steps, so that a testcase which is migrated again
+	 * does not get its steps twice. The existing Rally steps are read once and only the creates, updates and deletes which are needed are sent.
+	 * The operations are sent through the Rally batch endpoint in their order, in chunks of RALLY_STEP_BATCH_SIZE. See TestStepPlan.
+	 * Returns the plan with the result of each operation. When a chunk could not be submitted, the remaining operations are failed without submitting them */
+
+	public TestStepPlan reconcileTestSteps(List<JiraTestStep> steps) throws IOException {
+
+		List<JiraTestStep> sortedSteps = new ArrayList<JiraTestStep>(steps);
+		sortedSteps.sort(Comparator.comparingInt(JiraTestStep::getIndex));
+		TestStepPlan plan = TestStepPlan.create(sortedSteps, getRallyTestSteps(), RallyTestCaseOID);
+		List<TestStepPlan.Operation> operations = plan.getOperations();
+		int batchSize = Math.max(1, ConfigLoader.getIntConfigValue("RALLY_STEP_BATCH_SIZE", 25));
+
+		for (int from = 0; from < operations.size(); from += batchSize) {
+			List<TestStepPlan.Operation> chunk = operations.subList(from, Math.min(from + batchSize, operations.size()));
+			JsonArray batch = new JsonArray();
+			for (TestStepPlan.Operation operation : chunk) {
+				switch (operation.getType()) {
+				case CREATE:
+					batch.add(getBatchEntry("/testcasestep/create", "POST", operation.getFields()));
+					break;
+				case UPDATE:
+					batch.add(getBatchEntry(Ref.getRelativeRef(operation.getStepRef()), "POST", operation.getFields()));
+					break;
+				case DELETE:
+					batch.add(getBatchEntry(Ref.getRelativeRef(operation.getStepRef()), "DELETE", null));
+					break;
+				}
+			}
+			JsonObject batchResult;
+			try {
+				batchResult = submitBatch(batch);
+			} catch (IOException e) {
+				logger.error("Error occurred while submitting the test step changes for the testcase {}", RallyTestCaseOID, e);
+				for (TestStepPlan.Operation operation : operations.subList(from, operations.size())) {
+					operation.setResult(null, Collections.singletonList("Not submitted: " + e.getMessage()));
+				}
+				break;
+			}
+			JsonArray entryResults = batchResult.has("Results") ? batchResult.getAsJsonArray("Results") : new JsonArray();
+			for (int i = 0; i < chunk.size(); i++) {
+				TestStepPlan.Operation operation = chunk.get(i);
+				if (i >= entryResults.size()) {
+					operation.setResult(null, getErrors(batchResult));
+					continue;
+				}
+				JsonObject entryResult = entryResults.get(i).getAsJsonObject();
+				if (entryResult.has("CreateResult")) {
+					entryResult = entryResult.getAsJsonObject("CreateResult");
+				} else if (entryResult.has("OperationResult")) {
+					entryResult = entryResult.getAsJsonObject("OperationResult");
+				}
+				boolean hasErrors = entryResult.has("Errors") && entryResult.getAsJsonArray("Errors").size() > 0;
+				if (hasErrors || (operation.getType() == TestStepPlan.OperationType.CREATE && !entryResult.has("Object"))) {
+					List<String> errors = getErrors(entryResult);
+					logger.error("Error occurred in the test step change {} of the testcase {}: {}", operation, RallyTestCaseOID, errors);
+					operation.setResult(null, errors);
+				} else {
+					operation.setResult(operation.getType() == TestStepPlan.OperationType.CREATE
+							? Ref.getRelativeRef(entryResult.getAsJsonObject("Object").get("_ref").getAsString()) : null, new ArrayList<String>());
+				}
+			}
+		}
+
+		logger.debug("Test steps of the testcase {} are reconciled: {}", RallyTestCaseOID, plan);
+		return plan;
+
+	}
+
+	// Get the existing test steps of the Rally testcase in the StepIndex order. Only the fields which are compared with the Jira steps are fetched
+
+	public List<TestStepPlan.RallyStep> getRallyTestSteps() throws IOException {
+
+		QueryRequest stepRequest = new QueryRequest("testcasestep");
+		stepRequest.setFetch(new Fetch("_ref", "StepIndex", "Input", "ExpectedResult"));
+		stepRequest.setQueryFilter(new QueryFilter("TestCase", "=", Ref.getRelativeRef(RallyTestCaseOID)));
+		stepRequest.setOrder("StepIndex");
+		stepRequest.setPageSize(200);
+		stepRequest.setLimit(Integer.MAX_VALUE);
+		QueryResponse stepResponse = Utils.queryRally(restApi, stepRequest);
+		if (!stepResponse.wasSuccessful()) {
+			throw new IOException("Error occurred reading the test steps of the testcase " + RallyTestCaseOID + " " + String.join(", ", stepResponse.getErrors()));
+		}
+
+		List<TestStepPlan.RallyStep> rallySteps = new ArrayList<TestStepPlan.RallyStep>();
+		for (JsonElement element : stepResponse.getResults()) {
+			JsonObject step = element.getAsJsonObject();
+			rallySteps.add(new TestStepPlan.RallyStep(step.get("_ref").getAsString(), step.has("StepIndex") ? step.get("StepIndex").getAsInt() : rallySteps.size(),
+					getString(step, "Input"), getString(step, "ExpectedResult")));
+		}
+		rallySteps.sort(Comparator.comparingInt(TestStepPlan.RallyStep::getStepIndex));
+		return rallySteps;
+
+	}
+
+	// Submit one chunk of test steps to the Rally batch endpoint and read the result of each entry
+
+	private List<TestStepResult> createTestStepBatch(List<JiraTestStep> steps) throws IOException {
+
+		JsonArray batch = new JsonArray();
+		for (JiraTestStep step : steps) {
+			batch.add(getBatchEntry("/testcasestep/create", "POST", JiraToRallyMapper.toRallyTestStep(step, RallyTestCaseOID)));
+		}
+		JsonObject batchResult = submitBatch(batch);
+		JsonArray entryResults = batchResult.has("Results") ? batchResult.getAsJsonArray("Results") : new JsonArray();
+
+		List<TestStepResult> results = new ArrayList<TestStepResult>();
+		for (int i = 0; i < steps.size(); i++) {
+			JiraTestStep step = steps.get(i);
+			if (i >= entryResults.size()) {
+				results.add(new TestStepResult(step, null, getErrors(batchResult)));
+				continue;
+			}
+			JsonObject entryResult = entryResults.get(i).getAsJsonObject();
+			if (entryResult.has("CreateResult")) {
+				entryResult = entryResult.getAsJsonObject("CreateResult");
+			}
+			if (entryResult.has("Object") && entryResult.get("Object").isJsonObject()) {
+				String stepRef = Ref.getRelativeRef(entryResult.getAsJsonObject("Object").get("_ref").getAsString());
+				logger.debug("Successfully created test Step {} and the OID for created teststep: {}", step.getIndex(), stepRef);
+				results.add(new TestStepResult(step, stepRef, null));
+			} else {
+				List<String> errors = getErrors(entryResult);
+				logger.error("Error occurred creating test step {}: {}", step.getIndex(), errors);
+				results.add(new TestStepResult(step, null, errors));
 			}
 		}
+		return results;
+
+	}
+
+	// Submit the entries to the Rally batch endpoint. Returns the batch result with one result for each processed entry
+
+	private JsonObject submitBatch(JsonArray batch) throws IOException {
+
+		JsonObject batchRequest = new JsonObject();
+		batchRequest.add("Batch", batch);
+
+		// The batch is retried only when Rally answers 429/503, because the entries of a processed batch are already applied
+		String response = ApiCallExecutor.getInstance(ApiCallExecutor.RALLY).execute("POST /batch", false,
+				() -> restApi.getClient().doPost("/batch", batchRequest.toString()));
+		return JsonParser.parseString(response).getAsJsonObject().getAsJsonObject("BatchResult");
+
+	}
+
+	// Batch entry of a test step request. The body is not added for a delete
+
+	private static JsonObject getBatchEntry(String path, String method, JsonObject fields) {
+
+		JsonObject entry = new JsonObject();
+		entry.addProperty("Path", path);
+		entry.addProperty("Method", method);
+		if (fields != null) {
+			JsonObject body = new JsonObject();
+			body.add("testcasestep", fields);
+			entry.add("Body", body);
+		}
+		JsonObject batchEntry = new JsonObject();
+		batchEntry.add("Entry", entry);
+		return batchEntry;
+
+	}
+
+	private static String getString(JsonObject json, String memberName) {
+
+		JsonElement element = json.get(memberName);
+		return element == null || element.isJsonNull() ? null : element.getAsString();
+
+	}
+
+	private static List<String> getErrors(JsonObject result) {
+
+		List<String> errors = new ArrayList<String>();
+		if (result.has("Errors")) {
+			for (JsonElement error : result.getAsJsonArray("Errors")) {
+				errors.add(error.getAsString());
+			}
+		}
+		if (errors.isEmpty()) {
+			errors.add("No result is returned by Rally for the test step");
+		}
+		return errors;
+
+	}
 	
 }
 
@@ -0,0 +1,187 @@
+package com.optum.coe.automation.rally;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.rallydev.rest.RallyRestApi;
+import com.rallydev.rest.request.CreateRequest;
+import com.rallydev.rest.request.QueryRequest;
+import com.rallydev.rest.response.CreateResponse;
+import com.rallydev.rest.response.QueryResponse;
+import com.rallydev.rest.util.Fetch;
+import com.rallydev.rest.util.QueryFilter;
+
+/* This Class maps Jira labels to Rally tags with a process-wide tag index.
+ * 1. All the Rally tags are loaded once page by page when the index is used first time
+ * 2. A label which is already available in the index is resolved without any Rally call
+ * 3. A missing tag is created once and added to the index. When many testcases ask for the same missing tag at the same time, only the first caller creates it
+ * 4. When the tags could not be loaded, the load is tried again by the next lookup. Until the index is loaded, a tag which is not in the index
+ *    is queried by its name before it is created, so an existing tag is not created again
+ * Rally tag names are not case sensitive, so the index is keyed by the lower case tag name */
+
+public class RallyTagIndex {
+
+	// Logger Initialization for RallyTagIndex Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final int PAGE_SIZE = 2000;
+
+	private static RallyTagIndex instance;
+
+	private final RallyRestApi restApi;
+	private final ConcurrentHashMap<String, CompletableFuture<String>> tags = new ConcurrentHashMap<String, CompletableFuture<String>>();
+	private volatile boolean loaded;
+
+	public RallyTagIndex(RallyRestApi restApi) {
+
+		this.restApi = restApi;
+
+	}
+
+	// Get the process-wide tag index which uses the shared Rally rest api
+
+	public static synchronized RallyTagIndex getInstance() {
+
+		if (instance == null) {
+			instance = new RallyTagIndex(ConnectionManager.getRallyRestApi());
+		}
+		return instance;
+
+	}
+
+	/* Get the Rally tag reference for the given tag name. The tag is created in Rally when it is not available.
+	 * Returns null when the tag could not be created */
+
+	public String getOrCreateTag(String tagName) {
+
+		load();
+		String key = tagName.trim().toLowerCase(Locale.ROOT);
+		CompletableFuture<String> future = new CompletableFuture<String>();
+		CompletableFuture<String> existing = tags.putIfAbsent(key, future);
+		if (existing != null) {
+			try {
+				return existing.get();
+			} catch (ExecutionException e) {
+				logger.error("Tag {} is not created by another testcase", tagName, e.getCause());
+				return null;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+
+		String tagRef = loaded ? null : findTag(tagName.trim());
+		if (tagRef == null) {
+			tagRef = createTag(tagName.trim());
+		}
+		if (tagRef == null) {
+			// Remove the failed entry so that the next caller can try again
+			tags.remove(key, future);
+		}
+		future.complete(tagRef);
+		return tagRef;
+
+	}
+
+	// Returns true when the tag is available in Rally or already created by this run. The tag is not created. It is used by the dry run
+
+	public boolean hasTag(String tagName) {
+
+		load();
+		CompletableFuture<String> tag = tags.get(tagName.trim().toLowerCase(Locale.ROOT));
+		return tag != null && tag.isDone() && !tag.isCompletedExceptionally() && tag.join() != null;
+
+	}
+
+	public int size() {
+
+		return tags.size();
+
+	}
+
+	// Load all the Rally tags of the workspace to the index. The tags are loaded only once when the load is successful
+
+	private void load() {
+
+		if (loaded) {
+			return;
+		}
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
+			QueryRequest tagRequest = new QueryRequest("Tag");
+			tagRequest.setFetch(new Fetch("_ref", "Name"));
+			tagRequest.setPageSize(PAGE_SIZE);
+			tagRequest.setLimit(Integer.MAX_VALUE);
+			try {
+				QueryResponse tagResponse = Utils.queryRally(restApi, tagRequest);
+				if (tagResponse.wasSuccessful()) {
+					for (JsonElement element : tagResponse.getResults()) {
+						JsonObject tag = element.getAsJsonObject();
+						tags.putIfAbsent(tag.get("Name").getAsString().trim().toLowerCase(Locale.ROOT), CompletableFuture.completedFuture(tag.get("_ref").getAsString()));
+					}
+					loaded = true;
+					logger.info("{} Rally tags are loaded to the tag index", tags.size());
+				} else {
+					for (String error : tagResponse.getErrors()) {
+						logger.error(error);
+					}
+				}
+			} catch (IOException e) {
+				logger.error("Failed to load the Rally tags. The load is tried again by the next lookup", e);
+			}
+		}
+
+	}
+
+	// Query the Rally tag by its name. It is used while the index is not loaded. Returns null when the tag is not found
+
+	private String findTag(String tagName) {
+
+		QueryRequest tagRequest = new QueryRequest("Tag");
+		tagRequest.setFetch(new Fetch("_ref"));
+		tagRequest.setQueryFilter(new QueryFilter("Name", "=", tagName));
+		try {
+			QueryResponse tagResponse = Utils.queryRally(restApi, tagRequest);
+			if (tagResponse.wasSuccessful() && tagResponse.getTotalResultCount() > 0) {
+				return tagResponse.getResults().get(0).getAsJsonObject().get("_ref").getAsString();
+			}
+		} catch (IOException e) {
+			logger.error("IO exception during query tag request for the tag {}", tagName, e);
+		}
+		return null;
+
+	}
+
+	private String createTag(String tagName) {
+
+		JsonObject newTag = new JsonObject();
+		newTag.addProperty("Name", tagName);
+		try {
+			CreateResponse createTagResponse = Utils.createRallyRecord(restApi, new CreateRequest("Tag", newTag));
+			if (createTagResponse.wasSuccessful()) {
+				String tagRef = createTagResponse.getObject().get("_ref").getAsString();
+				logger.info("Successfully created tag {}: {}", tagName, tagRef);
+				return tagRef;
+			}
+			logger.error("Error occurred creating tag {}", tagName);
+			for (String error : createTagResponse.getErrors()) {
+				logger.error(error);
+			}
+		} catch (IOException e) {
+			logger.error("IO exception during create tag request for the tag {}", tagName, e);
+		}
+		return null;
+
+	}
+
+}
@@ -3,17 +3,13 @@ package com.optum.coe.automation.rally;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 public class RunnerClass {
@@ -28,16 +24,124 @@ public class RunnerClass {
 	     * 1. Get Jira non migrated testcase keys 
 	     * 2. Get Jira Testcase details for the given testcase key. It is an iterative process
 	     * 3. Create the testcase in Rally using the Jira testcase details
-	     * 4. Validate if the testcase is created successfully ; Future implementation is required. US7440061*/
+	     * 4. Validate if the testcase is created successfully. When VERIFICATION_ENABLED is true, all the migrated testcases are verified in bulk after the migration. US7440061*/
 				
-		Gson gson=new Gson();
+		try {
+			migrate();
+			if (ConfigLoader.getBooleanConfigValue("VERIFICATION_ENABLED", false)) {
+				verify();
+			}
+		} finally {
+			// Write the pending Jira status updates, then close the shared Jira and Rally connection pools, the test folder cache file, the attachment content index, the migration journal and the delta sync state at the end of the run
+			if (ConfigLoader.getBooleanConfigValue("JIRA_WRITEBACK_ENABLED", true)) {
+				JiraStatusWriter.getInstance().close();
+			}
+			ConnectionManager.shutdown();
+			// End of run report of the request counts, latencies, rates and cache hit ratio
+			MigrationMetrics.getInstance().close();
+			TestFolderCache.getInstance().close();
+			AttachmentContentStore.getInstance().close();
+			MigrationJournal.getInstance().close();
+			SyncStateStore.getInstance().close();
+		}
+
+	}
+
+	// Load the Rally test folder tree once, so that the existing folders are resolved without a Rally query per testcase
+
+	private static void prefetchTestFolders() {
+
+		if (ConfigLoader.getBooleanConfigValue("TEST_FOLDER_PREFETCH_ENABLED", false)) {
+			TestFolderTree.prefetch(ConnectionManager.getRallyRestApi(), ConfigLoader.getConfigValue("RALLY_PROJECT_REF"), TestFolderCache.getInstance());
+		}
+
+	}
+
+	/* Verify all the migrated testcases of the project against their Jira testcases. See MigrationVerifier.
+	 * The pending Jira status updates are written first, so the testcases migrated by this run are returned by the Jira search of the migrated testcases */
+
+	private static void verify() throws IOException {
+
+		if (ConfigLoader.getBooleanConfigValue("JIRA_WRITEBACK_ENABLED", true)) {
+			JiraStatusWriter.getInstance().close();
+		}
+		if (ConfigLoader.getBooleanConfigValue("MULTI_PROJECT_ENABLED", false)) {
+			new ProjectScheduler().verify();
+			return;
+		}
+		try (MigrationVerifier verifier = new MigrationVerifier(new JiraOperation(), ConnectionManager.getRallyRestApi())) {
+			verifier.verifyProject();
+		}
+
+	}
+
+	private static Path getPlanFile() {
+
+		return Paths.get(ConfigLoader.getConfigValue("MIGRATION_PLAN_FILE", "plans/migration_plan.tsv"));
+
+	}
+
+	private static void migrate() throws MalformedURLException, IOException, URISyntaxException {
+
 		JiraTestCase jiraTestCase = new JiraTestCase();
 		JiraOperation jiraOperation = new JiraOperation();
-		JiraTestStep steps=new JiraTestStep();
+		
+		/* Multi project mode. The Jira projects of MULTI_PROJECT_MAPPINGS are migrated to their Rally projects at the same time,
+		 * sharing the Jira and Rally request capacity by the project weights. Each project has its own test folder cache */
+		if (ConfigLoader.getBooleanConfigValue("MULTI_PROJECT_ENABLED", false)) {
+			new ProjectScheduler().migrate();
+			return;
+		}
+		
+		/* Sharded migration mode. This process is one of many workers which migrate the same Jira project. The worker must be started
+		 * before the test folder cache and the migration journal are used, so they are kept in the worker directory */
+		if (ConfigLoader.getBooleanConfigValue("SHARD_ENABLED", false)) {
+			try (ShardCoordinator shardCoordinator = new ShardCoordinator()) {
+				prefetchTestFolders();
+				shardCoordinator.run(jiraOperation);
+			}
+			return;
+		}
+		
+		/* Dry run mode. The migration plan is made with the Jira and Rally read requests only and written to MIGRATION_PLAN_FILE
+		 * with the projected request counts and duration. Nothing is written to Jira or Rally */
+		if (ConfigLoader.getBooleanConfigValue("MIGRATION_DRY_RUN_ENABLED", false)) {
+			new MigrationPlanner(jiraOperation, ConnectionManager.getRallyRestApi()).plan(getPlanFile());
+			return;
+		}
+		
+		prefetchTestFolders();
+		
+		// Plan mode. The folders, tags and testcases of the plan file which is made by the dry run are migrated
+		if (ConfigLoader.getBooleanConfigValue("MIGRATION_PLAN_EXECUTE_ENABLED", false)) {
+			MigrationPlanner.execute(getPlanFile(), jiraOperation);
+			return;
+		}
+		
+		/* Delta sync mode. The testcases which are already migrated and changed in Jira after the last sync are updated in Rally
+		 * with only the changed fields and the new attachments. The non migrated testcases are migrated by a normal run */
+		if (ConfigLoader.getBooleanConfigValue("DELTA_SYNC_ENABLED", false)) {
+			try (DeltaSyncEngine deltaSyncEngine = new DeltaSyncEngine(jiraOperation)) {
+				deltaSyncEngine.sync();
+			}
+			return;
+		}
+		
+		/* Parallel migration mode. Each testcase is migrated as a separate task and a failed testcase does not stop the run.
+		 * All the non migrated testcase keys are read from Jira page by page and migrated as the pages are received.
+		 * When JIRA_BULK_DETAILS_ENABLED is true, the search returns the testcase details too and the details are not requested for each key */
+		if (ConfigLoader.getBooleanConfigValue("MIGRATION_PARALLEL_ENABLED", false)) {
+			try (MigrationEngine migrationEngine = new MigrationEngine(jiraOperation)) {
+				migrationEngine.migrateNonMigratedTestcases();
+			}
+			return;
+		}
+		
 		ArrayList<String> testcaseKeys = jiraOperation.getJiraNonMigratedTestcaseKeys();
+		
 		for (int i = 0 ; i < testcaseKeys.size() ; i++) {
 			jiraTestCase.setKey(testcaseKeys.get(i));
-			logger.info("Processing " + jiraTestCase.getKey());
+			logger.info("Processing {}", jiraTestCase.getKey());
 			JsonObject jiraTestcaseJson = jiraOperation.getJiraTestCaseDetails(jiraTestCase.getKey());
 			RallyOperation rallyOperation = new RallyOperation();
 			boolean rallyTestcaseCreationStatus= rallyOperation.createRallyTestcase(jiraTestcaseJson);
@@ -46,28 +150,10 @@ public class RunnerClass {
 			
 			
 			
-					JsonArray stepsArray=jiraTestcaseJson.getAsJsonObject("testScript").getAsJsonArray("steps");			
-					List<JiraTestStep> testSteps=new ArrayList<>();				
-					 for(JsonElement element : stepsArray) {
-						JiraTestStep step =gson.fromJson(element, JiraTestStep.class);
-						testSteps.add(step);
-						
+					// The steps are created in the Jira step index order. The steps of an existing Rally testcase are reconciled by RallyOperation.reconcileTestSteps
+					for (JiraTestStep step : MigrationEngine.getSortedTestSteps(jiraTestcaseJson)) {
 						rallyOperation.createTestStep(step);
-						}
-					/* boolean isDescending = true;
-					 for(int j=1; j<testSteps.size();j++) {
-						 if(testSteps.get(j-1).getIndex() <testSteps.get(j).getIndex()) {
-							 isDescending = false;
-							 break;
-						 }
-					 }
-					
-						 Collections.reverse(testSteps);
-					
-					 if(rallyTestcaseOID!=null) {
-						 rallyOperation.createTestStep(steps);
-					
-					 }*/
+					}
 					
 					 			
 			
@@ -76,14 +162,16 @@ public class RunnerClass {
 			 * US7132986 - For Attachment ( Not Embedded )*/
 						
 			if (rallyTestcaseCreationStatus == true ) {
-				System.out.println("Rally Testcase Creation Status is true" );
-				// call the method to update the TestCase Migrated in Jira to "true". this method should go to Utils.Java Class
-				//Utils.updateTestCaseMigratedStatusinJira(true); // Yet to be implemented - US7382197
+				logger.info("Rally Testcase Creation Status is true");
+				// Update the TestCase Migrated in Jira to "true" in the background - US7382197
+				if (ConfigLoader.getBooleanConfigValue("JIRA_WRITEBACK_ENABLED", true)) {
+					JiraStatusWriter.getInstance().submit(jiraTestCase.getKey(), rallyTestcaseOID);
+				}
 			
 				
 			} else { 
 			    
-				logger.error("The Jira testcase is not created in rally. Jira Testcase key is " + jiraTestCase.getKey() + " is not created in rally");
+				logger.error("The Jira testcase is not created in rally. Jira Testcase key is {} is not created in rally", jiraTestCase.getKey());
 				return;
 			}
 			
@@ -0,0 +1,716 @@
+package com.optum.coe.automation.rally;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class runs one worker of a sharded migration. Many worker processes, on one host or on many hosts with a shared directory, migrate the same Jira project together.
+ * 1. The Jira testcase keys are split into SHARD_PARTITION_COUNT partitions by the hash of the key
+ * 2. The first worker of a run pages the non migrated Jira search once and writes the keys of each partition to a key file of the run.
+ *    The other workers wait for it under the lease lock, so the Jira search load does not grow with the number of workers
+ * 3. A worker claims up to SHARD_MAX_PARTITIONS_PER_WORKER free partitions with a lease file in SHARD_DIRECTORY and migrates only the keys of its partitions.
+ *    The leases are renewed every third of SHARD_LEASE_SECONDS. A partition whose lease is expired, because its worker is stopped, is claimed again by another worker
+ * 4. The migration journal of the previous owner is imported for a claimed partition, so the testcases which are already created are resumed instead of created again
+ * 5. The keys of the key file of a claimed partition are migrated and the partition is marked as done. The worker stops when all the partitions of the run are done
+ * 6. A new run is started when SHARD_RUN_ID is changed, or when it is not configured and all the partitions of the last run are done.
+ *    The done markers, leases and key files of the last run are removed then. The done markers and leases of another run are ignored
+ * 7. The test folders are resolved under a lock of the folder path and saved in a folder registry in SHARD_DIRECTORY, so two workers never create the same test folder.
+ *    Each worker keeps the registry in memory and reads only the lines which are appended by the other workers
+ * The lease and folder files are changed only while a file lock is held. The journal, folder cache, attachment index and delta sync state files
+ * of each worker are kept in its own directory under SHARD_DIRECTORY/workers. The clocks of the hosts must be in sync within a small part of the lease time */
+
+public class ShardCoordinator implements AutoCloseable {
+
+	// Logger Initialization for ShardCoordinator Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String SEPARATOR = "\t";
+
+	// Config keys of the files which are kept per worker
+	private static final String[] WORKER_FILE_KEYS = { "MIGRATION_JOURNAL_FILE", "TEST_FOLDER_CACHE_FILE", "ATTACHMENT_CONTENT_INDEX_FILE", "DELTA_SYNC_STATE_FILE" };
+
+	private static volatile ShardCoordinator active;
+
+	// Process locks of the lock files, keyed by the lock file path
+	private static final Map<Path, ReentrantLock> processLocks = new ConcurrentHashMap<Path, ReentrantLock>();
+
+	private final Path shardDirectory;
+	private final String workerId;
+	private final int partitionCount;
+	private final int maxPartitions;
+	private final long leaseMillis;
+	// Leases which are written by this worker, keyed by the held partition
+	private final Map<Integer, Lease> ownedPartitions = new ConcurrentHashMap<Integer, Lease>();
+	// Held partitions whose testcase is not created in this round because the lease is about to expire
+	private final Set<Integer> deferredPartitions = ConcurrentHashMap.newKeySet();
+	private final Map<Integer, String> previousOwners = new ConcurrentHashMap<Integer, String>();
+	private final ScheduledExecutorService heartbeatExecutor;
+
+	// Id of the run of this worker. The run is replaced when another worker starts a new run while this worker is still running
+	private volatile String runId;
+	private volatile boolean runReplaced;
+
+	// Folders of the registry file which are read by this worker, keyed by "projectRef<TAB>folderPath", and the length of the registry which is read
+	private final Map<String, String> folderRegistry = new ConcurrentHashMap<String, String>();
+	private long folderRegistryOffset;
+
+	/* A Constructor loads the value from .properties file and points the per worker files to the worker directory.
+	 * It must be created before MigrationJournal, TestFolderCache, AttachmentContentStore and SyncStateStore are used.
+	 * SHARD_DIRECTORY - directory which is shared by all the workers
+	 * SHARD_PARTITION_COUNT - number of partitions of the Jira keys. It must be same for all the workers
+	 * SHARD_WORKER_ID - unique name of this worker. The host name and process id are used when it is not configured
+	 * SHARD_LEASE_SECONDS - a partition of a worker which is stopped is claimed again after this time
+	 * SHARD_MAX_PARTITIONS_PER_WORKER - how many partitions a worker migrates at the same time
+	 * SHARD_RUN_ID - id of the run which the worker joins. A new run is started when it is changed */
+
+	public ShardCoordinator() throws IOException {
+
+		shardDirectory = Paths.get(ConfigLoader.getConfigValue("SHARD_DIRECTORY", "shards"));
+		workerId = ConfigLoader.getConfigValue("SHARD_WORKER_ID", getDefaultWorkerId()).replaceAll("[^A-Za-z0-9._-]", "_");
+		partitionCount = Math.max(1, ConfigLoader.getIntConfigValue("SHARD_PARTITION_COUNT", 16));
+		maxPartitions = Math.max(1, ConfigLoader.getIntConfigValue("SHARD_MAX_PARTITIONS_PER_WORKER", 4));
+		leaseMillis = TimeUnit.SECONDS.toMillis(Math.max(5, ConfigLoader.getIntConfigValue("SHARD_LEASE_SECONDS", 60)));
+		Files.createDirectories(getWorkerDirectory(workerId));
+
+		for (String key : WORKER_FILE_KEYS) {
+			String fileLocation = ConfigLoader.getConfigValue(key, null);
+			if (fileLocation != null) {
+				ConfigLoader.setConfigValue(key, getWorkerDirectory(workerId).resolve(Paths.get(fileLocation).getFileName()).toString());
+			}
+		}
+
+		heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "shard-lease-heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+		heartbeatExecutor.scheduleWithFixedDelay(this::renewLeases, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+		active = this;
+		logger.info("Shard worker {} is started with {} partitions in {}", workerId, partitionCount, shardDirectory.toAbsolutePath());
+
+	}
+
+	// Get the running shard worker of this process. Returns null when the migration is not sharded
+
+	public static ShardCoordinator getActive() {
+
+		return active;
+
+	}
+
+	/* Resolve a test folder which is not in the test folder cache. When the migration is sharded, the folder registry of all the workers is checked
+	 * and the loader is called under the folder lock, so the same folder is never created by two workers. Else the loader is called directly */
+
+	public static String resolveTestFolder(String projectRef, String folderPath, Callable<String> loader) throws Exception {
+
+		ShardCoordinator coordinator = active;
+		return coordinator == null ? loader.call() : coordinator.resolveSharedTestFolder(projectRef, folderPath, loader);
+
+	}
+
+	public String getWorkerId() {
+		return workerId;
+	}
+
+	// Partition of the Jira testcase key. String.hashCode is same in every JVM, so all the workers compute the same partition
+
+	public int getPartition(String key) {
+
+		return Math.floorMod(key.hashCode(), partitionCount);
+
+	}
+
+	// Returns true when this worker still holds the lease of the partition of the key
+
+	public boolean owns(String key) {
+
+		return ownedPartitions.containsKey(getPartition(key));
+
+	}
+
+	/* Returns true when the testcase of the key can be created in Rally. When the migration is sharded, the worker must hold the lease of the partition of the key
+	 * for more than a third of the lease time, so a worker which lost its lease, or whose lease is about to expire, does not create the testcases of the next owner */
+
+	public static boolean canCreate(String key) {
+
+		ShardCoordinator coordinator = active;
+		return coordinator == null || coordinator.holdsLease(key);
+
+	}
+
+	// A partition whose lease is about to expire is deferred, so it is not marked as done in this round and its keys are migrated again in the next round
+
+	private boolean holdsLease(String key) {
+
+		int partition = getPartition(key);
+		Lease lease = ownedPartitions.get(partition);
+		if (lease != null && lease.expiresAt - System.currentTimeMillis() > leaseMillis / 3) {
+			return true;
+		}
+		if (lease != null) {
+			deferredPartitions.add(partition);
+		}
+		return false;
+
+	}
+
+	/* A method which migrates the partitions of this worker until all the partitions of the run are done.
+	 * 1. Join the current run, or start a new run with the keys of the non migrated Jira testcases
+	 * 2. Claim the free partitions and the partitions with an expired lease
+	 * 3. Import the migration journal of the previous owner of each claimed partition
+	 * 4. Migrate the keys of the key files of the held partitions. The details of each testcase are requested by its key, so JIRA_BULK_DETAILS_ENABLED is not used
+	 * 5. Mark each held partition as done with its failed keys and release it. The failed keys of a partition which is lost are tried again by its next owner,
+	 *    and a partition whose lease was about to expire before a Rally create is migrated again in the next round
+	 * When no partition is held and some partitions are still held by other workers, the worker waits, so it can take over a partition of a stopped worker.
+	 * Returns the failed testcase keys of the partitions which are done by this worker */
+
+	public List<String> run(JiraOperation jiraOperation) throws IOException {
+
+		startRun(jiraOperation);
+		List<String> failedKeys = new ArrayList<String>();
+		try (MigrationEngine migrationEngine = new MigrationEngine(jiraOperation)) {
+			while (true) {
+				List<Integer> claimedPartitions = claimPartitions();
+				if (ownedPartitions.isEmpty()) {
+					if (runReplaced || getDonePartitionCount() >= partitionCount) {
+						break;
+					}
+					logger.info("No partition is free. Waiting for the partitions of the other workers");
+					try {
+						Thread.sleep(leaseMillis / 2);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+					continue;
+				}
+
+				for (Integer partition : claimedPartitions) {
+					String previousOwner = previousOwners.remove(partition);
+					if (previousOwner != null && !previousOwner.equals(workerId)) {
+						String journalFile = ConfigLoader.getConfigValue("MIGRATION_JOURNAL_FILE", null);
+						if (journalFile != null) {
+							MigrationJournal.getInstance().importRecords(getWorkerDirectory(previousOwner).resolve(Paths.get(journalFile).getFileName()),
+									key -> getPartition(key) == partition);
+						}
+					}
+				}
+
+				List<Integer> roundPartitions = new ArrayList<Integer>(ownedPartitions.keySet());
+				deferredPartitions.clear();
+				List<String> roundKeys = new ArrayList<String>();
+				for (Integer partition : roundPartitions) {
+					roundKeys.addAll(Files.readAllLines(getKeyFile(runId, partition), StandardCharsets.UTF_8));
+				}
+				logger.info("Shard worker {} is migrating {} testcases of the partitions {}", workerId, roundKeys.size(), roundPartitions);
+				List<String> roundFailedKeys = migrationEngine.migrate(new PartitionIterator(roundKeys.iterator()));
+
+				for (Integer partition : roundPartitions) {
+					if (ownedPartitions.containsKey(partition) && !deferredPartitions.contains(partition)) {
+						List<String> partitionFailedKeys = new ArrayList<String>();
+						for (String key : roundFailedKeys) {
+							if (getPartition(key) == partition) {
+								partitionFailedKeys.add(key);
+							}
+						}
+						failedKeys.addAll(partitionFailedKeys);
+						completePartition(partition, partitionFailedKeys.size());
+					}
+				}
+			}
+		}
+		logger.info("Shard worker {} is completed. Failed testcases - {}", workerId, failedKeys.size());
+		return failedKeys;
+
+	}
+
+	/* Join the current run, or start a new run under the lease lock. The current run is joined when it has the configured SHARD_RUN_ID,
+	 * or when SHARD_RUN_ID is not configured and some partitions of the run are not done yet. Else the files of the last run are removed,
+	 * the non migrated Jira search is paged once and the keys of each partition are written to the key directory of the new run.
+	 * The run file is written last, so a run whose search is failed or stopped is started again by the next worker */
+
+	private void startRun(JiraOperation jiraOperation) throws IOException {
+
+		try {
+			withLock("leases.lock", () -> {
+				String configuredRunId = ConfigLoader.getConfigValue("SHARD_RUN_ID", null);
+				if (configuredRunId != null) {
+					configuredRunId = configuredRunId.replaceAll("[^A-Za-z0-9._-]", "_");
+				}
+				String currentRunId = readRunId();
+				if (currentRunId != null && (configuredRunId != null ? configuredRunId.equals(currentRunId) : !isRunDone(currentRunId))) {
+					runId = currentRunId;
+					logger.info("Shard worker {} joined the run {}", workerId, runId);
+					return null;
+				}
+
+				Path runFile = shardDirectory.resolve("run.tsv");
+				Files.deleteIfExists(runFile);
+				try (DirectoryStream<Path> runFiles = Files.newDirectoryStream(shardDirectory, "{partition-*,keys-*}")) {
+					for (Path file : runFiles) {
+						delete(file);
+					}
+				}
+
+				String newRunId = configuredRunId != null ? configuredRunId : String.valueOf(System.currentTimeMillis());
+				List<Set<String>> partitionKeys = new ArrayList<Set<String>>();
+				for (int partition = 0; partition < partitionCount; partition++) {
+					partitionKeys.add(new LinkedHashSet<String>());
+				}
+				int keyCount = 0;
+				try (JiraSearchIterator<String> testcaseKeys = jiraOperation.getJiraNonMigratedTestcaseKeyIterator()) {
+					while (testcaseKeys.hasNext()) {
+						String key = testcaseKeys.next();
+						if (partitionKeys.get(getPartition(key)).add(key)) {
+							keyCount++;
+						}
+					}
+					if (testcaseKeys.isFailed()) {
+						throw new IOException("The non migrated Jira testcase search is failed. The shard run " + newRunId + " is not started");
+					}
+				}
+
+				Files.createDirectories(getKeyFile(newRunId, 0).getParent());
+				for (int partition = 0; partition < partitionCount; partition++) {
+					Files.write(getKeyFile(newRunId, partition), partitionKeys.get(partition), StandardCharsets.UTF_8);
+				}
+				Path temporaryFile = runFile.resolveSibling(runFile.getFileName() + "." + workerId);
+				Files.write(temporaryFile, (newRunId + SEPARATOR + keyCount).getBytes(StandardCharsets.UTF_8));
+				Files.move(temporaryFile, runFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				runId = newRunId;
+				logger.info("Shard run {} is started by {} with {} non migrated Jira testcases", runId, workerId, keyCount);
+				return null;
+			});
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Failed to start the shard run for the shard worker " + workerId, e);
+		}
+
+	}
+
+	// Stop renewing the leases and release the partitions which are not done, so another worker can claim them without waiting for the lease time
+
+	@Override
+	public void close() {
+
+		heartbeatExecutor.shutdownNow();
+		try {
+			withLock("leases.lock", () -> {
+				for (Map.Entry<Integer, Lease> ownedLease : ownedPartitions.entrySet()) {
+					Lease lease = readLease(ownedLease.getKey());
+					if (lease != null && lease.isSameLease(ownedLease.getValue())) {
+						writeLease(ownedLease.getKey(), new Lease(workerId, 0, lease.generation));
+					}
+				}
+				return null;
+			});
+		} catch (Exception e) {
+			logger.error("Failed to release the partition leases of the shard worker {}", workerId, e);
+		}
+		ownedPartitions.clear();
+		active = null;
+
+	}
+
+	// Claim the free partitions and the partitions with an expired lease, up to the maximum partitions of a worker
+
+	private List<Integer> claimPartitions() throws IOException {
+
+		try {
+			return withLock("leases.lock", () -> {
+				List<Integer> claimedPartitions = new ArrayList<Integer>();
+				if (!isCurrentRun()) {
+					return claimedPartitions;
+				}
+				long now = System.currentTimeMillis();
+				for (int partition = 0; partition < partitionCount && ownedPartitions.size() < maxPartitions; partition++) {
+					if (ownedPartitions.containsKey(partition) || isPartitionDone(runId, partition)) {
+						continue;
+					}
+					Lease lease = readLease(partition);
+					if (lease != null && lease.expiresAt > now && !lease.workerId.equals(workerId)) {
+						continue;
+					}
+					if (lease != null) {
+						if (lease.expiresAt > 0 && !lease.workerId.equals(workerId)) {
+							logger.warn("Lease of the partition {} of the shard worker {} is expired. The partition is claimed by {}", partition, lease.workerId, workerId);
+						}
+						previousOwners.put(partition, lease.workerId);
+					}
+					Lease claimedLease = new Lease(workerId, now + leaseMillis, lease == null ? 1 : lease.generation + 1);
+					writeLease(partition, claimedLease);
+					ownedPartitions.put(partition, claimedLease);
+					claimedPartitions.add(partition);
+				}
+				return claimedPartitions;
+			});
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Failed to claim the partitions for the shard worker " + workerId, e);
+		}
+
+	}
+
+	/* Renew the leases of this worker. A partition whose lease is taken by another worker, or claimed again with a newer generation, is dropped,
+	 * so its remaining keys are not migrated by this worker.
+	 * All the partitions are dropped when another worker started a new run */
+
+	private void renewLeases() {
+
+		try {
+			withLock("leases.lock", () -> {
+				if (ownedPartitions.isEmpty() || !isCurrentRun()) {
+					return null;
+				}
+				long expiresAt = System.currentTimeMillis() + leaseMillis;
+				for (Map.Entry<Integer, Lease> ownedLease : ownedPartitions.entrySet()) {
+					int partition = ownedLease.getKey();
+					Lease lease = readLease(partition);
+					if (lease == null || !lease.isSameLease(ownedLease.getValue())) {
+						logger.error("Lease of the partition {} is lost by the shard worker {}. The partition is taken by {}", partition, workerId,
+								lease == null ? "nobody" : lease.workerId);
+						ownedPartitions.remove(partition);
+					} else {
+						Lease renewedLease = new Lease(workerId, expiresAt, lease.generation);
+						writeLease(partition, renewedLease);
+						ownedPartitions.put(partition, renewedLease);
+					}
+				}
+				return null;
+			});
+		} catch (Exception e) {
+			logger.error("Failed to renew the partition leases of the shard worker {}", workerId, e);
+		}
+
+	}
+
+	// Mark the partition as done and release its lease. Each done file is "runId<TAB>workerId<TAB>failedCount"
+
+	private void completePartition(int partition, int failedCount) throws IOException {
+
+		try {
+			withLock("leases.lock", () -> {
+				if (!isCurrentRun()) {
+					return null;
+				}
+				Files.write(getPartitionFile(partition, "done"), (runId + SEPARATOR + workerId + SEPARATOR + failedCount).getBytes(StandardCharsets.UTF_8));
+				Files.deleteIfExists(getPartitionFile(partition, "lease"));
+				ownedPartitions.remove(partition);
+				return null;
+			});
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Failed to complete the partition " + partition, e);
+		}
+		if (failedCount > 0) {
+			logger.error("Partition {} is done with {} failed testcases", partition, failedCount);
+		} else {
+			logger.info("Partition {} is done", partition);
+		}
+
+	}
+
+	private int getDonePartitionCount() throws IOException {
+
+		int count = 0;
+		for (int partition = 0; partition < partitionCount; partition++) {
+			if (isPartitionDone(runId, partition)) {
+				count++;
+			}
+		}
+		return count;
+
+	}
+
+	// Returns true when the partition has a done file of the run
+
+	private boolean isPartitionDone(String run, int partition) throws IOException {
+
+		Path doneFile = getPartitionFile(partition, "done");
+		return Files.exists(doneFile) && new String(Files.readAllBytes(doneFile), StandardCharsets.UTF_8).startsWith(run + SEPARATOR);
+
+	}
+
+	private boolean isRunDone(String run) throws IOException {
+
+		for (int partition = 0; partition < partitionCount; partition++) {
+			if (!isPartitionDone(run, partition)) {
+				return false;
+			}
+		}
+		return true;
+
+	}
+
+	// Get the id of the current run from the run file "runId<TAB>keyCount". Returns null when no run is started yet
+
+	private String readRunId() throws IOException {
+
+		Path runFile = shardDirectory.resolve("run.tsv");
+		return Files.exists(runFile) ? new String(Files.readAllBytes(runFile), StandardCharsets.UTF_8).split(SEPARATOR)[0].trim() : null;
+
+	}
+
+	// Returns true when the run of this worker is still the current run. Else all the partitions are dropped, so the worker stops. It is called under the lease lock
+
+	private boolean isCurrentRun() throws IOException {
+
+		if (runReplaced || !runId.equals(readRunId())) {
+			if (!runReplaced) {
+				logger.error("Shard run {} of the shard worker {} is replaced by the run {}", runId, workerId, readRunId());
+			}
+			runReplaced = true;
+			ownedPartitions.clear();
+			return false;
+		}
+		return true;
+
+	}
+
+	/* Resolve the test folder under the lock of its folder path. The folder registry is checked first, so a folder which is created by another worker is not created again.
+	 * Only the Rally calls of the same folder path wait for each other; the registry file is locked only to append the created folder.
+	 * Each line of the registry is "projectRef<TAB>folderPath<TAB>folderRef" */
+
+	private String resolveSharedTestFolder(String projectRef, String folderPath, Callable<String> loader) throws Exception {
+
+		String registryKey = projectRef + SEPARATOR + folderPath;
+		String folderRef = readFolderRegistry(registryKey);
+		if (folderRef != null) {
+			return folderRef;
+		}
+		return withLock("folder-locks/" + Integer.toHexString(registryKey.hashCode()) + ".lock", () -> {
+			String registeredFolderRef = readFolderRegistry(registryKey);
+			if (registeredFolderRef != null) {
+				return registeredFolderRef;
+			}
+			String createdFolderRef = loader.call();
+			if (createdFolderRef != null) {
+				withLock("folders.lock", () -> {
+					Files.write(shardDirectory.resolve("test_folders.tsv"), (registryKey + SEPARATOR + createdFolderRef + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+							StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+					return null;
+				});
+				folderRegistry.put(registryKey, createdFolderRef);
+			}
+			return createdFolderRef;
+		});
+
+	}
+
+	/* Get the folder of the registry key. The lines which are appended to the registry since the last read are added to the in-memory registry first.
+	 * A line which is still being written by another worker is read on the next call */
+
+	private synchronized String readFolderRegistry(String registryKey) throws IOException {
+
+		String folderRef = folderRegistry.get(registryKey);
+		Path registryFile = shardDirectory.resolve("test_folders.tsv");
+		if (folderRef != null || !Files.exists(registryFile)) {
+			return folderRef;
+		}
+		try (FileChannel channel = FileChannel.open(registryFile, StandardOpenOption.READ)) {
+			if (channel.size() <= folderRegistryOffset) {
+				return null;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, channel.size() - folderRegistryOffset));
+			int readCount;
+			do {
+				readCount = channel.read(buffer, folderRegistryOffset + buffer.position());
+			} while (readCount > 0 && buffer.hasRemaining());
+			byte[] appendedBytes = buffer.array();
+			int lineStart = 0;
+			for (int index = 0; index < buffer.position(); index++) {
+				if (appendedBytes[index] == '\n') {
+					String line = new String(appendedBytes, lineStart, index - lineStart, StandardCharsets.UTF_8).trim();
+					int separatorIndex = line.lastIndexOf(SEPARATOR);
+					if (separatorIndex > 0) {
+						folderRegistry.putIfAbsent(line.substring(0, separatorIndex), line.substring(separatorIndex + 1));
+					}
+					lineStart = index + 1;
+				}
+			}
+			folderRegistryOffset += lineStart;
+		}
+		return folderRegistry.get(registryKey);
+
+	}
+
+	/* Call the action while the lock file is locked. The file lock is held by the process, so the threads of this process take the process lock of the same file first.
+	 * Each lock file has its own process lock, so a lease renewal does not wait for a test folder which is resolved under a folder path lock.
+	 * It is a blocking call: it waits until the other workers release the lock */
+
+	private <T> T withLock(String lockFileName, Callable<T> action) throws Exception {
+
+		Path lockFile = shardDirectory.resolve(lockFileName).toAbsolutePath().normalize();
+		Files.createDirectories(lockFile.getParent());
+		ReentrantLock processLock = processLocks.computeIfAbsent(lockFile, file -> new ReentrantLock());
+		processLock.lock();
+		try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			FileLock fileLock = channel.lock();
+			try {
+				return action.call();
+			} finally {
+				fileLock.release();
+			}
+		} finally {
+			processLock.unlock();
+		}
+
+	}
+
+	/* Read the lease of the partition. Each lease file is "workerId<TAB>expiresAtMillis<TAB>runId<TAB>generation". The generation is increased on each claim,
+	 * so a worker can tell its own lease from a lease which is claimed again. Returns null when the partition is not claimed in this run yet */
+
+	private Lease readLease(int partition) throws IOException {
+
+		Path leaseFile = getPartitionFile(partition, "lease");
+		if (!Files.exists(leaseFile)) {
+			return null;
+		}
+		String[] values = new String(Files.readAllBytes(leaseFile), StandardCharsets.UTF_8).trim().split(SEPARATOR);
+		if (values.length != 4 || !values[2].equals(runId)) {
+			return null;
+		}
+		try {
+			return new Lease(values[0], Long.parseLong(values[1]), Long.parseLong(values[3]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+
+	}
+
+	// Write the lease to a temporary file and move it over the lease file, so a worker never reads a partly written lease
+
+	private void writeLease(int partition, Lease lease) throws IOException {
+
+		Path leaseFile = getPartitionFile(partition, "lease");
+		Path temporaryFile = leaseFile.resolveSibling(leaseFile.getFileName() + "." + workerId);
+		Files.write(temporaryFile, (lease.workerId + SEPARATOR + lease.expiresAt + SEPARATOR + runId + SEPARATOR + lease.generation).getBytes(StandardCharsets.UTF_8));
+		Files.move(temporaryFile, leaseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+	}
+
+	private Path getPartitionFile(int partition, String extension) {
+
+		return shardDirectory.resolve(String.format("partition-%03d.%s", partition, extension));
+
+	}
+
+	private Path getKeyFile(String run, int partition) {
+
+		return shardDirectory.resolve("keys-" + run).resolve(String.format("partition-%03d.keys", partition));
+
+	}
+
+	private Path getWorkerDirectory(String worker) {
+
+		return shardDirectory.resolve("workers").resolve(worker);
+
+	}
+
+	private static void delete(Path path) throws IOException {
+
+		if (Files.isDirectory(path)) {
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+				for (Path child : children) {
+					delete(child);
+				}
+			}
+		}
+		Files.deleteIfExists(path);
+
+	}
+
+	private static String getDefaultWorkerId() {
+
+		String processName = ManagementFactory.getRuntimeMXBean().getName();
+		String processId = processName.contains("@") ? processName.substring(0, processName.indexOf('@')) : processName;
+		try {
+			return InetAddress.getLocalHost().getHostName() + "-" + processId;
+		} catch (IOException e) {
+			return "worker-" + processId;
+		}
+
+	}
+
+	private static class Lease {
+
+		final String workerId;
+		final long expiresAt;
+		final long generation;
+
+		Lease(String workerId, long expiresAt, long generation) {
+			this.workerId = workerId;
+			this.expiresAt = expiresAt;
+			this.generation = generation;
+		}
+
+		boolean isSameLease(Lease lease) {
+			return workerId.equals(lease.workerId) && generation == lease.generation;
+		}
+
+	}
+
+	// Returns only the keys of the partitions which are still held by this worker
+
+	private class PartitionIterator implements Iterator<String> {
+
+		private final Iterator<String> testcaseKeys;
+		private String nextKey;
+
+		PartitionIterator(Iterator<String> testcaseKeys) {
+			this.testcaseKeys = testcaseKeys;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (nextKey == null && testcaseKeys.hasNext()) {
+				String key = testcaseKeys.next();
+				if (owns(key)) {
+					nextKey = key;
+				}
+			}
+			return nextKey != null;
+		}
+
+		@Override
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			String key = nextKey;
+			nextKey = null;
+			return key;
+		}
+
+	}
+
+}
@@ -0,0 +1,269 @@
+package com.optum.coe.automation.rally;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class keeps the delta sync state: the high-water mark of the last delta sync and the fingerprint of each migrated Jira testcase.
+ * 1. The high-water mark is the time up to which the Jira changes are already synced. The next delta sync asks Jira only for the testcases updated after it
+ * 2. The fingerprint of a testcase is the hash of its last synced fields, steps and the ids of its attachments. See TestcaseFingerprint
+ * 3. The Rally testcase reference is kept with the fingerprint, so the Rally testcase is not searched again
+ * 4. A testcase which is skipped because its Rally testcase is not known is kept as skipped, so the next delta sync tries it again even when it is not changed
+ * When DELTA_SYNC_STATE_FILE is configured, the state is appended to the file and loaded again in the next run. The last record of a key wins.
+ * The file is compacted when it is loaded, so it keeps only the last high-water mark and one record per testcase.
+ * Each line of the file is "hwm<TAB>epochMillis", "case<TAB>key<TAB>rallyTestcaseRef<TAB>fingerprint" or "skip<TAB>key" */
+
+public class SyncStateStore {
+
+	// Logger Initialization for SyncStateStore Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String SEPARATOR = "\t";
+	private static final String HIGH_WATER_MARK_RECORD = "hwm";
+	private static final String CASE_RECORD = "case";
+	private static final String SKIP_RECORD = "skip";
+
+	private static SyncStateStore instance;
+
+	private final ConcurrentHashMap<String, TestcaseState> statesByKey = new ConcurrentHashMap<String, TestcaseState>();
+	private final Set<String> skippedKeys = ConcurrentHashMap.newKeySet();
+	private final Path stateFile;
+	private volatile long highWaterMark;
+	private BufferedWriter stateWriter;
+
+	// A Constructor which loads the persisted state from the given file. The state is kept only in memory when the file is null
+
+	public SyncStateStore(Path stateFile) {
+
+		this.stateFile = stateFile;
+		if (stateFile != null) {
+			load();
+		}
+
+	}
+
+	// Get the process-wide store. State file location is loaded from DELTA_SYNC_STATE_FILE in .properties file
+
+	public static synchronized SyncStateStore getInstance() {
+
+		if (instance == null) {
+			String stateFileLocation = ConfigLoader.getConfigValue("DELTA_SYNC_STATE_FILE", null);
+			instance = new SyncStateStore(stateFileLocation == null ? null : Paths.get(stateFileLocation));
+		}
+		return instance;
+
+	}
+
+	// Get the high-water mark in epoch milliseconds. Returns 0 when no delta sync is completed yet
+
+	public long getHighWaterMark() {
+
+		return highWaterMark;
+
+	}
+
+	// Set the high-water mark after a delta sync in which all the changed testcases are synced
+
+	public void setHighWaterMark(long epochMillis) {
+
+		highWaterMark = epochMillis;
+		persist(HIGH_WATER_MARK_RECORD + SEPARATOR + epochMillis);
+
+	}
+
+	// Get the synced state of the given testcase key. Returns null for a testcase which is not synced yet
+
+	public TestcaseState getState(String key) {
+
+		return statesByKey.get(key);
+
+	}
+
+	/* Save the state of the testcase after it is migrated or synced. The testcase is not skipped any more.
+	 * Nothing is written when the state is not changed and the testcase was not skipped */
+
+	public void putState(String key, String rallyTestcaseRef, TestcaseFingerprint fingerprint) {
+
+		TestcaseState state = new TestcaseState(rallyTestcaseRef, fingerprint.toString());
+		boolean wasSkipped = skippedKeys.remove(key);
+		if (!state.equals(statesByKey.put(key, state)) || wasSkipped) {
+			persist(CASE_RECORD + SEPARATOR + key + SEPARATOR + rallyTestcaseRef + SEPARATOR + state.getFingerprint());
+		}
+
+	}
+
+	// Keep the testcase as skipped, so the next delta sync tries it again after the high-water mark is moved past its change
+
+	public void addSkippedKey(String key) {
+
+		if (skippedKeys.add(key)) {
+			persist(SKIP_RECORD + SEPARATOR + key);
+		}
+
+	}
+
+	// Get the testcases which are skipped by an earlier delta sync and are not synced yet
+
+	public List<String> getSkippedKeys() {
+
+		return new ArrayList<String>(skippedKeys);
+
+	}
+
+	public int size() {
+		return statesByKey.size();
+	}
+
+	// Close the state file
+
+	public synchronized void close() {
+
+		if (stateWriter != null) {
+			try {
+				stateWriter.close();
+			} catch (IOException e) {
+				logger.error("Error occurred while closing the delta sync state file {}", stateFile, e);
+			}
+			stateWriter = null;
+		}
+
+	}
+
+	// Load the persisted state. The last record of a key and the last high-water mark are kept. The file is compacted when it has older records
+
+	private void load() {
+
+		if (!Files.exists(stateFile)) {
+			return;
+		}
+		try {
+			List<String> lines = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+			for (String line : lines) {
+				String[] values = line.split(SEPARATOR);
+				if (HIGH_WATER_MARK_RECORD.equals(values[0]) && values.length == 2) {
+					highWaterMark = Long.parseLong(values[1]);
+				} else if (CASE_RECORD.equals(values[0]) && values.length == 4) {
+					statesByKey.put(values[1], new TestcaseState(values[2], values[3]));
+					skippedKeys.remove(values[1]);
+				} else if (SKIP_RECORD.equals(values[0]) && values.length == 2) {
+					skippedKeys.add(values[1]);
+				}
+			}
+			logger.info("Delta sync state of {} testcases is loaded from {}. Skipped testcases - {}", statesByKey.size(), stateFile, skippedKeys.size());
+			if (lines.size() > statesByKey.size() + skippedKeys.size() + (highWaterMark > 0 ? 1 : 0)) {
+				compact();
+			}
+		} catch (IOException | NumberFormatException e) {
+			logger.error("Failed to load the delta sync state file {}", stateFile, e);
+		}
+
+	}
+
+	// Rewrite the state file with the last high-water mark and one record per testcase
+
+	private synchronized void compact() {
+
+		close();
+		Path compactFile = stateFile.resolveSibling(stateFile.getFileName() + ".compact");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(compactFile, StandardCharsets.UTF_8)) {
+				if (highWaterMark > 0) {
+					writer.write(HIGH_WATER_MARK_RECORD + SEPARATOR + highWaterMark);
+					writer.newLine();
+				}
+				for (Map.Entry<String, TestcaseState> entry : statesByKey.entrySet()) {
+					writer.write(CASE_RECORD + SEPARATOR + entry.getKey() + SEPARATOR + entry.getValue().getRallyTestcaseRef() + SEPARATOR
+							+ entry.getValue().getFingerprint());
+					writer.newLine();
+				}
+				for (String key : skippedKeys) {
+					writer.write(SKIP_RECORD + SEPARATOR + key);
+					writer.newLine();
+				}
+			}
+			Files.move(compactFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			logger.info("Delta sync state file is compacted for {} testcases", statesByKey.size());
+		} catch (IOException e) {
+			logger.error("Failed to compact the delta sync state file {}", stateFile, e);
+		}
+
+	}
+
+	// Append the state record to the state file
+
+	private synchronized void persist(String record) {
+
+		if (stateFile == null) {
+			return;
+		}
+		try {
+			if (stateWriter == null) {
+				Path parent = stateFile.toAbsolutePath().getParent();
+				if (parent != null) {
+					Files.createDirectories(parent);
+				}
+				stateWriter = Files.newBufferedWriter(stateFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+			stateWriter.write(record);
+			stateWriter.newLine();
+			stateWriter.flush();
+		} catch (IOException e) {
+			logger.error("Failed to write the delta sync state record to the file {}", stateFile, e);
+		}
+
+	}
+
+	// Synced state of one Jira testcase
+
+	public static class TestcaseState {
+
+		private final String rallyTestcaseRef;
+		private final String fingerprint;
+
+		TestcaseState(String rallyTestcaseRef, String fingerprint) {
+			this.rallyTestcaseRef = rallyTestcaseRef;
+			this.fingerprint = fingerprint;
+		}
+
+		public String getRallyTestcaseRef() {
+			return rallyTestcaseRef;
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public TestcaseFingerprint parseFingerprint() {
+			return TestcaseFingerprint.parse(fingerprint);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof TestcaseState)) {
+				return false;
+			}
+			TestcaseState state = (TestcaseState) other;
+			return rallyTestcaseRef.equals(state.rallyTestcaseRef) && fingerprint.equals(state.fingerprint);
+		}
+
+		@Override
+		public int hashCode() {
+			return rallyTestcaseRef.hashCode() * 31 + fingerprint.hashCode();
+		}
+
+	}
+
+}
@@ -0,0 +1,217 @@
+package com.optum.coe.automation.rally;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/* This Class caches the Rally test folder references by project reference and full folder path (for example 789325818991 + /A/B/C).
+ * 1. A folder path which is already resolved is returned from the cache without any Rally call
+ * 2. When many testcases ask for the same missing folder at the same time, only the first caller queries or creates the folder and the other callers wait for its result
+ * 3. When TEST_FOLDER_CACHE_FILE is configured, resolved folders are appended to the file and loaded again in the next run */
+
+public class TestFolderCache {
+
+	// Logger Initialization for TestFolderCache Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final String SEPARATOR = "\t";
+
+	private static TestFolderCache instance;
+
+	private final ConcurrentHashMap<String, CompletableFuture<String>> folders = new ConcurrentHashMap<String, CompletableFuture<String>>();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final Path cacheFile;
+	private BufferedWriter cacheWriter;
+
+	// A Constructor which loads the persisted folder references from the given file. The cache is kept only in memory when the file is null
+
+	public TestFolderCache(Path cacheFile) {
+
+		this.cacheFile = cacheFile;
+		if (cacheFile != null) {
+			load();
+		}
+
+	}
+
+	/* Get the process-wide cache. Cache file location is loaded from TEST_FOLDER_CACHE_FILE in .properties file.
+	 * In the multi project mode each project has its own cache. See ProjectScheduler */
+
+	public static synchronized TestFolderCache getInstance() {
+
+		ProjectScheduler.Project project = ProjectScheduler.getCurrentProject();
+		if (project != null) {
+			return project.getFolderCache();
+		}
+		if (instance == null) {
+			String cacheFileLocation = ConfigLoader.getConfigValue("TEST_FOLDER_CACHE_FILE", null);
+			instance = new TestFolderCache(cacheFileLocation == null ? null : Paths.get(cacheFileLocation));
+		}
+		return instance;
+
+	}
+
+	/* Get the folder reference for the given project and folder path. The loader is called only when the path is not available in the cache
+	 * and no other caller is loading the same path. Returns null when the loader could not resolve the folder */
+
+	public String resolve(String projectRef, String folderPath, Callable<String> loader) throws IOException {
+
+		String key = getKey(projectRef, folderPath);
+		CompletableFuture<String> future = new CompletableFuture<String>();
+		CompletableFuture<String> existing = folders.putIfAbsent(key, future);
+		if (existing != null) {
+			hitCount.incrementAndGet();
+			MigrationMetrics.getInstance().recordFolderCacheLookup(true);
+			return await(existing, folderPath);
+		}
+
+		missCount.incrementAndGet();
+		MigrationMetrics.getInstance().recordFolderCacheLookup(false);
+		String folderRef;
+		try {
+			folderRef = loader.call();
+		} catch (Exception e) {
+			// Remove the failed entry so that the next caller can try again
+			folders.remove(key, future);
+			future.completeExceptionally(e);
+			throw new IOException("Failed to resolve the test folder " + folderPath, e);
+		}
+
+		if (folderRef == null) {
+			folders.remove(key, future);
+		} else {
+			persist(key, folderRef);
+		}
+		future.complete(folderRef);
+		return folderRef;
+
+	}
+
+	// Get the folder reference from the cache without calling Rally. Returns null when the path is not resolved yet
+
+	public String get(String projectRef, String folderPath) {
+
+		CompletableFuture<String> future = folders.get(getKey(projectRef, folderPath));
+		return (future != null && future.isDone() && !future.isCompletedExceptionally()) ? future.join() : null;
+
+	}
+
+	// Add an already known folder reference to the cache
+
+	public void put(String projectRef, String folderPath, String folderRef) {
+
+		String key = getKey(projectRef, folderPath);
+		if (folders.putIfAbsent(key, CompletableFuture.completedFuture(folderRef)) == null) {
+			persist(key, folderRef);
+		}
+
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public int size() {
+		return folders.size();
+	}
+
+	// Close the cache file
+
+	public synchronized void close() {
+
+		if (cacheWriter != null) {
+			try {
+				cacheWriter.close();
+			} catch (IOException e) {
+				logger.error("Error occurred while closing the test folder cache file {}", cacheFile, e);
+			}
+			cacheWriter = null;
+		}
+
+	}
+
+	private static String getKey(String projectRef, String folderPath) {
+
+		return projectRef + SEPARATOR + folderPath;
+
+	}
+
+	private static String await(CompletableFuture<String> future, String folderPath) {
+
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			logger.error("Test folder {} is not resolved by another testcase", folderPath, e.getCause());
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+
+	}
+
+	// Load the persisted folder references. Each line of the file is "projectRef<TAB>folderPath<TAB>folderRef"
+
+	private void load() {
+
+		if (!Files.exists(cacheFile)) {
+			return;
+		}
+		try {
+			List<String> lines = Files.readAllLines(cacheFile, StandardCharsets.UTF_8);
+			for (String line : lines) {
+				String[] values = line.split(SEPARATOR);
+				if (values.length == 3) {
+					folders.put(getKey(values[0], values[1]), CompletableFuture.completedFuture(values[2]));
+				}
+			}
+			logger.info("{} test folder references are loaded from {}", folders.size(), cacheFile);
+		} catch (IOException e) {
+			logger.error("Failed to load the test folder cache file {}", cacheFile, e);
+		}
+
+	}
+
+	// Append the resolved folder reference to the cache file
+
+	private synchronized void persist(String key, String folderRef) {
+
+		if (cacheFile == null) {
+			return;
+		}
+		try {
+			if (cacheWriter == null) {
+				Path parent = cacheFile.toAbsolutePath().getParent();
+				if (parent != null) {
+					Files.createDirectories(parent);
+				}
+				cacheWriter = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+			cacheWriter.write(key + SEPARATOR + folderRef);
+			cacheWriter.newLine();
+			cacheWriter.flush();
+		} catch (IOException e) {
+			logger.error("Failed to write the test folder reference to the cache file {}", cacheFile, e);
+		}
+
+	}
+
+}
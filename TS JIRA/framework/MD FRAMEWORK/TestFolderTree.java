@@ -0,0 +1,176 @@
+package com.optum.coe.automation.rally;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.rallydev.rest.RallyRestApi;
+import com.rallydev.rest.request.QueryRequest;
+import com.rallydev.rest.response.QueryResponse;
+import com.rallydev.rest.util.Fetch;
+
+/* This Class loads all the Rally test folders of a project at startup and resolves the folder paths locally.
+ * 1. Page through every testfolder in the project with a minimal fetch (_ref, Name, Parent)
+ * 2. Build a parent -> children tree of the folders
+ * 3. Add every folder path of the tree to TestFolderCache, so Utils.createTestFolder does not query Rally for the existing folders.
+ *    Only the missing folders are created during the migration */
+
+public class TestFolderTree {
+
+	// Logger Initialization for TestFolderTree Class
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final int PAGE_SIZE = 2000;
+
+	private final Node root = new Node(null, null);
+
+	// Load the test folders of the given project from Rally and build the folder tree
+
+	public static TestFolderTree load(RallyRestApi restApi, String projectRef) throws IOException {
+
+		QueryRequest folderRequest = new QueryRequest("testfolder");
+		folderRequest.setFetch(new Fetch("_ref", "Name", "Parent"));
+		folderRequest.setProject(toProjectRef(projectRef));
+		folderRequest.setScopedDown(false);
+		folderRequest.setScopedUp(false);
+		folderRequest.setOrder("ObjectID");
+		folderRequest.setPageSize(PAGE_SIZE);
+		folderRequest.setLimit(Integer.MAX_VALUE);
+
+		QueryResponse folderResponse = Utils.queryRally(restApi, folderRequest);
+		if (!folderResponse.wasSuccessful()) {
+			for (String error : folderResponse.getErrors()) {
+				logger.error(error);
+			}
+			throw new IOException("Failed to load the test folders for the project " + projectRef);
+		}
+
+		// Create a node for each folder and then link each node to its parent node. The nodes are kept in the query order
+		Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+		Map<String, String> parentRefs = new HashMap<String, String>();
+		for (JsonElement element : folderResponse.getResults()) {
+			JsonObject folder = element.getAsJsonObject();
+			String folderRef = folder.get("_ref").getAsString();
+			nodes.put(folderRef, new Node(folderRef, folder.get("Name").getAsString().trim()));
+			JsonElement parent = folder.get("Parent");
+			if (parent != null && parent.isJsonObject()) {
+				parentRefs.put(folderRef, parent.getAsJsonObject().get("_ref").getAsString());
+			}
+		}
+
+		TestFolderTree tree = new TestFolderTree();
+		for (Node node : nodes.values()) {
+			Node parent = parentRefs.containsKey(node.ref) ? nodes.get(parentRefs.get(node.ref)) : tree.root;
+			if (parent == null) {
+				logger.info("Parent folder of {} is not in the project. The folder is skipped", node.ref);
+				continue;
+			}
+			// When the same folder name is available twice under a parent, the oldest one (lowest ObjectID) is used like the folder query in Utils.findOrCreateTestFolder
+			parent.children.putIfAbsent(node.name, node);
+		}
+
+		logger.info("{} test folders are loaded from Rally for the project {}", nodes.size(), projectRef);
+		return tree;
+
+	}
+
+	// Get the folder reference for the given folder path, for example /A/B/C. Returns null when the path is not available in the tree
+
+	public String getFolderRef(String folderPath) {
+
+		Node node = root;
+		for (String folderName : folderPath.split("/")) {
+			if (folderName.trim().isEmpty()) {
+				continue;
+			}
+			node = node.children.get(folderName.trim());
+			if (node == null) {
+				return null;
+			}
+		}
+		return node.ref;
+
+	}
+
+	// Get the folder path of each folder reference of the tree, for example /A/B/C. It is used to compare the test folder of a Rally testcase with the Jira folder
+
+	public Map<String, String> getFolderPaths() {
+
+		Map<String, String> folderPaths = new HashMap<String, String>();
+		addFolderPaths(folderPaths, root, "");
+		return folderPaths;
+
+	}
+
+	private void addFolderPaths(Map<String, String> folderPaths, Node node, String parentPath) {
+
+		for (Node child : node.children.values()) {
+			String folderPath = parentPath + "/" + child.name;
+			folderPaths.put(child.ref, folderPath);
+			addFolderPaths(folderPaths, child, folderPath);
+		}
+
+	}
+
+	// Add every folder path of the tree to the given cache. Returns the number of folder paths added
+
+	public int addTo(TestFolderCache folderCache, String projectRef) {
+
+		return addTo(folderCache, projectRef, root, "");
+
+	}
+
+	private int addTo(TestFolderCache folderCache, String projectRef, Node node, String parentPath) {
+
+		int count = 0;
+		for (Node child : node.children.values()) {
+			String folderPath = parentPath + "/" + child.name;
+			folderCache.put(projectRef, folderPath, child.ref);
+			count += 1 + addTo(folderCache, projectRef, child, folderPath);
+		}
+		return count;
+
+	}
+
+	/* Load the folder tree of the project and add it to the cache. This method is called once at startup when TEST_FOLDER_PREFETCH_ENABLED is true.
+	 * A failed prefetch is only logged, the folders are then resolved one by one during the migration */
+
+	public static void prefetch(RallyRestApi restApi, String projectRef, TestFolderCache folderCache) {
+
+		try {
+			int count = load(restApi, projectRef).addTo(folderCache, projectRef);
+			logger.info("{} test folder paths are added to the test folder cache", count);
+		} catch (IOException e) {
+			logger.error("Failed to prefetch the test folders for the project {}", projectRef, e);
+		}
+
+	}
+
+	// Rally query expects the project as a reference. The config file may have only the project OID
+
+	static String toProjectRef(String projectRef) {
+
+		return projectRef.startsWith("/") || projectRef.startsWith("http") ? projectRef : "/project/" + projectRef;
+
+	}
+
+	private static class Node {
+
+		private final String ref;
+		private final String name;
+		private final Map<String, Node> children = new LinkedHashMap<String, Node>();
+
+		Node(String ref, String name) {
+			this.ref = ref;
+			this.name = name;
+		}
+
+	}
+
+}
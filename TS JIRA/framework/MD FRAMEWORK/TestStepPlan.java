@@ -0,0 +1,262 @@
+package com.optum.coe.automation.rally;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.gson.JsonObject;
+
+/* This Class plans the Rally requests which make the test steps of an existing Rally testcase same as the Jira test steps, instead of creating all the steps again.
+ * 1. Each Jira step is matched with an existing Rally step: first a Rally step with the same input and expected result (a moved step),
+ *    then the Rally step at the same position (an edited step), then any Rally step which is still not matched
+ * 2. A matched step is updated only with the fields which are different. Its StepIndex is set only when it is not already at its position
+ * 3. A Jira step without a Rally step is created at its position and a Rally step without a Jira step is deleted
+ * The operations are in the order they must be applied: the deletes first, then the updates and creates in the Jira step order.
+ * Rally inserts a step at the given StepIndex and moves the next steps down, so each step is placed after all the steps before it are placed */
+
+public class TestStepPlan {
+
+	public enum OperationType {
+		CREATE, UPDATE, DELETE
+	}
+
+	private final List<Operation> operations = new ArrayList<Operation>();
+	private int unchangedCount;
+
+	private TestStepPlan() {
+	}
+
+	/* Plan the operations for the Jira test steps of the testcase and its existing Rally test steps.
+	 * The Jira steps are in the Jira step index order and the Rally steps are in the StepIndex order */
+
+	public static TestStepPlan create(List<JiraTestStep> jiraSteps, List<RallyStep> rallySteps, String testcaseRef) {
+
+		TestStepPlan plan = new TestStepPlan();
+		RallyStep[] matches = new RallyStep[jiraSteps.size()];
+		Set<RallyStep> unmatched = new LinkedHashSet<RallyStep>(rallySteps);
+
+		// Same input and expected result. A step which is moved in Jira keeps its Rally step
+		Map<String, Deque<RallyStep>> stepsByContent = new HashMap<String, Deque<RallyStep>>();
+		for (RallyStep rallyStep : rallySteps) {
+			stepsByContent.computeIfAbsent(getContent(rallyStep.getInput(), rallyStep.getExpectedResult()), content -> new ArrayDeque<RallyStep>()).add(rallyStep);
+		}
+		for (int i = 0; i < matches.length; i++) {
+			JiraTestStep jiraStep = jiraSteps.get(i);
+			Deque<RallyStep> sameContent = stepsByContent.get(getContent(JiraToRallyMapper.getInput(jiraStep), jiraStep.getExpectedresult()));
+			if (sameContent != null && !sameContent.isEmpty()) {
+				matches[i] = sameContent.poll();
+				unmatched.remove(matches[i]);
+			}
+		}
+		// Same position. A step which is edited in Jira is updated in place
+		for (int i = 0; i < matches.length && i < rallySteps.size(); i++) {
+			if (matches[i] == null && unmatched.remove(rallySteps.get(i))) {
+				matches[i] = rallySteps.get(i);
+			}
+		}
+		// Any remaining Rally step is reused before a new step is created
+		for (int i = 0; i < matches.length && !unmatched.isEmpty(); i++) {
+			if (matches[i] == null) {
+				matches[i] = unmatched.iterator().next();
+				unmatched.remove(matches[i]);
+			}
+		}
+
+		// Current order of the Rally steps after the deletes. A created step is added as null
+		List<RallyStep> order = new ArrayList<RallyStep>(rallySteps);
+		for (RallyStep rallyStep : unmatched) {
+			plan.operations.add(new Operation(OperationType.DELETE, null, rallyStep.getRef(), null));
+			order.remove(rallyStep);
+		}
+
+		for (int i = 0; i < matches.length; i++) {
+			JiraTestStep jiraStep = jiraSteps.get(i);
+			RallyStep rallyStep = matches[i];
+			if (rallyStep == null) {
+				JsonObject fields = JiraToRallyMapper.toRallyTestStep(jiraStep, testcaseRef);
+				fields.addProperty("StepIndex", i);
+				plan.operations.add(new Operation(OperationType.CREATE, jiraStep, null, fields));
+				order.add(i, null);
+				continue;
+			}
+			JsonObject fields = new JsonObject();
+			String input = JiraToRallyMapper.getInput(jiraStep);
+			if (!Objects.equals(normalize(input), normalize(rallyStep.getInput()))) {
+				fields.addProperty("Input", input);
+			}
+			if (!Objects.equals(normalize(jiraStep.getExpectedresult()), normalize(rallyStep.getExpectedResult()))) {
+				fields.addProperty("ExpectedResult", jiraStep.getExpectedresult());
+			}
+			if (order.get(i) != rallyStep) {
+				order.remove(rallyStep);
+				order.add(i, rallyStep);
+				fields.addProperty("StepIndex", i);
+			}
+			if (fields.size() == 0) {
+				plan.unchangedCount++;
+			} else {
+				plan.operations.add(new Operation(OperationType.UPDATE, jiraStep, rallyStep.getRef(), fields));
+			}
+		}
+		return plan;
+
+	}
+
+	public List<Operation> getOperations() {
+		return operations;
+	}
+
+	public boolean isEmpty() {
+		return operations.isEmpty();
+	}
+
+	public int getCount(OperationType type) {
+
+		int count = 0;
+		for (Operation operation : operations) {
+			if (operation.getType() == type) {
+				count++;
+			}
+		}
+		return count;
+
+	}
+
+	public int getUnchangedCount() {
+		return unchangedCount;
+	}
+
+	// Returns true when all the operations are applied in Rally
+
+	public boolean isSuccessful() {
+
+		for (Operation operation : operations) {
+			if (!operation.isSuccessful()) {
+				return false;
+			}
+		}
+		return true;
+
+	}
+
+	@Override
+	public String toString() {
+
+		return "created " + getCount(OperationType.CREATE) + ", updated " + getCount(OperationType.UPDATE) + ", deleted " + getCount(OperationType.DELETE)
+				+ ", unchanged " + unchangedCount;
+
+	}
+
+	private static String getContent(String input, String expectedResult) {
+
+		return normalize(input) + '\u0000' + normalize(expectedResult);
+
+	}
+
+	// Rally returns an empty text for a step field which is not set
+
+	private static String normalize(String value) {
+
+		return value == null ? "" : value.trim();
+
+	}
+
+	// Existing Rally test step with the fields which are compared with the Jira test step
+
+	public static class RallyStep {
+
+		private final String ref;
+		private final int stepIndex;
+		private final String input;
+		private final String expectedResult;
+
+		public RallyStep(String ref, int stepIndex, String input, String expectedResult) {
+			this.ref = ref;
+			this.stepIndex = stepIndex;
+			this.input = input;
+			this.expectedResult = expectedResult;
+		}
+
+		public String getRef() {
+			return ref;
+		}
+
+		public int getStepIndex() {
+			return stepIndex;
+		}
+
+		public String getInput() {
+			return input;
+		}
+
+		public String getExpectedResult() {
+			return expectedResult;
+		}
+
+	}
+
+	/* One Rally request of the plan. The Jira step is null for a delete and the step reference is null for a create.
+	 * The result of the request is set when the plan is applied */
+
+	public static class Operation {
+
+		private final OperationType type;
+		private final JiraTestStep step;
+		private final JsonObject fields;
+		private String stepRef;
+		private List<String> errors;
+
+		Operation(OperationType type, JiraTestStep step, String stepRef, JsonObject fields) {
+			this.type = type;
+			this.step = step;
+			this.stepRef = stepRef;
+			this.fields = fields;
+		}
+
+		public OperationType getType() {
+			return type;
+		}
+
+		public JiraTestStep getStep() {
+			return step;
+		}
+
+		public String getStepRef() {
+			return stepRef;
+		}
+
+		public JsonObject getFields() {
+			return fields;
+		}
+
+		public List<String> getErrors() {
+			return errors;
+		}
+
+		public boolean isSuccessful() {
+			return errors != null && errors.isEmpty();
+		}
+
+		// Set the result of the request. The reference of a created step is set here
+
+		void setResult(String stepRef, List<String> errors) {
+			if (stepRef != null) {
+				this.stepRef = stepRef;
+			}
+			this.errors = errors;
+		}
+
+		@Override
+		public String toString() {
+			return type + " " + (step == null ? stepRef : "step " + step.getIndex());
+		}
+
+	}
+
+}
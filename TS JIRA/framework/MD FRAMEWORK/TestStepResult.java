@@ -0,0 +1,36 @@
+package com.optum.coe.automation.rally;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Result of a Rally test step creation. The Jira test step is kept in the result, so that the failed steps can be submitted again
+
+public class TestStepResult {
+
+	private final JiraTestStep step;
+	private final String stepRef;
+	private final List<String> errors;
+
+	public TestStepResult(JiraTestStep step, String stepRef, List<String> errors) {
+		this.step = step;
+		this.stepRef = stepRef;
+		this.errors = errors == null ? new ArrayList<String>() : errors;
+	}
+
+	public JiraTestStep getStep() {
+		return step;
+	}
+
+	public String getStepRef() {
+		return stepRef;
+	}
+
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	public boolean isSuccessful() {
+		return stepRef != null;
+	}
+
+}
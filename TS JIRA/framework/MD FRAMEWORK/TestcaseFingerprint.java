@@ -0,0 +1,190 @@
+package com.optum.coe.automation.rally;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/* Fingerprint of the last migrated version of a Jira testcase. It is used by the delta sync to find what is changed in Jira since the last sync.
+ * 1. Each Rally testcase field (Name, Priority, Ready, Tags, TestFolder) has its own hash, so only the changed fields are sent to Rally
+ * 2. The test steps have one hash of all the steps in the index order
+ * 3. The attachments are kept as the sorted Jira attachment ids, so only the new attachments are uploaded
+ * A part which is not known (for example the attachments of a testcase which was migrated before the delta sync) is not in the fingerprint.
+ * The text form is "part=value;part=value" */
+
+public class TestcaseFingerprint {
+
+	public static final String NAME = "Name";
+	public static final String PRIORITY = "Priority";
+	public static final String READY = "Ready";
+	public static final String TAGS = "Tags";
+	public static final String TEST_FOLDER = "TestFolder";
+	public static final String STEPS = "Steps";
+	public static final String ATTACHMENTS = "Attachments";
+
+	// Rally testcase fields which are updated by the delta sync
+	public static final List<String> TESTCASE_FIELDS = Collections.unmodifiableList(Arrays.asList(NAME, PRIORITY, READY, TAGS, TEST_FOLDER));
+
+	private static final char PART_SEPARATOR = ';';
+	private static final char VALUE_SEPARATOR = '=';
+	private static final String ID_SEPARATOR = ",";
+
+	private final Map<String, String> parts;
+
+	private TestcaseFingerprint(Map<String, String> parts) {
+
+		this.parts = parts;
+
+	}
+
+	// Fingerprint of the testcase fields and the test steps of the Jira testcase details. The attachments are added with withAttachments
+
+	public static TestcaseFingerprint of(JsonObject jiraTestcaseJson) {
+
+		Map<String, String> parts = new LinkedHashMap<String, String>();
+		parts.put(NAME, hash(getString(jiraTestcaseJson, "name")));
+		parts.put(PRIORITY, hash(getString(jiraTestcaseJson, "priority")));
+		parts.put(READY, hash(getString(jiraTestcaseJson, "status")));
+		JsonElement labels = jiraTestcaseJson.get("labels");
+		parts.put(TAGS, hash(labels == null || labels.isJsonNull() ? null : labels.toString()));
+		parts.put(TEST_FOLDER, hash(getString(jiraTestcaseJson, "folder")));
+
+		StringBuilder steps = new StringBuilder();
+		for (JiraTestStep step : MigrationEngine.getSortedTestSteps(jiraTestcaseJson)) {
+			steps.append(step.getIndex()).append('\u0000').append(step.getId()).append('\u0000').append(JiraToRallyMapper.getInput(step)).append('\u0000')
+					.append(step.getExpectedresult()).append('\u0001');
+		}
+		parts.put(STEPS, hash(steps.toString()));
+		return new TestcaseFingerprint(parts);
+
+	}
+
+	// Parse the text form of the fingerprint. Returns null for a null or empty text
+
+	public static TestcaseFingerprint parse(String text) {
+
+		if (text == null || text.isEmpty()) {
+			return null;
+		}
+		Map<String, String> parts = new LinkedHashMap<String, String>();
+		int start = 0;
+		while (start < text.length()) {
+			int end = text.indexOf(PART_SEPARATOR, start);
+			if (end < 0) {
+				end = text.length();
+			}
+			int separator = text.indexOf(VALUE_SEPARATOR, start);
+			if (separator > start && separator < end) {
+				parts.put(text.substring(start, separator), text.substring(separator + 1, end));
+			}
+			start = end + 1;
+		}
+		return new TestcaseFingerprint(parts);
+
+	}
+
+	// Copy of this fingerprint with the given Jira attachment ids
+
+	public TestcaseFingerprint withAttachments(Collection<String> attachmentIds) {
+
+		Map<String, String> copy = new LinkedHashMap<String, String>(parts);
+		copy.put(ATTACHMENTS, String.join(ID_SEPARATOR, new TreeSet<String>(attachmentIds)));
+		return new TestcaseFingerprint(copy);
+
+	}
+
+	// Copy of this fingerprint with the part of the given fingerprint. The part is removed when the given fingerprint does not have it
+
+	public TestcaseFingerprint withPart(String part, TestcaseFingerprint source) {
+
+		Map<String, String> copy = new LinkedHashMap<String, String>(parts);
+		String value = source == null ? null : source.parts.get(part);
+		if (value == null) {
+			copy.remove(part);
+		} else {
+			copy.put(part, value);
+		}
+		return new TestcaseFingerprint(copy);
+
+	}
+
+	public boolean has(String part) {
+
+		return parts.containsKey(part);
+
+	}
+
+	// Returns true when the part is changed compared to the previous fingerprint. A part which is not known in the previous fingerprint is changed
+
+	public boolean isChanged(String part, TestcaseFingerprint previous) {
+
+		return previous == null || !previous.parts.containsKey(part) || !previous.parts.get(part).equals(parts.get(part));
+
+	}
+
+	// The Jira attachment ids of the fingerprint, or an empty list when the attachments are not known
+
+	public List<String> getAttachmentIds() {
+
+		String ids = parts.get(ATTACHMENTS);
+		List<String> attachmentIds = new ArrayList<String>();
+		if (ids != null && !ids.isEmpty()) {
+			Collections.addAll(attachmentIds, ids.split(ID_SEPARATOR));
+		}
+		return attachmentIds;
+
+	}
+
+	@Override
+	public String toString() {
+
+		StringBuilder text = new StringBuilder();
+		for (Map.Entry<String, String> part : parts.entrySet()) {
+			if (text.length() > 0) {
+				text.append(PART_SEPARATOR);
+			}
+			text.append(part.getKey()).append(VALUE_SEPARATOR).append(part.getValue());
+		}
+		return text.toString();
+
+	}
+
+	// Id of the Jira attachment as it is kept in the fingerprint
+
+	public static String getAttachmentId(JiraAttachment attachment) {
+
+		return String.valueOf(attachment.getId());
+
+	}
+
+	// First 16 hex digits of the SHA-256 of the value
+
+	private static String hash(String value) {
+
+		MessageDigest digest = AttachmentContentStore.newDigest();
+		byte[] bytes = digest.digest((value == null ? "\u0000null" : value).getBytes(StandardCharsets.UTF_8));
+		StringBuilder hash = new StringBuilder(16);
+		for (int i = 0; i < 8; i++) {
+			hash.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+		}
+		return hash.toString();
+
+	}
+
+	private static String getString(JsonObject json, String memberName) {
+
+		JsonElement element = json.get(memberName);
+		return element == null || element.isJsonNull() ? null : element.getAsString();
+
+	}
+
+}
@@ -1,13 +1,15 @@
 package com.optum.coe.automation.rally;
 
 import java.io.IOException;
-import java.net.URI;
 
 import org.apache.http.HttpResponse;
-import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -15,10 +17,13 @@ import com.google.gson.JsonObject;
 import com.rallydev.rest.RallyRestApi;
 import com.rallydev.rest.request.CreateRequest;
 import com.rallydev.rest.request.QueryRequest;
+import com.rallydev.rest.request.UpdateRequest;
 import com.rallydev.rest.response.CreateResponse;
 import com.rallydev.rest.response.QueryResponse;
+import com.rallydev.rest.response.UpdateResponse;
 import com.rallydev.rest.util.Fetch;
 import com.rallydev.rest.util.QueryFilter;
+import com.rallydev.rest.util.Ref;
 
 import org.apache.http.HttpEntity;
 
@@ -33,22 +38,37 @@ public class Utils {
  * This method returns CloseableHttpClient's object instance once connection is established */
 	
 	public static HttpEntity getJiraResponse(String url, String apiKey) {
+		
+		return getJiraResponse(ConnectionManager.getJiraClient(), url, apiKey);
+		
+	}
+	
+/* Overloaded method to get the Jira response using the given http client. The client is shared and pooled, so it is not closed here.
+ * The caller should consume the returned HttpEntity so that the connection is released back to the pool */
+	
+	public static HttpEntity getJiraResponse(CloseableHttpClient connection, String url, String apiKey) {
 			
-		CloseableHttpClient connection = HttpClients.createDefault();
-		HttpGet request = new HttpGet(url);
-		request.setHeader("Authorization", "Bearer " + apiKey);
-        request.setHeader("Accept", "application/json");
-        HttpResponse response = null;
+		HttpEntity entity;
 		try {
-			response = connection.execute(request);
-		} catch (ClientProtocolException e) {
-			logger.error("Error occurred in Jira connection" , e);
+			// The Jira GET request is idempotent, so it is retried on a connection error, 429 or 5xx answer through the Jira call layer
+			entity = ApiCallExecutor.getInstance(ApiCallExecutor.JIRA).execute(getEndpoint("GET", url), true, () -> {
+				HttpGet request = new HttpGet(url);
+				request.setHeader("Authorization", "Bearer " + apiKey);
+				request.setHeader("Accept", "application/json");
+				HttpResponse response = connection.execute(request);
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode == 429 || statusCode >= 500) {
+					EntityUtils.consumeQuietly(response.getEntity());
+					throw ApiCallExecutor.getException("Jira request is failed for " + url, response);
+				}
+				return response.getEntity();
+			});
 		} catch (IOException e) {
 			logger.error("Error occurred in Jira connection" , e);
+			return null;
 		}
-        HttpEntity entity = response.getEntity();
 		if (entity != null) {
-			logger.info("Successfully returned HttpEntity response");
+			logger.debug("Successfully returned HttpEntity response");
 			return entity;
 		} else {
 			
@@ -59,125 +79,207 @@ public class Utils {
 
 	}
 
-	
+	/* Get the rate limit endpoint name of the given request. The query string and the ids in the path are not part of the endpoint,
+	 * for example "GET /rest/atm/1.0/testcase/ABC-T12?fields=name" is "GET /rest/atm/1.0/testcase/{id}" */
+
+	static String getEndpoint(String method, String url) {
+
+		String path = url.replaceFirst("^[a-zA-Z]+://[^/]+", "");
+		int queryIndex = path.indexOf('?');
+		if (queryIndex >= 0) {
+			path = path.substring(0, queryIndex);
+		}
+		return method + " " + path.replaceAll("/(?:[A-Za-z][A-Za-z0-9_]*-[A-Za-z]*\\d+|\\d+)(?=/|$)", "/{id}");
+
+	}
+
+	// Query Rally through the Rally call layer. A query is idempotent, so it is retried on a connection error, 429 or 5xx answer
+
+	static QueryResponse queryRally(RallyRestApi restApi, QueryRequest request) throws IOException {
+
+		return ApiCallExecutor.getInstance(ApiCallExecutor.RALLY).execute(getEndpoint("GET", request.toUrl()), true, () -> restApi.query(request));
+
+	}
+
+	/* Create a Rally record through the Rally call layer. A create is retried only when Rally did not process it, that is a 429/503 answer
+	 * or a concurrency conflict error, so that the record is not created twice */
+
+	static CreateResponse createRallyRecord(RallyRestApi restApi, CreateRequest request) throws IOException {
+
+		return ApiCallExecutor.getInstance(ApiCallExecutor.RALLY).execute(getEndpoint("POST", request.toUrl()), false, () -> {
+			CreateResponse createResponse = restApi.create(request);
+			if (!createResponse.wasSuccessful() && isRetryableRallyError(createResponse.getErrors())) {
+				throw new ApiCallException("Rally create request is not processed: " + String.join(", ", createResponse.getErrors()), 409, 0, true);
+			}
+			return createResponse;
+		});
+
+	}
+
+	/* Update the given fields of a Rally record through the Rally call layer. An update sets the same values again when it is repeated,
+	 * so it is retried on a connection error, 429 or 5xx answer and on a concurrency conflict error. The ids of the record are not part of the rate limit endpoint */
+
+	static UpdateResponse updateRallyRecord(RallyRestApi restApi, String ref, JsonObject fields) throws IOException {
+
+		UpdateRequest request = new UpdateRequest(ref, fields);
+		return ApiCallExecutor.getInstance(ApiCallExecutor.RALLY).execute("POST /" + Ref.getTypeFromRef(ref) + "/{id}", true, () -> {
+			UpdateResponse updateResponse = restApi.update(request);
+			if (!updateResponse.wasSuccessful() && isRetryableRallyError(updateResponse.getErrors())) {
+				throw new ApiCallException("Rally update request is not processed: " + String.join(", ", updateResponse.getErrors()), 409, 0, true);
+			}
+			return updateResponse;
+		});
+
+	}
+
+	private static boolean isRetryableRallyError(String[] errors) {
+
+		for (String error : errors) {
+			if (error.contains("Concurrency conflict")) {
+				return true;
+			}
+		}
+		return false;
+
+	}
+
 	 /* Check if the Jira folder structure is available in Rally
 	 *      a. If folder structure is not available in rally, then create the same Jira folder structure in rally for the testcase 
-	 *      b. If folder structure is available in rally, no action is required */
+	 *      b. If folder structure is available in rally, no action is required
+	 * Each folder path prefix is resolved through TestFolderCache, so a path which is already resolved by another testcase is not queried again.
+	 * In a sharded migration the folder is resolved through the folder registry of all the shard workers. See ShardCoordinator.
+	 * Returns null when any folder of the hierarchy could not be resolved, so the testcase is not created in a parent folder */
 	
-	public static JsonObject createTestFolder(String[] folderHierarchy, String projectRef, String rallyBaseUrl, String rallyApiKey) {
+	public static JsonObject createTestFolder(String[] folderHierarchy, String projectRef, RallyRestApi restApi) {
         JsonObject lastFolder = null;
         String lastFolderRef = null;
+        StringBuilder folderPath = new StringBuilder();
+        TestFolderCache folderCache = TestFolderCache.getInstance();
 
-        RallyRestApi restApi = null;
         try {
-            restApi = new RallyRestApi(new URI(rallyBaseUrl), rallyApiKey);
-            restApi.setApplicationName("CreateTestCaseApp");
-
             for (int i = 0; i < folderHierarchy.length; i++) {
                 String folderName = folderHierarchy[i];
                 if (folderName == null || folderName.trim().isEmpty()) {
-                    logger.info("Invalid folder name encountered: '" + folderName + "'");
+                    logger.debug("Invalid folder name encountered: '{}'", folderName);
                     continue;
                 }
 
-                // If it's the top-level folder, ensure it is created as a parent folder
-                if (i == 0) {
-                    // Check if the folder exists as a parent folder
-                    QueryRequest parentFolderExistenceRequest = new QueryRequest("testfolder");
-                    parentFolderExistenceRequest.setQueryFilter(new QueryFilter("Name", "=", folderName.trim()).and(new QueryFilter("Parent", "=", "null")));
-                    parentFolderExistenceRequest.setFetch(new Fetch("_ref", "Name", "Parent"));
-
-                    QueryResponse parentQueryResponse = restApi.query(parentFolderExistenceRequest);
-
-                    if (parentQueryResponse.wasSuccessful() && parentQueryResponse.getTotalResultCount() > 0) {
-                        // Folder exists as a parent folder
-                        lastFolder = parentQueryResponse.getResults().get(0).getAsJsonObject();
-                        lastFolderRef = lastFolder.get("_ref").getAsString();
-                        logger.info("Parent folder already exists: " + lastFolderRef);
-                    } else {
-                        // Folder does not exist as a parent folder, create it
-                        JsonObject newFolder = new JsonObject();
-                        newFolder.addProperty("Name", folderName.trim());
-                        newFolder.addProperty("Project", projectRef);
-
-                        CreateRequest createFolderRequest = new CreateRequest("testfolder", newFolder);
-                        CreateResponse createFolderResponse = restApi.create(createFolderRequest);
-
-                        if (createFolderResponse.wasSuccessful()) {
-                            lastFolderRef = createFolderResponse.getObject().get("_ref").getAsString();
-                            newFolder.addProperty("_ref", lastFolderRef);
-                            lastFolder = newFolder;
-                            logger.info("Successfully created parent folder: " + lastFolderRef);
-                        } else {
-                            logger.error("Error occurred creating parent folder.");
-                            for (String error : createFolderResponse.getErrors()) {
-                                System.out.println(error);
-                            }
-                            break;
-                        }
-                    }
-                } else {
-                    // For subfolders, check and create under the last folder
-                    QueryRequest subFolderExistenceRequest = new QueryRequest("testfolder");
-                    subFolderExistenceRequest.setQueryFilter(new QueryFilter("Name", "=", folderName.trim()).and(new QueryFilter("Parent", "=", lastFolderRef)));
-                    subFolderExistenceRequest.setFetch(new Fetch("_ref", "Name", "Parent"));
-
-                    QueryResponse subQueryResponse = restApi.query(subFolderExistenceRequest);
-
-                    if (subQueryResponse.wasSuccessful() && subQueryResponse.getTotalResultCount() > 0) {
-                        // Folder exists as a subfolder
-                        lastFolder = subQueryResponse.getResults().get(0).getAsJsonObject();
-                        lastFolderRef = lastFolder.get("_ref").getAsString();
-                        logger.info("Subfolder already exists: " + lastFolderRef);
-                    } else {
-                        // Folder does not exist, create it as a subfolder
-                        JsonObject newFolder = new JsonObject();
-                        newFolder.addProperty("Name", folderName.trim());
-                        newFolder.addProperty("Project", projectRef);
-                        newFolder.addProperty("Parent", lastFolderRef);
-
-                        CreateRequest createFolderRequest = new CreateRequest("testfolder", newFolder);
-                        CreateResponse createFolderResponse = restApi.create(createFolderRequest);
-
-                        if (createFolderResponse.wasSuccessful()) {
-                            lastFolderRef = createFolderResponse.getObject().get("_ref").getAsString();
-                            newFolder.addProperty("_ref", lastFolderRef);
-                            lastFolder = newFolder;
-                            logger.info("Successfully created subfolder: " + lastFolderRef);
-                        } else {
-                            logger.error("Error occurred creating subfolder");
-                            for (String error : createFolderResponse.getErrors()) {
-                                System.out.println(error);
-                            }
-                            break;
-                        }
-                    }
+                folderPath.append('/').append(folderName.trim());
+                String parentRef = lastFolderRef;
+                String path = folderPath.toString();
+                String folderRef = folderCache.resolve(projectRef, path, () -> ShardCoordinator.resolveTestFolder(projectRef, path,
+                        () -> findOrCreateTestFolder(restApi, folderName.trim(), parentRef, projectRef)));
+                if (folderRef == null) {
+                    // The testcase must not be created in the parent folder, so the whole hierarchy is failed
+                    logger.error("Failed to create the test folder {}", path);
+                    return null;
                 }
+
+                lastFolderRef = folderRef;
+                lastFolder = new JsonObject();
+                lastFolder.addProperty("_ref", folderRef);
+                lastFolder.addProperty("Name", folderName.trim());
             }
 
             return lastFolder;
 
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.error("Failed to create the test folder {}", folderPath, e);
             return null;
-        } finally {
-            if (restApi != null) {
-                try {
-                    restApi.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+        }
+    }
+
+	/* Find the test folder with the given name under the given parent folder and create it when it is not available.
+	 * The folder is created as a top-level (parent) folder when the parent reference is null. Returns the folder reference or null when the creation is failed */
+
+	static String findOrCreateTestFolder(RallyRestApi restApi, String folderName, String parentRef, String projectRef) throws IOException {
+
+        QueryRequest folderExistenceRequest = new QueryRequest("testfolder");
+        folderExistenceRequest.setQueryFilter(new QueryFilter("Name", "=", folderName).and(new QueryFilter("Parent", "=", parentRef == null ? "null" : parentRef)));
+        folderExistenceRequest.setFetch(new Fetch("_ref", "Name", "Parent"));
+        // The oldest folder is used when the same name is available twice under the parent, same as TestFolderTree
+        folderExistenceRequest.setOrder("ObjectID");
+        // A folder of another Rally project with the same name and parent must not be reused, so the query is scoped to the project only
+        if (projectRef != null) {
+            folderExistenceRequest.setProject(TestFolderTree.toProjectRef(projectRef));
+            folderExistenceRequest.setScopedDown(false);
+            folderExistenceRequest.setScopedUp(false);
+        }
+
+        QueryResponse queryResponse = queryRally(restApi, folderExistenceRequest);
+
+        if (queryResponse.wasSuccessful() && queryResponse.getTotalResultCount() > 0) {
+            // Folder already exists
+            String folderRef = queryResponse.getResults().get(0).getAsJsonObject().get("_ref").getAsString();
+            logger.debug("{} already exists: {}", parentRef == null ? "Parent folder" : "Subfolder", folderRef);
+            return folderRef;
+        }
+
+        // Folder does not exist, create it
+        JsonObject newFolder = new JsonObject();
+        newFolder.addProperty("Name", folderName);
+        newFolder.addProperty("Project", projectRef);
+        if (parentRef != null) {
+            newFolder.addProperty("Parent", parentRef);
+        }
+
+        CreateRequest createFolderRequest = new CreateRequest("testfolder", newFolder);
+        CreateResponse createFolderResponse = createRallyRecord(restApi, createFolderRequest);
+
+        if (createFolderResponse.wasSuccessful()) {
+            String folderRef = createFolderResponse.getObject().get("_ref").getAsString();
+            logger.info("Successfully created {}{}", parentRef == null ? "parent folder: " : "subfolder: ", folderRef);
+            return folderRef;
+        } else {
+            logger.error("Error occurred creating {} {}", parentRef == null ? "parent folder" : "subfolder", folderName);
+            for (String error : createFolderResponse.getErrors()) {
+                logger.error(error);
             }
+            return null;
         }
     }
 
 // Implementation to update the TestCase Migrated in Jira to "true". User story US7382197
+// The Rally testcase OID is updated in Jira along with the status. Custom field names are loaded from .properties file. Returns true when Jira accepts the update
 
-	public void updateTestCaseMigratedStatusinJira(boolean status) {
-			
-				
+	public static boolean updateTestCaseMigratedStatusinJira(CloseableHttpClient connection, String jiraBaseUrl, String apiKey, String key, boolean status, String rallyTestcaseOID) {
 			
+		JsonObject customFields = new JsonObject();
+		customFields.addProperty(ConfigLoader.getConfigValue("JIRA_MIGRATED_FIELD", "TestCase Migrated"), status);
+		if (rallyTestcaseOID != null) {
+			customFields.addProperty(ConfigLoader.getConfigValue("JIRA_RALLY_OID_FIELD", "Rally TestCase OID"), rallyTestcaseOID);
+		}
+		JsonObject body = new JsonObject();
+		body.add("customFields", customFields);
+		
+		String url = jiraBaseUrl + "/rest/atm/1.0/testcase/" + key;
+		int statusCode;
+		try {
+			// The update sets the same values again when it is repeated, so it is retried on a connection error, 429 or 5xx answer through the Jira call layer
+			statusCode = ApiCallExecutor.getInstance(ApiCallExecutor.JIRA).execute(getEndpoint("PUT", url), true, () -> {
+				HttpPut request = new HttpPut(url);
+				request.setHeader("Authorization", "Bearer " + apiKey);
+				request.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+				try (CloseableHttpResponse response = connection.execute(request)) {
+					EntityUtils.consumeQuietly(response.getEntity());
+					if (response.getStatusLine().getStatusCode() == 429 || response.getStatusLine().getStatusCode() >= 500) {
+						throw ApiCallExecutor.getException("TestCase Migrated status update is failed for the key " + key, response);
+					}
+					return response.getStatusLine().getStatusCode();
+				}
+			});
+		} catch (IOException e) {
+			logger.error("Error occurred in Jira connection while updating TestCase Migrated status for the key {}", key, e);
+			return false;
 		}
+		if (statusCode >= 200 && statusCode < 300) {
+			logger.debug("TestCase Migrated status is updated in Jira for the key {}", key);
+			return true;
+		}
+		logger.error("Failed to update TestCase Migrated status in Jira for the key {}. Response status {}", key, statusCode);
+		return false;
+			
+	}
 
 
 }